@@ -0,0 +1,101 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2013, CloudBees, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.cloudbees.literate.benchmarks;
+
+import org.cloudbees.literate.api.v1.ProjectModel;
+import org.cloudbees.literate.api.v1.ProjectModelRequest;
+import org.cloudbees.literate.api.v1.ProjectModelSource;
+import org.cloudbees.literate.api.v1.vfs.FilesystemRepository;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link ProjectModelSource#submit(ProjectModelRequest)} end to end over the api test fixtures.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(2)
+public class FixtureBenchmark {
+
+    /**
+     * The fixture to build, relative to the api test resources.
+     */
+    @Param({
+            "MarkdownModelTest/smokes",
+            "MarkdownModelTest/showcase",
+            "YamlModelTest/smokes",
+            "YamlModelTest/advanced",
+            "YamlModelTest/javaMaven"
+    })
+    public String fixture;
+
+    /**
+     * The on-disk copy of the fixture.
+     */
+    private File dir;
+
+    /**
+     * The source, shared across invocations as a real consumer would.
+     */
+    private ProjectModelSource source;
+
+    /**
+     * The request.
+     */
+    private ProjectModelRequest request;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        dir = Fixtures.copy(fixture);
+        source = new ProjectModelSource(FixtureBenchmark.class.getClassLoader());
+        request = ProjectModelRequest.builder(new FilesystemRepository(dir)).build();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        Fixtures.delete(dir);
+    }
+
+    @Benchmark
+    public ProjectModel submit() throws Exception {
+        return source.submit(request);
+    }
+}
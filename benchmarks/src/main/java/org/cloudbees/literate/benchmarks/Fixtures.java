@@ -0,0 +1,170 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2013, CloudBees, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.cloudbees.literate.benchmarks;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Materializes the benchmark inputs on disk so that every benchmark goes through the real
+ * {@link org.cloudbees.literate.api.v1.vfs.FilesystemRepository} just like a build would.
+ */
+final class Fixtures {
+
+    /**
+     * The classpath root of the api test fixtures.
+     */
+    private static final String ROOT = "/org/cloudbees/literate/api/v1/";
+
+    /**
+     * The files that a fixture directory may contain. Resources cannot be listed from inside the shaded jar so we
+     * probe for each of them.
+     */
+    private static final String[] CANDIDATES = {
+            ".cloudbees.md", ".cloudbees.yml", ".travis.yml", "pom.xml", "build.xml", "build.gradle"
+    };
+
+    /**
+     * Utility class.
+     */
+    private Fixtures() {
+    }
+
+    /**
+     * Copies one of the api test fixtures into a fresh temporary directory.
+     *
+     * @param name the fixture, e.g. {@code MarkdownModelTest/smokes}.
+     * @return the temporary directory.
+     * @throws IOException if the fixture could not be copied.
+     */
+    static File copy(String name) throws IOException {
+        File dir = createTempDir();
+        int count = 0;
+        for (String candidate : CANDIDATES) {
+            InputStream in = Fixtures.class.getResourceAsStream(ROOT + name + "/" + candidate);
+            if (in == null) {
+                continue;
+            }
+            try {
+                OutputStream out = new FileOutputStream(new File(dir, candidate));
+                try {
+                    IOUtils.copy(in, out);
+                } finally {
+                    IOUtils.closeQuietly(out);
+                }
+            } finally {
+                IOUtils.closeQuietly(in);
+            }
+            count++;
+        }
+        if (count == 0) {
+            delete(dir);
+            throw new IOException("No such fixture: " + name);
+        }
+        return dir;
+    }
+
+    /**
+     * Writes a synthetic Markdown project with the specified number of environments, build commands and tasks.
+     *
+     * @param size the number of each kind of section entry.
+     * @return the temporary directory.
+     * @throws IOException if the project could not be written.
+     */
+    static File generateMarkdown(int size) throws IOException {
+        StringBuilder buf = new StringBuilder();
+        buf.append("# Environments\n\n");
+        for (int i = 0; i < size; i++) {
+            buf.append("* `env").append(i).append("`\n");
+            buf.append("    - `linux`, `x86`\n");
+        }
+        buf.append("\n# Build\n\n");
+        for (int i = 0; i < size; i++) {
+            buf.append("* On `env").append(i).append("`\n\n");
+            buf.append("        ./configure --variant=").append(i).append("\n");
+            buf.append("        make all test\n\n");
+        }
+        for (int i = 0; i < size; i++) {
+            buf.append("# Task").append(i).append("\n\n");
+            buf.append("Some *prose* describing task ").append(i).append(" with `inline code`.\n\n");
+            buf.append("    ./deploy.sh ").append(i).append("\n\n");
+        }
+        return write(".cloudbees.md", buf);
+    }
+
+    /**
+     * Writes a synthetic YAML project with the specified number of environment variables, script lines and jdks.
+     *
+     * @param size the number of each kind of entry.
+     * @return the temporary directory.
+     * @throws IOException if the project could not be written.
+     */
+    static File generateYaml(int size) throws IOException {
+        StringBuilder buf = new StringBuilder();
+        buf.append("language: java\n");
+        buf.append("jdk:\n");
+        for (int i = 0; i < size; i++) {
+            buf.append("  - jdk").append(i).append("\n");
+        }
+        buf.append("env:\n");
+        buf.append("  global:\n");
+        for (int i = 0; i < size; i++) {
+            buf.append("    - GLOBAL").append(i).append("=value").append(i).append("\n");
+        }
+        buf.append("script:\n");
+        for (int i = 0; i < size; i++) {
+            buf.append("  - ./build.sh --step=").append(i).append("\n");
+        }
+        return write(".cloudbees.yml", buf);
+    }
+
+    /**
+     * Deletes a directory created by this class.
+     *
+     * @param dir the directory.
+     */
+    static void delete(File dir) {
+        FileUtils.deleteQuietly(dir);
+    }
+
+    private static File write(String name, CharSequence content) throws IOException {
+        File dir = createTempDir();
+        FileUtils.writeStringToFile(new File(dir, name), content.toString(), "UTF-8");
+        return dir;
+    }
+
+    private static File createTempDir() throws IOException {
+        File file = File.createTempFile("literate-bench", "");
+        if (!file.delete() || !file.mkdir()) {
+            throw new IOException("Could not create temporary directory " + file);
+        }
+        return file;
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2013, CloudBees, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.cloudbees.literate.benchmarks;
+
+import org.cloudbees.literate.api.v1.ProjectModel;
+import org.cloudbees.literate.api.v1.ProjectModelRequest;
+import org.cloudbees.literate.api.v1.ProjectModelSource;
+import org.cloudbees.literate.api.v1.vfs.FilesystemRepository;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link ProjectModelSource#submit(ProjectModelRequest)} over generated projects of increasing size, so
+ * that costs which only show up on large inputs are visible.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(2)
+public class GeneratedProjectBenchmark {
+
+    /**
+     * The format of the generated project, either {@code markdown} or {@code yaml}.
+     */
+    @Param({"markdown", "yaml"})
+    public String format;
+
+    /**
+     * The number of entries of each kind in the generated project.
+     */
+    @Param({"10", "100", "1000"})
+    public int size;
+
+    /**
+     * The generated project.
+     */
+    private File dir;
+
+    /**
+     * The source, shared across invocations as a real consumer would.
+     */
+    private ProjectModelSource source;
+
+    /**
+     * The request.
+     */
+    private ProjectModelRequest request;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        if ("markdown".equals(format)) {
+            dir = Fixtures.generateMarkdown(size);
+        } else if ("yaml".equals(format)) {
+            dir = Fixtures.generateYaml(size);
+        } else {
+            throw new IllegalArgumentException("Unknown format: " + format);
+        }
+        source = new ProjectModelSource(GeneratedProjectBenchmark.class.getClassLoader());
+        request = ProjectModelRequest.builder(new FilesystemRepository(dir)).build();
+        // fail fast rather than benchmarking the exception path
+        source.submit(request);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        Fixtures.delete(dir);
+    }
+
+    @Benchmark
+    public ProjectModel submit() throws Exception {
+        return source.submit(request);
+    }
+}
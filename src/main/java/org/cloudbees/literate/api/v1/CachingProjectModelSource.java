@@ -0,0 +1,787 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2013, CloudBees, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.cloudbees.literate.api.v1;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import net.jcip.annotations.GuardedBy;
+import net.jcip.annotations.Immutable;
+import net.jcip.annotations.ThreadSafe;
+import org.apache.commons.io.IOUtils;
+import org.cloudbees.literate.api.v1.vfs.BatchProjectRepository;
+import org.cloudbees.literate.api.v1.vfs.BufferedProjectRepository;
+import org.cloudbees.literate.api.v1.vfs.FileTooLargeException;
+import org.cloudbees.literate.api.v1.vfs.PathNotFoundException;
+import org.cloudbees.literate.api.v1.vfs.ProjectRepositories;
+import org.cloudbees.literate.api.v1.vfs.ProjectRepository;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A {@link ProjectModelSource} that remembers the {@link ProjectModel} instances it has built, keyed on the content
+ * of the marker files in the repository rather than on the repository itself, so that re-submitting an unchanged
+ * project (or a different repository with identical content) does not parse it again.
+ * <p/>
+ * The key is a digest of the listing of the repository root and of the bytes of every marker file present in the
+ * root, combined with the {@link ProjectModelRequest} parameters. Any other file that the builder reads (such as the
+ * {@code README.md} fallback of the Markdown builder) is recorded with its own digest and re-checked before a cached
+ * model is returned. The least recently used models are evicted once the cache holds {@link #getMaximumSize()}
+ * models. Models that are {@link ProjectModel#isDegraded()} are never remembered.
+ * <p/>
+ * When configured with a negative result time to live, the source also remembers for that long that a repository is
+ * not a literate project at all (none of the marker files are present), keyed on the {@link
+ * ProjectModelRequest#getRevision()} if the request has one and on the fingerprint of the listing of the repository
+ * root otherwise. A request with a remembered revision is rejected without accessing the repository. The same
+ * {@link ProjectModelBuildingException} instance is rethrown for every request that the negative result answers.
+ *
+ * @since 0.7
+ */
+@ThreadSafe
+public class CachingProjectModelSource extends ProjectModelSource {
+
+    /**
+     * The digest algorithm used to fingerprint content.
+     */
+    private static final String DIGEST_ALGORITHM = "SHA-1";
+
+    /**
+     * The maximum number of models to retain.
+     */
+    private final int maximumSize;
+
+    /**
+     * The cached models in least recently used order.
+     */
+    @GuardedBy("itself")
+    private final Map<Key, CachedModel> cache;
+
+    /**
+     * How long, in nanoseconds, to remember that a repository is not a literate project, {@code 0} to not remember.
+     */
+    private final long negativeTtlNanos;
+
+    /**
+     * The remembered negative results in least recently used order.
+     */
+    @GuardedBy("itself")
+    private final Map<String, NegativeResult> negativeCache;
+
+    /**
+     * The number of requests answered from the cache.
+     */
+    private final AtomicLong hitCount = new AtomicLong();
+
+    /**
+     * The number of requests answered from the negative results.
+     */
+    private final AtomicLong negativeHitCount = new AtomicLong();
+
+    /**
+     * The number of requests that had to be built.
+     */
+    private final AtomicLong missCount = new AtomicLong();
+
+    /**
+     * Constructs an instance from a specific classloader.
+     *
+     * @param classLoader the classloader.
+     * @param maximumSize the maximum number of models to retain.
+     */
+    public CachingProjectModelSource(ClassLoader classLoader, int maximumSize) {
+        this(classLoader, maximumSize, 0, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Constructs an instance from a specific classloader.
+     *
+     * @param classLoader the classloader.
+     * @param maximumSize the maximum number of models, and separately of negative results, to retain.
+     * @param negativeTtl how long to remember that a repository is not a literate project, {@code 0} to not remember.
+     * @param unit        the unit of {@code negativeTtl}.
+     */
+    public CachingProjectModelSource(ClassLoader classLoader, final int maximumSize, long negativeTtl,
+                                     TimeUnit unit) {
+        super(classLoader);
+        if (maximumSize < 1) {
+            throw new IllegalArgumentException("Maximum size must be positive");
+        }
+        if (negativeTtl < 0) {
+            throw new IllegalArgumentException("Negative result time to live cannot be negative");
+        }
+        this.maximumSize = maximumSize;
+        this.negativeTtlNanos = unit.toNanos(negativeTtl);
+        this.cache = new LinkedHashMap<Key, CachedModel>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, CachedModel> eldest) {
+                return size() > maximumSize;
+            }
+        };
+        this.negativeCache = new LinkedHashMap<String, NegativeResult>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, NegativeResult> eldest) {
+                return size() > maximumSize;
+            }
+        };
+    }
+
+    /**
+     * Constructs an instance from the current thread's context classloader.
+     *
+     * @param maximumSize the maximum number of models to retain.
+     */
+    public CachingProjectModelSource(int maximumSize) {
+        this(Thread.currentThread().getContextClassLoader(), maximumSize);
+    }
+
+    /**
+     * Constructs an instance from the current thread's context classloader.
+     *
+     * @param maximumSize the maximum number of models, and separately of negative results, to retain.
+     * @param negativeTtl how long to remember that a repository is not a literate project, {@code 0} to not remember.
+     * @param unit        the unit of {@code negativeTtl}.
+     */
+    public CachingProjectModelSource(int maximumSize, long negativeTtl, TimeUnit unit) {
+        this(Thread.currentThread().getContextClassLoader(), maximumSize, negativeTtl, unit);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @NonNull
+    @Override
+    public ProjectModel submit(@NonNull ProjectModelRequest request)
+            throws IOException, ProjectModelBuildingException {
+        request.getClass(); // throw NPE if null
+        String revisionKey = request.getRevision() == null
+                ? null
+                : "revision:" + request.getBaseName() + '\u0000' + request.getRevision();
+        checkNegative(revisionKey);
+        ListedProjectRepository listed = ListedProjectRepository.list(request.getRepository());
+        if (listed == null) {
+            missCount.incrementAndGet();
+            return super.submit(request);
+        }
+        MessageDigest digest = newDigest();
+        for (String path : new TreeSet<String>(listed.getPaths("/"))) {
+            digest.update(path.getBytes("UTF-8"));
+            digest.update((byte) 0);
+        }
+        Map<String, byte[]> markers = new HashMap<String, byte[]>();
+        for (String name : ProjectRepositories.filterFiles(listed, markerFiles(request.getBaseName()))) {
+            byte[] content = readMarker(listed, name, request.getMaxFileBytes());
+            markers.put(name, content);
+            digest.update(name.getBytes("UTF-8"));
+            digest.update((byte) 0);
+            digest.update(content);
+        }
+        String fingerprint = toHex(digest.digest());
+        String listingKey = markers.isEmpty() ? "listing:" + request.getBaseName() + '\u0000' + fingerprint : null;
+        checkNegative(listingKey);
+        Key key = new Key(fingerprint, request);
+        CachedModel entry;
+        synchronized (cache) {
+            entry = cache.get(key);
+        }
+        if (entry != null && entry.isCurrent(listed, request.getMaxFileBytes())) {
+            hitCount.incrementAndGet();
+            return entry.model;
+        }
+        missCount.incrementAndGet();
+        RecordingRepository recording = new RecordingRepository(listed, markers);
+        ProjectModel model;
+        try {
+            model = super.submit(request.withRepository(recording));
+        } catch (ProjectModelBuildingException e) {
+            if (listingKey != null && negativeTtlNanos > 0 && !(e instanceof ProjectModelLimitExceededException)) {
+                // none of the marker files are present, so this is not a literate project
+                NegativeResult negative = new NegativeResult(e, System.nanoTime() + negativeTtlNanos);
+                synchronized (negativeCache) {
+                    negativeCache.put(listingKey, negative);
+                    if (revisionKey != null) {
+                        negativeCache.put(revisionKey, negative);
+                    }
+                }
+            }
+            throw e;
+        }
+        if (model.isDegraded()) {
+            // a later build of the same content may not run out of time
+            return model;
+        }
+        synchronized (cache) {
+            cache.put(key, new CachedModel(model, recording.getReads()));
+        }
+        return model;
+    }
+
+    /**
+     * Rethrows the remembered negative result, if any.
+     *
+     * @param negativeKey the key of the negative result or {@code null}.
+     * @throws ProjectModelBuildingException the remembered negative result.
+     */
+    private void checkNegative(@CheckForNull String negativeKey) throws ProjectModelBuildingException {
+        if (negativeKey == null || negativeTtlNanos == 0) {
+            return;
+        }
+        NegativeResult negative;
+        synchronized (negativeCache) {
+            negative = negativeCache.get(negativeKey);
+            if (negative != null && negative.expires - System.nanoTime() <= 0) {
+                negativeCache.remove(negativeKey);
+                negative = null;
+            }
+        }
+        if (negative != null) {
+            negativeHitCount.incrementAndGet();
+            throw negative.exception;
+        }
+    }
+
+    /**
+     * Returns the maximum number of models that will be retained.
+     *
+     * @return the maximum number of models that will be retained.
+     */
+    public int getMaximumSize() {
+        return maximumSize;
+    }
+
+    /**
+     * Returns the number of models currently retained.
+     *
+     * @return the number of models currently retained.
+     */
+    public int size() {
+        synchronized (cache) {
+            return cache.size();
+        }
+    }
+
+    /**
+     * Returns the number of requests that were answered from the cache.
+     *
+     * @return the number of requests that were answered from the cache.
+     */
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    /**
+     * Returns the number of requests that could not be answered from the cache.
+     *
+     * @return the number of requests that could not be answered from the cache.
+     */
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    /**
+     * Returns the number of requests that were rejected from a remembered negative result.
+     *
+     * @return the number of requests that were rejected from a remembered negative result.
+     */
+    public long getNegativeHitCount() {
+        return negativeHitCount.get();
+    }
+
+    /**
+     * Returns the ratio of requests that were answered from the cache.
+     *
+     * @return the ratio of requests that were answered from the cache, {@code 1.0} if there have been no requests.
+     */
+    public double getHitRate() {
+        long hits = hitCount.get();
+        long total = hits + missCount.get();
+        return total == 0 ? 1.0 : (double) hits / total;
+    }
+
+    /**
+     * Discards all the cached models and negative results.
+     */
+    public void invalidateAll() {
+        synchronized (cache) {
+            cache.clear();
+        }
+        synchronized (negativeCache) {
+            negativeCache.clear();
+        }
+    }
+
+    /**
+     * Reads the whole content of a file.
+     *
+     * @param repository the repository.
+     * @param path       the path.
+     * @return the content.
+     * @throws IOException if the file could not be read.
+     */
+    @NonNull
+    private static byte[] read(@NonNull ProjectRepository repository, @NonNull String path) throws IOException {
+        InputStream stream = repository.get(path);
+        try {
+            return IOUtils.toByteArray(stream);
+        } finally {
+            IOUtils.closeQuietly(stream);
+        }
+    }
+
+    /**
+     * Reads the whole content of a marker file, within the file size limit of the request.
+     *
+     * @param repository the repository.
+     * @param path       the path.
+     * @param maxBytes   the maximum size of the file.
+     * @return the content.
+     * @throws IOException                        if the file could not be read.
+     * @throws ProjectModelLimitExceededException if the file is larger than {@code maxBytes}.
+     */
+    @NonNull
+    private static byte[] readMarker(@NonNull ProjectRepository repository, @NonNull String path, long maxBytes)
+            throws IOException, ProjectModelLimitExceededException {
+        ByteBuffer buffer;
+        try {
+            buffer = ProjectRepositories.getBuffer(repository, path, maxBytes);
+        } catch (FileTooLargeException e) {
+            throw new ProjectModelLimitExceededException(ProjectModelLimitExceededException.Limit.FILE_BYTES,
+                    e.getMaxBytes(), e.getMessage(), e);
+        }
+        byte[] content = new byte[buffer.remaining()];
+        buffer.get(content);
+        return content;
+    }
+
+    /**
+     * Returns a new digest.
+     *
+     * @return a new digest.
+     */
+    @NonNull
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance(DIGEST_ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(DIGEST_ALGORITHM + " is a mandatory algorithm for all JVMs", e);
+        }
+    }
+
+    /**
+     * Returns the hex digest of some content.
+     *
+     * @param content the content.
+     * @return the hex digest.
+     */
+    @NonNull
+    private static String digest(@NonNull byte[] content) {
+        return toHex(newDigest().digest(content));
+    }
+
+    /**
+     * Returns the hex digest of some content.
+     *
+     * @param content the content, its position is left unchanged.
+     * @return the hex digest.
+     */
+    @NonNull
+    private static String digest(@NonNull ByteBuffer content) {
+        MessageDigest digest = newDigest();
+        digest.update(content.duplicate());
+        return toHex(digest.digest());
+    }
+
+    /**
+     * Converts bytes into lower case hex.
+     *
+     * @param bytes the bytes.
+     * @return the hex.
+     */
+    @NonNull
+    private static String toHex(@NonNull byte[] bytes) {
+        char[] chars = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            chars[i * 2] = Character.forDigit((bytes[i] >> 4) & 0xf, 16);
+            chars[i * 2 + 1] = Character.forDigit(bytes[i] & 0xf, 16);
+        }
+        return new String(chars);
+    }
+
+    /**
+     * The cache key, the content digest and the parameters and limits of the request, but not the repository.
+     */
+    @Immutable
+    private static final class Key {
+        /**
+         * The content digest.
+         */
+        @NonNull
+        private final String digest;
+        /**
+         * The {@link ProjectModelRequest#getBaseName()}.
+         */
+        @NonNull
+        private final String baseName;
+        /**
+         * The {@link ProjectModelRequest#getBuildId()}.
+         */
+        @NonNull
+        private final String buildId;
+        /**
+         * The {@link ProjectModelRequest#getEnvironmentsId()}.
+         */
+        @NonNull
+        private final String environmentsId;
+        /**
+         * The {@link ProjectModelRequest#getEnvvarsId()}.
+         */
+        @NonNull
+        private final String envvarsId;
+        /**
+         * The {@link ProjectModelRequest#getTaskIds()}.
+         */
+        @NonNull
+        private final Set<String> taskIds;
+        /**
+         * The {@link ProjectModelRequest#getMaxFileBytes()}.
+         */
+        private final long maxFileBytes;
+        /**
+         * The {@link ProjectModelRequest#getMaxParseTimeMillis()}.
+         */
+        private final long maxParseTimeMillis;
+        /**
+         * The {@link ProjectModelRequest#getMaxModelSize()}.
+         */
+        private final long maxModelSize;
+
+        /**
+         * Constructor.
+         *
+         * @param digest  the content digest.
+         * @param request the request.
+         */
+        private Key(@NonNull String digest, @NonNull ProjectModelRequest request) {
+            this.digest = digest;
+            this.baseName = request.getBaseName();
+            this.buildId = request.getBuildId();
+            this.environmentsId = request.getEnvironmentsId();
+            this.envvarsId = request.getEnvvarsId();
+            this.taskIds = request.getTaskIds();
+            this.maxFileBytes = request.getMaxFileBytes();
+            this.maxParseTimeMillis = request.getMaxParseTimeMillis();
+            this.maxModelSize = request.getMaxModelSize();
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key that = (Key) o;
+            return digest.equals(that.digest)
+                    && baseName.equals(that.baseName)
+                    && buildId.equals(that.buildId)
+                    && environmentsId.equals(that.environmentsId)
+                    && envvarsId.equals(that.envvarsId)
+                    && taskIds.equals(that.taskIds)
+                    && maxFileBytes == that.maxFileBytes
+                    && maxParseTimeMillis == that.maxParseTimeMillis
+                    && maxModelSize == that.maxModelSize;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public int hashCode() {
+            int result = digest.hashCode();
+            result = 31 * result + (int) (maxFileBytes ^ (maxFileBytes >>> 32));
+            result = 31 * result + (int) (maxParseTimeMillis ^ (maxParseTimeMillis >>> 32));
+            result = 31 * result + (int) (maxModelSize ^ (maxModelSize >>> 32));
+            return result;
+        }
+    }
+
+    /**
+     * A cached model.
+     */
+    @Immutable
+    private static final class CachedModel {
+        /**
+         * The model.
+         */
+        @NonNull
+        private final ProjectModel model;
+        /**
+         * The digests of the files other than the marker files that the builder read.
+         */
+        @NonNull
+        private final Map<String, String> reads;
+
+        /**
+         * Constructor.
+         *
+         * @param model the model.
+         * @param reads the digests of the files other than the marker files that the builder read.
+         */
+        private CachedModel(@NonNull ProjectModel model, @NonNull Map<String, String> reads) {
+            this.model = model;
+            this.reads = reads;
+        }
+
+        /**
+         * Checks that the files the builder read are unchanged.
+         *
+         * @param repository the repository.
+         * @param maxBytes   the maximum size of the files.
+         * @return {@code true} if the files the builder read are unchanged.
+         * @throws IOException if the files could not be read.
+         */
+        private boolean isCurrent(@NonNull ProjectRepository repository, long maxBytes) throws IOException {
+            if (reads.isEmpty()) {
+                return true;
+            }
+            Map<String, ByteBuffer> contents;
+            try {
+                contents = ProjectRepositories.getAll(repository, reads.keySet(), maxBytes);
+            } catch (FileTooLargeException e) {
+                // the file has grown since, building again reports the limit
+                return false;
+            }
+            for (Map.Entry<String, String> read : reads.entrySet()) {
+                ByteBuffer content = contents.get(read.getKey());
+                if (content == null || !read.getValue().equals(digest(content))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * A remembered negative result.
+     */
+    @Immutable
+    private static final class NegativeResult {
+        /**
+         * The exception to rethrow.
+         */
+        @NonNull
+        private final ProjectModelBuildingException exception;
+        /**
+         * The {@link System#nanoTime()} after which the result must be forgotten.
+         */
+        private final long expires;
+
+        /**
+         * Constructor.
+         *
+         * @param exception the exception to rethrow.
+         * @param expires   the {@link System#nanoTime()} after which the result must be forgotten.
+         */
+        private NegativeResult(@NonNull ProjectModelBuildingException exception, long expires) {
+            this.exception = exception;
+            this.expires = expires;
+        }
+    }
+
+    /**
+     * A {@link ProjectRepository} that serves the already read marker files from memory and records the digests of
+     * any other files that are read.
+     */
+    @ThreadSafe
+    private static final class RecordingRepository implements BufferedProjectRepository, BatchProjectRepository {
+        /**
+         * The repository.
+         */
+        @NonNull
+        private final ProjectRepository delegate;
+        /**
+         * The content of the marker files.
+         */
+        @NonNull
+        private final Map<String, byte[]> markers;
+        /**
+         * The digests of the other files that have been read.
+         */
+        @GuardedBy("itself")
+        private final Map<String, String> reads = new HashMap<String, String>();
+
+        /**
+         * Constructor.
+         *
+         * @param delegate the repository.
+         * @param markers  the content of the marker files.
+         */
+        private RecordingRepository(@NonNull ProjectRepository delegate, @NonNull Map<String, byte[]> markers) {
+            this.delegate = delegate;
+            this.markers = markers;
+        }
+
+        /**
+         * Returns the digests of the files other than the marker files that have been read.
+         *
+         * @return the digests of the files other than the marker files that have been read.
+         */
+        @NonNull
+        private Map<String, String> getReads() {
+            synchronized (reads) {
+                return reads.isEmpty()
+                        ? Collections.<String, String>emptyMap()
+                        : Collections.unmodifiableMap(new HashMap<String, String>(reads));
+            }
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        //@Override
+        public InputStream get(String filePath) throws PathNotFoundException, IOException {
+            String name = filePath != null && filePath.startsWith("/") ? filePath.substring(1) : filePath;
+            byte[] content = markers.get(name);
+            if (content == null) {
+                content = read(delegate, filePath);
+                synchronized (reads) {
+                    reads.put(filePath, digest(content));
+                }
+            }
+            return new ByteArrayInputStream(content);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        //@Override
+        public ByteBuffer getBuffer(String filePath) throws PathNotFoundException, IOException {
+            String name = filePath != null && filePath.startsWith("/") ? filePath.substring(1) : filePath;
+            byte[] content = markers.get(name);
+            if (content != null) {
+                return ByteBuffer.wrap(content);
+            }
+            ByteBuffer buffer = ProjectRepositories.getBuffer(delegate, filePath);
+            synchronized (reads) {
+                reads.put(filePath, digest(buffer));
+            }
+            return buffer;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        //@Override
+        public ByteBuffer getBuffer(String filePath, long maxBytes) throws PathNotFoundException, IOException {
+            String name = filePath != null && filePath.startsWith("/") ? filePath.substring(1) : filePath;
+            byte[] content = markers.get(name);
+            if (content != null) {
+                ProjectRepositories.checkSize(filePath, content.length, maxBytes);
+                return ByteBuffer.wrap(content);
+            }
+            ByteBuffer buffer = ProjectRepositories.getBuffer(delegate, filePath, maxBytes);
+            synchronized (reads) {
+                reads.put(filePath, digest(buffer));
+            }
+            return buffer;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        //@Override
+        public Map<String, ByteBuffer> getAll(Collection<String> filePaths, long maxBytes) throws IOException {
+            Map<String, ByteBuffer> result = new HashMap<String, ByteBuffer>();
+            List<String> others = new ArrayList<String>();
+            for (String filePath : filePaths) {
+                String name = filePath != null && filePath.startsWith("/") ? filePath.substring(1) : filePath;
+                byte[] content = markers.get(name);
+                if (content != null) {
+                    ProjectRepositories.checkSize(filePath, content.length, maxBytes);
+                    result.put(filePath, ByteBuffer.wrap(content));
+                } else {
+                    others.add(filePath);
+                }
+            }
+            Map<String, ByteBuffer> contents = ProjectRepositories.getAll(delegate, others, maxBytes);
+            synchronized (reads) {
+                for (Map.Entry<String, ByteBuffer> content : contents.entrySet()) {
+                    reads.put(content.getKey(), digest(content.getValue()));
+                }
+            }
+            result.putAll(contents);
+            return result;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        //@Override
+        public boolean isFile(String path) throws IOException {
+            return delegate.isFile(path);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        //@Override
+        public Set<String> filterFiles(Collection<String> paths) throws IOException {
+            return ProjectRepositories.filterFiles(delegate, paths);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        //@Override
+        public boolean isDirectory(String path) throws IOException {
+            return delegate.isDirectory(path);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        //@Override
+        public Set<String> getPaths(String path) throws PathNotFoundException, IOException {
+            return delegate.getPaths(path);
+        }
+    }
+}
@@ -0,0 +1,441 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2013, CloudBees, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.cloudbees.literate.api.v1;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import net.jcip.annotations.Immutable;
+import org.cloudbees.literate.api.v1.vfs.BatchProjectRepository;
+import org.cloudbees.literate.api.v1.vfs.BufferedProjectRepository;
+import org.cloudbees.literate.api.v1.vfs.CachingProjectRepository;
+import org.cloudbees.literate.api.v1.vfs.FileTooLargeException;
+import org.cloudbees.literate.api.v1.vfs.ListingProjectRepository;
+import org.cloudbees.literate.api.v1.vfs.PathFilter;
+import org.cloudbees.literate.api.v1.vfs.PathNotFoundException;
+import org.cloudbees.literate.api.v1.vfs.ProjectRepositories;
+import org.cloudbees.literate.api.v1.vfs.ProjectRepository;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A {@link ProjectRepository} that answers questions about the immediate children of the root from a single listing
+ * of the root taken up front, optionally serves some of those children from content read up front, and delegates
+ * everything else. The listing may be limited to some names, in which case only questions about those names are
+ * answered from it.
+ */
+@Immutable
+class ListedProjectRepository implements BufferedProjectRepository, ListingProjectRepository, BatchProjectRepository {
+
+    /**
+     * The repository.
+     */
+    @NonNull
+    private final ProjectRepository delegate;
+
+    /**
+     * The listing of the root, as returned by {@link ProjectRepository#getPaths(String)}, limited to {@link #names}
+     * if that is not {@code null}.
+     */
+    @NonNull
+    private final Set<String> listing;
+
+    /**
+     * The names that the listing is limited to, or {@code null} if the listing is complete.
+     */
+    @CheckForNull
+    private final Set<String> names;
+
+    /**
+     * The names of the files in the root.
+     */
+    @NonNull
+    private final Set<String> files;
+
+    /**
+     * The names of the directories in the root.
+     */
+    @NonNull
+    private final Set<String> directories;
+
+    /**
+     * The content of the files in the root that have been read up front.
+     */
+    @NonNull
+    private final Map<String, byte[]> contents;
+
+    /**
+     * Constructor.
+     *
+     * @param delegate the repository.
+     * @param listing  the listing of the root of the repository.
+     * @param names    the names that the listing is limited to, or {@code null} if the listing is complete.
+     */
+    private ListedProjectRepository(@NonNull ProjectRepository delegate, @NonNull Set<String> listing,
+                                    @CheckForNull Set<String> names) {
+        this.delegate = delegate;
+        this.contents = Collections.emptyMap();
+        this.listing = Collections.unmodifiableSet(listing);
+        this.names = names;
+        Set<String> files = new HashSet<String>();
+        Set<String> directories = new HashSet<String>();
+        for (String path : listing) {
+            String name = path.startsWith("/") ? path.substring(1) : path;
+            if (name.endsWith("/")) {
+                directories.add(name.substring(0, name.length() - 1));
+            } else {
+                files.add(name);
+            }
+        }
+        this.files = files;
+        this.directories = directories;
+    }
+
+    /**
+     * Copy constructor.
+     *
+     * @param source   the repository to copy.
+     * @param contents the content of the files in the root that have been read up front.
+     */
+    private ListedProjectRepository(@NonNull ListedProjectRepository source, @NonNull Map<String, byte[]> contents) {
+        this.delegate = source.delegate;
+        this.listing = source.listing;
+        this.names = source.names;
+        this.files = source.files;
+        this.directories = source.directories;
+        this.contents = contents;
+    }
+
+    /**
+     * Lists the root of the supplied repository. Unless it already is one, the repository is wrapped in a
+     * {@link CachingProjectRepository} so that the lookups below the root are remembered for the lifetime of the
+     * request too.
+     *
+     * @param repository the repository.
+     * @return the listed repository or {@code null} if the repository cannot list its root.
+     */
+    @CheckForNull
+    static ListedProjectRepository list(@NonNull ProjectRepository repository) {
+        if (repository instanceof ListedProjectRepository) {
+            ListedProjectRepository listed = (ListedProjectRepository) repository;
+            if (listed.names == null) {
+                return listed;
+            }
+            repository = listed.delegate;
+        }
+        if (!(repository instanceof CachingProjectRepository)) {
+            repository = new CachingProjectRepository(repository);
+        }
+        try {
+            return new ListedProjectRepository(repository, repository.getPaths("/"), null);
+        } catch (IOException e) {
+            // let the builders probe the repository themselves and report the problem
+            return null;
+        }
+    }
+
+    /**
+     * Lists only the supplied names in the root of the supplied repository, which is cheaper than
+     * {@link #list(ProjectRepository)} for repositories with large roots when only a few names matter. The repository
+     * is wrapped in the same way.
+     *
+     * @param repository the repository.
+     * @param names      the names to list.
+     * @return the listed repository or {@code null} if the repository cannot list its root.
+     */
+    @CheckForNull
+    static ListedProjectRepository list(@NonNull ProjectRepository repository, @NonNull Collection<String> names) {
+        if (repository instanceof ListedProjectRepository) {
+            ListedProjectRepository listed = (ListedProjectRepository) repository;
+            if (listed.names == null || listed.names.containsAll(names)) {
+                return listed;
+            }
+            repository = listed.delegate;
+        }
+        if (!(repository instanceof CachingProjectRepository)) {
+            repository = new CachingProjectRepository(repository);
+        }
+        try {
+            Set<String> listing = new HashSet<String>();
+            Iterator<String> paths = ProjectRepositories.listPaths(repository, "/", PathFilter.names(names));
+            while (paths.hasNext()) {
+                listing.add(paths.next());
+            }
+            return new ListedProjectRepository(repository, listing, new HashSet<String>(names));
+        } catch (IOException e) {
+            // let the builders probe the repository themselves and report the problem
+            return null;
+        }
+    }
+
+    /**
+     * Returns {@code true} if the root of the repository contains at least one of the supplied files.
+     *
+     * @param names the file names.
+     * @return {@code true} if the root of the repository contains at least one of the supplied files.
+     */
+    boolean containsAny(@NonNull Iterable<String> names) {
+        for (String name : names) {
+            if (files.contains(name)) {
+                return true;
+            }
+            if (this.names != null && !this.names.contains(name)) {
+                // not listed, so we cannot rule it out
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Reads the content of those of the supplied files that are present in the root, in one batch, so that the
+     * returned repository can serve them without going back to the underlying repository. Nothing is prefetched if
+     * one of the files is larger than the limit, leaving the builder to read it and report the limit.
+     *
+     * @param names    the file names.
+     * @param maxBytes the maximum number of bytes to read from each file.
+     * @return the repository that serves the content of the files from memory.
+     * @throws IOException if the files could not be read.
+     */
+    @NonNull
+    ListedProjectRepository prefetch(@NonNull Iterable<String> names, long maxBytes) throws IOException {
+        List<String> wanted = new ArrayList<String>();
+        for (String name : names) {
+            if (!contents.containsKey(name) && (!isListed(name) || files.contains(name))) {
+                wanted.add(name);
+            }
+        }
+        if (wanted.isEmpty()) {
+            return this;
+        }
+        Map<String, ByteBuffer> read;
+        try {
+            read = ProjectRepositories.getAll(delegate, wanted, maxBytes);
+        } catch (FileTooLargeException e) {
+            return this;
+        }
+        Map<String, byte[]> contents = new HashMap<String, byte[]>(this.contents);
+        for (Map.Entry<String, ByteBuffer> entry : read.entrySet()) {
+            ByteBuffer buffer = entry.getValue();
+            byte[] content = new byte[buffer.remaining()];
+            buffer.duplicate().get(content);
+            contents.put(entry.getKey(), content);
+        }
+        return new ListedProjectRepository(this, contents);
+    }
+
+    /**
+     * Returns the name of the path if it is an immediate child of the root.
+     *
+     * @param path the path.
+     * @return the name of the path if it is an immediate child of the root, or {@code null} otherwise.
+     */
+    @CheckForNull
+    private static String rootChild(@CheckForNull String path) {
+        if (path == null) {
+            return null;
+        }
+        String name = path.startsWith("/") ? path.substring(1) : path;
+        return name.length() == 0 || name.indexOf('/') != -1 ? null : name;
+    }
+
+    /**
+     * Returns {@code true} if the listing covers the supplied immediate child of the root.
+     *
+     * @param name the name of the child.
+     * @return {@code true} if the listing covers the child.
+     */
+    private boolean isListed(@NonNull String name) {
+        return names == null || names.contains(name);
+    }
+
+    /**
+     * Returns {@code true} if the supplied immediate child of the root is a file, going to the repository if the
+     * listing does not cover it.
+     *
+     * @param name the name of the child.
+     * @return {@code true} if the child is a file.
+     * @throws IOException if the repository could not be accessed.
+     */
+    private boolean isListedFile(@NonNull String name) throws IOException {
+        return isListed(name) ? files.contains(name) : delegate.isFile(name);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    //@Override
+    public Set<String> filterFiles(Collection<String> paths) throws IOException {
+        Set<String> result = new HashSet<String>();
+        List<String> unknown = new ArrayList<String>();
+        for (String path : paths) {
+            String name = rootChild(path);
+            if (name == null || !isListed(name)) {
+                unknown.add(path);
+            } else if (files.contains(name)) {
+                result.add(path);
+            }
+        }
+        result.addAll(ProjectRepositories.filterFiles(delegate, unknown));
+        return result;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    //@Override
+    public Map<String, ByteBuffer> getAll(Collection<String> filePaths, long maxBytes) throws IOException {
+        Map<String, ByteBuffer> result = new HashMap<String, ByteBuffer>();
+        List<String> unknown = new ArrayList<String>();
+        for (String path : filePaths) {
+            String name = rootChild(path);
+            byte[] content = name == null ? null : contents.get(name);
+            if (content != null) {
+                ProjectRepositories.checkSize(path, content.length, maxBytes);
+                result.put(path, ByteBuffer.wrap(content));
+            } else if (name == null || !isListed(name) || files.contains(name)) {
+                unknown.add(path);
+            }
+        }
+        result.putAll(ProjectRepositories.getAll(delegate, unknown, maxBytes));
+        return result;
+    }
+
+    /**
+     * Returns {@code true} if the path refers to the root.
+     *
+     * @param path the path.
+     * @return {@code true} if the path refers to the root.
+     */
+    private static boolean isRoot(@CheckForNull String path) {
+        return path == null || path.trim().length() == 0 || path.equals("/");
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    //@Override
+    public InputStream get(String filePath) throws PathNotFoundException, IOException {
+        String name = rootChild(filePath);
+        byte[] content = name == null ? null : contents.get(name);
+        return content == null ? delegate.get(filePath) : new ByteArrayInputStream(content);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    //@Override
+    public ByteBuffer getBuffer(String filePath) throws PathNotFoundException, IOException {
+        String name = rootChild(filePath);
+        byte[] content = name == null ? null : contents.get(name);
+        return content == null ? ProjectRepositories.getBuffer(delegate, filePath) : ByteBuffer.wrap(content);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    //@Override
+    public ByteBuffer getBuffer(String filePath, long maxBytes) throws PathNotFoundException, IOException {
+        String name = rootChild(filePath);
+        byte[] content = name == null ? null : contents.get(name);
+        if (content == null) {
+            return ProjectRepositories.getBuffer(delegate, filePath, maxBytes);
+        }
+        ProjectRepositories.checkSize(filePath, content.length, maxBytes);
+        return ByteBuffer.wrap(content);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    //@Override
+    public boolean isFile(String path) throws IOException {
+        String name = rootChild(path);
+        return name == null ? delegate.isFile(path) : isListedFile(name);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    //@Override
+    public boolean isDirectory(String path) throws IOException {
+        if (isRoot(path)) {
+            return true;
+        }
+        String name = rootChild(path);
+        return name == null || !isListed(name) ? delegate.isDirectory(path) : directories.contains(name);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    //@Override
+    public Set<String> getPaths(String path) throws PathNotFoundException, IOException {
+        return isRoot(path) && names == null ? listing : delegate.getPaths(path);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    //@Override
+    public Iterator<String> listPaths(String path, @CheckForNull PathFilter filter)
+            throws PathNotFoundException, IOException {
+        if (isRoot(path)) {
+            Set<String> wanted = filter == null ? null : filter.getNames();
+            if (names == null || wanted != null && names.containsAll(wanted)) {
+                return filter == null ? listing.iterator() : filterListing(filter);
+            }
+        }
+        return ProjectRepositories.listPaths(delegate, path, filter);
+    }
+
+    /**
+     * Filters the listing of the root.
+     *
+     * @param filter the filter.
+     * @return the accepted paths.
+     */
+    @NonNull
+    private Iterator<String> filterListing(@NonNull PathFilter filter) {
+        List<String> result = new ArrayList<String>();
+        for (String path : listing) {
+            String name = path.startsWith("/") ? path.substring(1) : path;
+            if (filter.accept(name.endsWith("/") ? name.substring(0, name.length() - 1) : name)) {
+                result.add(path);
+            }
+        }
+        return result.iterator();
+    }
+}
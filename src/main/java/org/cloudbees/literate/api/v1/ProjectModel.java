@@ -63,6 +63,10 @@ public class ProjectModel implements Serializable {
      */
     @NonNull
     private final Map<String, TaskCommands> tasks;
+    /**
+     * {@code true} if the model was built from a partial reading of the source.
+     */
+    private final boolean degraded;
 
     /**
      * Do not invoke directly, use {@link #builder()}.
@@ -70,10 +74,12 @@ public class ProjectModel implements Serializable {
      * @param environments the environments.
      * @param build        the build commands.
      * @param tasks        the tasks and their commands.
+     * @param degraded     {@code true} if the model was built from a partial reading of the source.
      */
     private ProjectModel(@CheckForNull List<ExecutionEnvironment> environments,
                          @CheckForNull BuildCommands build,
-                         @CheckForNull Map<String, TaskCommands> tasks) {
+                         @CheckForNull Map<String, TaskCommands> tasks,
+                         boolean degraded) {
         if (environments != null) {
             this.environments = Collections.unmodifiableList(new ArrayList<ExecutionEnvironment>(environments));
         } else {
@@ -81,6 +87,7 @@ public class ProjectModel implements Serializable {
         }
         this.build = build == null ? new BuildCommands(Collections.singletonList("")) : build;
         this.tasks = tasks == null ? Collections.<String, TaskCommands>emptyMap() : Collections.unmodifiableMap(tasks);
+        this.degraded = degraded;
     }
 
     /**
@@ -170,6 +177,39 @@ public class ProjectModel implements Serializable {
         return environments;
     }
 
+    /**
+     * Returns the number of commands in the model, counting the commands of the build and of every task once for each
+     * environment they apply to. This is a measure of the size of the model that grows with environment matrices.
+     *
+     * @return the number of commands in the model.
+     * @since 0.7
+     */
+    public long getCommandCount() {
+        long count = 0;
+        for (List<String> commands : build.getCommands().values()) {
+            count += commands.size();
+        }
+        for (TaskCommands task : tasks.values()) {
+            for (List<String> commands : task.getCommands().values()) {
+                count += commands.size();
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Returns {@code true} if the builder settled for a partial reading of the source to stay within the
+     * {@link ProjectModelRequest#getMaxParseTimeMillis()}. Such a model may lack details such as the labels and
+     * parameters of the commands, and building the same source again may well give the complete model, so it should
+     * not be remembered in place of the source.
+     *
+     * @return {@code true} if the model was built from a partial reading of the source.
+     * @since 0.7
+     */
+    public boolean isDegraded() {
+        return degraded;
+    }
+
     /**
      * Return the environment variables that apply to the given execution environment.
      * 
@@ -210,6 +250,10 @@ public class ProjectModel implements Serializable {
          */
         @NonNull
         private final Map<String, TaskCommands> tasks = new LinkedHashMap<String, TaskCommands>();
+        /**
+         * {@code true} if the model is built from a partial reading of the source.
+         */
+        private boolean degraded;
 
         /**
          * Use {@link org.cloudbees.literate.api.v1.ProjectModel#builder()}.
@@ -491,6 +535,20 @@ public class ProjectModel implements Serializable {
             return this;
         }
 
+        /**
+         * Marks the model as built from a partial reading of the source.
+         *
+         * @param degraded {@code true} if the model is built from a partial reading of the source.
+         * @return {@code this} for method chaining.
+         * @see ProjectModel#isDegraded()
+         * @since 0.7
+         */
+        @NonNull
+        public Builder withDegraded(boolean degraded) {
+            this.degraded = degraded;
+            return this;
+        }
+
         /**
          * Builds the {@link ProjectModel} instance.
          *
@@ -502,7 +560,8 @@ public class ProjectModel implements Serializable {
                     ? Collections.singletonList(ExecutionEnvironment.any())
                     : environments,
                     new BuildCommands(build, buildParameters),
-                    tasks);
+                    tasks,
+                    degraded);
             model.checkValid();
             return model;
         }
@@ -0,0 +1,204 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2013, CloudBees, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.cloudbees.literate.api.v1;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import net.jcip.annotations.ThreadSafe;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The results of {@link ProjectModelSource#submitAll(java.util.Collection, int)}, available in the order in which
+ * the requests complete. A failed request does not abort the batch, its failure is reported in its
+ * {@link ProjectModelResult}.
+ *
+ * @since 0.7
+ */
+@ThreadSafe
+public final class ProjectModelBatch {
+
+    /**
+     * The executor running the batch.
+     */
+    @NonNull
+    private final ExecutorService executor;
+
+    /**
+     * The requests as they complete.
+     */
+    @NonNull
+    private final BlockingQueue<Task> completed = new LinkedBlockingQueue<Task>();
+
+    /**
+     * The number of requests in the batch.
+     */
+    private volatile int size;
+
+    /**
+     * The number of results not yet taken.
+     */
+    @NonNull
+    private final AtomicInteger remaining = new AtomicInteger();
+
+    /**
+     * Constructor.
+     *
+     * @param executor the executor running the batch.
+     */
+    ProjectModelBatch(@NonNull ExecutorService executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * Adds a request to the batch, only called while the batch is being created.
+     *
+     * @param request the request.
+     * @param build   builds the result of the request.
+     */
+    void submit(@NonNull ProjectModelRequest request, @NonNull Callable<ProjectModelResult> build) {
+        Task task = new Task(request, build);
+        executor.execute(task);
+        size++;
+        remaining.incrementAndGet();
+    }
+
+    /**
+     * Returns the number of requests in the batch.
+     *
+     * @return the number of requests in the batch.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns {@code true} if there are results that have not been taken yet.
+     *
+     * @return {@code true} if there are results that have not been taken yet.
+     */
+    public boolean hasNext() {
+        return remaining.get() > 0;
+    }
+
+    /**
+     * Waits for the next request to complete and returns its result.
+     *
+     * @return the result of the next request to complete.
+     * @throws InterruptedException   if interrupted while waiting, in which case no result is taken.
+     * @throws NoSuchElementException if all the results have been taken.
+     */
+    @NonNull
+    public ProjectModelResult next() throws InterruptedException {
+        if (remaining.getAndDecrement() <= 0) {
+            remaining.incrementAndGet();
+            throw new NoSuchElementException();
+        }
+        Task task;
+        try {
+            task = completed.take();
+        } catch (InterruptedException e) {
+            remaining.incrementAndGet();
+            throw e;
+        }
+        try {
+            return task.get();
+        } catch (CancellationException e) {
+            return ProjectModelResult.failure(task.request, e);
+        } catch (ExecutionException e) {
+            // the tasks catch every exception, so only errors get here
+            Throwable cause = e.getCause();
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException(cause);
+        }
+    }
+
+    /**
+     * Waits for all the remaining requests to complete and returns their results.
+     *
+     * @return the results of the remaining requests in the order in which they completed.
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    @NonNull
+    public List<ProjectModelResult> awaitAll() throws InterruptedException {
+        List<ProjectModelResult> result = new ArrayList<ProjectModelResult>(Math.max(0, remaining.get()));
+        while (hasNext()) {
+            result.add(next());
+        }
+        return result;
+    }
+
+    /**
+     * Abandons the requests that have not started yet and interrupts those in progress. Every request still gets a
+     * result: the abandoned ones fail with a {@link CancellationException} and those in progress complete however
+     * their interruption leaves them.
+     */
+    public void cancel() {
+        for (Runnable task : executor.shutdownNow()) {
+            ((Task) task).cancel(false);
+        }
+    }
+
+    /**
+     * A request of the batch that queues itself for {@link #next()} once done, whether it ran or was cancelled.
+     */
+    private final class Task extends FutureTask<ProjectModelResult> {
+
+        /**
+         * The request.
+         */
+        @NonNull
+        private final ProjectModelRequest request;
+
+        /**
+         * Constructor.
+         *
+         * @param request the request.
+         * @param build   builds the result of the request.
+         */
+        private Task(@NonNull ProjectModelRequest request, @NonNull Callable<ProjectModelResult> build) {
+            super(build);
+            this.request = request;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        protected void done() {
+            completed.add(this);
+        }
+    }
+}
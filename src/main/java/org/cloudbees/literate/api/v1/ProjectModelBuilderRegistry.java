@@ -0,0 +1,178 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2013, CloudBees, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.cloudbees.literate.api.v1;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import net.jcip.annotations.ThreadSafe;
+import org.cloudbees.literate.spi.v1.ProjectModelBuilder;
+
+import java.lang.ref.Reference;
+import java.lang.ref.SoftReference;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.ServiceLoader;
+import java.util.Set;
+import java.util.WeakHashMap;
+
+/**
+ * The {@link ProjectModelBuilder} implementations that are visible from a specific {@link ClassLoader}, resolved,
+ * instantiated and sorted by {@link ProjectModelBuilder.Priority} once and then shared by every
+ * {@link ProjectModelSource} that uses the same class loader.
+ * <p/>
+ * The registry only holds a weak reference to its class loader and the per class loader registries are only softly
+ * reachable from the static lookup table, so a plugin class loader can still be garbage collected after it has been
+ * discarded. If the implementations available from a class loader change, call {@link #refresh()}.
+ *
+ * @since 0.7
+ */
+@ThreadSafe
+public final class ProjectModelBuilderRegistry {
+
+    /**
+     * The registries by class loader.
+     */
+    private static final Map<ClassLoader, Reference<ProjectModelBuilderRegistry>> registries =
+            new WeakHashMap<ClassLoader, Reference<ProjectModelBuilderRegistry>>();
+
+    /**
+     * The classloader.
+     */
+    @NonNull
+    private final Reference<ClassLoader> classLoader;
+
+    /**
+     * The builders in decreasing {@link ProjectModelBuilder.Priority} order.
+     */
+    @NonNull
+    private volatile List<ProjectModelBuilder> builders;
+
+    /**
+     * Use {@link #forClassLoader(ClassLoader)}.
+     *
+     * @param classLoader the classloader.
+     */
+    private ProjectModelBuilderRegistry(@NonNull ClassLoader classLoader) {
+        this.classLoader = new WeakReference<ClassLoader>(classLoader);
+        this.builders = load(classLoader);
+    }
+
+    /**
+     * Returns the registry for the specified class loader, creating it if necessary.
+     *
+     * @param classLoader the classloader.
+     * @return the registry.
+     */
+    @NonNull
+    public static ProjectModelBuilderRegistry forClassLoader(@NonNull ClassLoader classLoader) {
+        classLoader.getClass(); // throw NPE if null
+        synchronized (registries) {
+            Reference<ProjectModelBuilderRegistry> ref = registries.get(classLoader);
+            ProjectModelBuilderRegistry registry = ref == null ? null : ref.get();
+            if (registry == null) {
+                registry = new ProjectModelBuilderRegistry(classLoader);
+                registries.put(classLoader, new SoftReference<ProjectModelBuilderRegistry>(registry));
+            }
+            return registry;
+        }
+    }
+
+    /**
+     * Discards the registry of every class loader, so that the next {@link #forClassLoader(ClassLoader)} looks up the
+     * implementations again. Existing registry instances are not affected, use {@link #refresh()} for those.
+     */
+    public static void clear() {
+        synchronized (registries) {
+            registries.clear();
+        }
+    }
+
+    /**
+     * Looks up and sorts the implementations.
+     *
+     * @param classLoader the classloader.
+     * @return the implementations in decreasing priority order.
+     */
+    @NonNull
+    private static List<ProjectModelBuilder> load(@NonNull ClassLoader classLoader) {
+        List<ProjectModelBuilder> builders = new ArrayList<ProjectModelBuilder>();
+        for (ProjectModelBuilder builder : ServiceLoader.load(ProjectModelBuilder.class, classLoader)) {
+            builders.add(builder);
+        }
+        Collections.sort(builders, new ProjectModelBuilder.PriorityComparator());
+        return Collections.unmodifiableList(builders);
+    }
+
+    /**
+     * Returns the class loader that this registry resolves implementations from.
+     *
+     * @return the class loader or {@code null} if it has been garbage collected.
+     */
+    @CheckForNull
+    public ClassLoader getClassLoader() {
+        return classLoader.get();
+    }
+
+    /**
+     * Returns the builders in decreasing {@link ProjectModelBuilder.Priority} order.
+     *
+     * @return the builders in decreasing {@link ProjectModelBuilder.Priority} order.
+     */
+    @NonNull
+    public List<ProjectModelBuilder> getBuilders() {
+        return builders;
+    }
+
+    /**
+     * Returns the set of marker filename(s) that the builders support based on the supplied basename.
+     *
+     * @param basename the {@link ProjectModelRequest#getBaseName()}
+     * @return the set of marker filename(s) in decreasing {@link ProjectModelBuilder.Priority} order.
+     */
+    @NonNull
+    public Set<String> markerFiles(@NonNull String basename) {
+        basename.getClass(); // throw NPE if null;
+        Set<String> result = new LinkedHashSet<String>();
+        for (ProjectModelBuilder builder : builders) {
+            result.addAll(builder.markerFiles(basename));
+        }
+        return result;
+    }
+
+    /**
+     * Looks up the implementations from the class loader again, for example after the class loader has had new
+     * jars added to it.
+     */
+    public void refresh() {
+        ClassLoader classLoader = this.classLoader.get();
+        if (classLoader != null) {
+            builders = load(classLoader);
+        }
+    }
+
+}
@@ -55,4 +55,40 @@ public class ProjectModelBuildingException extends Exception {
         super(message, cause);
     }
 
+    /**
+     * Creates an instance without a stack trace, for the expected outcomes (such as a repository not being in the format of a builder) where
+     * filling in the stack trace would be wasted effort.
+     *
+     * @param message the message.
+     * @return the exception.
+     * @since 0.7
+     */
+    public static ProjectModelBuildingException stackless(String message) {
+        return new Stackless(message);
+    }
+
+    /**
+     * An instance without a stack trace.
+     */
+    private static final class Stackless extends ProjectModelBuildingException {
+        /**
+         * Ensure consistent serialization.
+         */
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * {@inheritDoc}
+         */
+        private Stackless(String message) {
+            super(message);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public Throwable fillInStackTrace() {
+            return this;
+        }
+    }
 }
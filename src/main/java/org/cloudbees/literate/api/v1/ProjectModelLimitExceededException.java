@@ -0,0 +1,113 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2013, CloudBees, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.cloudbees.literate.api.v1;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+
+/**
+ * Thrown when building a {@link ProjectModel} would exceed one of the limits of the {@link ProjectModelRequest}.
+ *
+ * @since 0.7
+ */
+public class ProjectModelLimitExceededException extends ProjectModelBuildingException {
+
+    /**
+     * Ensure consistent serialization.
+     */
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * The limits of a {@link ProjectModelRequest}.
+     */
+    public enum Limit {
+        /**
+         * {@link ProjectModelRequest#getMaxFileBytes()}.
+         */
+        FILE_BYTES,
+        /**
+         * {@link ProjectModelRequest#getMaxParseTimeMillis()}.
+         */
+        PARSE_TIME_MILLIS,
+        /**
+         * {@link ProjectModelRequest#getMaxModelSize()}.
+         */
+        MODEL_SIZE
+    }
+
+    /**
+     * The limit that was exceeded.
+     */
+    @NonNull
+    private final Limit limit;
+
+    /**
+     * The value of the limit.
+     */
+    private final long maximum;
+
+    /**
+     * Constructor.
+     *
+     * @param limit   the limit that was exceeded.
+     * @param maximum the value of the limit.
+     * @param message the message.
+     */
+    public ProjectModelLimitExceededException(@NonNull Limit limit, long maximum, String message) {
+        this(limit, maximum, message, null);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param limit   the limit that was exceeded.
+     * @param maximum the value of the limit.
+     * @param message the message.
+     * @param cause   the cause.
+     */
+    public ProjectModelLimitExceededException(@NonNull Limit limit, long maximum, String message, Throwable cause) {
+        super(message, cause);
+        limit.getClass(); // throw NPE if null
+        this.limit = limit;
+        this.maximum = maximum;
+    }
+
+    /**
+     * Returns the limit that was exceeded.
+     *
+     * @return the limit that was exceeded.
+     */
+    @NonNull
+    public Limit getLimit() {
+        return limit;
+    }
+
+    /**
+     * Returns the value of the limit.
+     *
+     * @return the value of the limit.
+     */
+    public long getMaximum() {
+        return maximum;
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2013, CloudBees, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.cloudbees.literate.api.v1;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+
+/**
+ * Receives measurements from the {@link ProjectModelSource} and the builders while a {@link ProjectModelRequest} is
+ * being processed. Supply an implementation with {@link ProjectModelRequest.Builder#withMetrics(ProjectModelMetrics)}.
+ * <p/>
+ * All the methods do nothing by default, so implementations only override the measurements they are interested in.
+ * The {@link #NOOP} instance is used when no metrics are requested and costs no allocation. Implementations are
+ * invoked from whichever thread processes the request and so must be thread safe.
+ *
+ * @since 0.7
+ */
+public abstract class ProjectModelMetrics {
+
+    /**
+     * The metrics that discard all measurements.
+     */
+    public static final ProjectModelMetrics NOOP = new ProjectModelMetrics() {
+    };
+
+    /**
+     * The timed phases of building a model.
+     */
+    public static enum Phase {
+        /**
+         * Listing the repository and detecting which builders apply.
+         */
+        PROBE,
+        /**
+         * Reading the marker file from the repository.
+         */
+        READ,
+        /**
+         * Parsing the marker file into its document model.
+         */
+        PARSE,
+        /**
+         * Applying conventions and environment variables to the parsed document.
+         */
+        DECORATE,
+        /**
+         * Building and validating the {@link ProjectModel}.
+         */
+        VALIDATE
+    }
+
+    /**
+     * The outcomes of offering a request to a builder.
+     */
+    public static enum Outcome {
+        /**
+         * The builder built the model.
+         */
+        SUCCESS,
+        /**
+         * The builder settled for a partial reading of the source to stay within the
+         * {@link ProjectModelRequest#getMaxParseTimeMillis()}, so the model may lack details such as the labels and
+         * parameters of the commands and is marked {@link ProjectModel#isDegraded()}. Reported by the builder ahead of
+         * {@link #SUCCESS}.
+         */
+        DEGRADED,
+        /**
+         * The request does not apply to the builder.
+         */
+        NOT_APPLICABLE,
+        /**
+         * The builder rejected the model as invalid.
+         */
+        INVALID,
+        /**
+         * The builder failed to access the repository or failed unexpectedly.
+         */
+        ERROR
+    }
+
+    /**
+     * Records the time taken by a phase.
+     *
+     * @param component the class of the source or builder reporting the measurement.
+     * @param phase     the phase.
+     * @param nanos     the elapsed time in nanoseconds.
+     */
+    public void time(@NonNull Class<?> component, @NonNull Phase phase, long nanos) {
+    }
+
+    /**
+     * Records the outcome of offering the request to a builder.
+     *
+     * @param builder the class of the builder.
+     * @param outcome the outcome.
+     */
+    public void outcome(@NonNull Class<?> builder, @NonNull Outcome outcome) {
+    }
+
+    /**
+     * Records the number of bytes read from the repository.
+     *
+     * @param component the class of the source or builder reporting the measurement.
+     * @param bytes     the number of bytes.
+     */
+    public void bytesRead(@NonNull Class<?> component, long bytes) {
+    }
+}
@@ -91,6 +91,33 @@ public class ProjectModelRequest {
     @NonNull
     private final Set<String> taskIds;
 
+    /**
+     * An opaque identifier of the content of the repository, such as a commit id, or {@code null} if unknown.
+     */
+    @CheckForNull
+    private final String revision;
+
+    /**
+     * The metrics to report to.
+     */
+    @NonNull
+    private final ProjectModelMetrics metrics;
+
+    /**
+     * The maximum size in bytes of any file read to build the model.
+     */
+    private final long maxFileBytes;
+
+    /**
+     * The maximum time in milliseconds to spend parsing.
+     */
+    private final long maxParseTimeMillis;
+
+    /**
+     * The maximum size of the model, as counted by {@link ProjectModel#getCommandCount()}.
+     */
+    private final long maxModelSize;
+
     /**
      * Use {@link #builder(org.cloudbees.literate.api.v1.vfs.ProjectRepository)}.
      *
@@ -99,13 +126,23 @@ public class ProjectModelRequest {
      * @param environmentsId the environment id.
      * @param buildId        the build id.
      * @param taskIds        the task ids.
+     * @param revision       the revision.
+     * @param metrics        the metrics.
+     * @param maxFileBytes       the maximum file size in bytes.
+     * @param maxParseTimeMillis the maximum parse time in milliseconds.
+     * @param maxModelSize       the maximum model size.
      */
     private ProjectModelRequest(@CheckForNull String baseName,
                                 @NonNull ProjectRepository repository,
                                 @CheckForNull String environmentsId,
                                 @CheckForNull String envvarsId,
                                 @CheckForNull String buildId,
-                                @NonNull List<String> taskIds) {
+                                @NonNull List<String> taskIds,
+                                @CheckForNull String revision,
+                                @CheckForNull ProjectModelMetrics metrics,
+                                long maxFileBytes,
+                                long maxParseTimeMillis,
+                                long maxModelSize) {
         repository.getClass();
         this.baseName = baseName == null ? "cloudbees" : baseName;
         this.repository = repository;
@@ -115,6 +152,11 @@ public class ProjectModelRequest {
                 ? Collections.singleton("deploy")
                 : Collections.unmodifiableSet(new TreeSet<String>(taskIds));
         this.envvarsId = envvarsId == null ? "env" : envvarsId;
+        this.revision = revision;
+        this.metrics = metrics == null ? ProjectModelMetrics.NOOP : metrics;
+        this.maxFileBytes = maxFileBytes;
+        this.maxParseTimeMillis = maxParseTimeMillis;
+        this.maxModelSize = maxModelSize;
     }
 
     /**
@@ -177,6 +219,149 @@ public class ProjectModelRequest {
         return taskIds;
     }
 
+    /**
+     * Returns the opaque identifier of the content of the repository, such as a commit id. Two requests with the same
+     * base name and revision are assumed to see identical repository content, which allows the result of one to be
+     * reused for the other without accessing the repository.
+     *
+     * @return the revision or {@code null} if unknown.
+     * @since 0.7
+     */
+    @CheckForNull
+    public String getRevision() {
+        return revision;
+    }
+
+    /**
+     * Returns the metrics that the processing of this request reports to. The metrics are not part of the value of
+     * the request.
+     *
+     * @return the metrics, {@link ProjectModelMetrics#NOOP} if none were requested.
+     * @since 0.7
+     */
+    @NonNull
+    public ProjectModelMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Returns the maximum size in bytes of any file that is read to build the model, such as the marker file. Larger
+     * files are rejected with a {@link ProjectModelLimitExceededException} before they are read into memory.
+     *
+     * @return the maximum size in bytes, {@link Long#MAX_VALUE} if unlimited.
+     * @since 0.7
+     */
+    public long getMaxFileBytes() {
+        return maxFileBytes;
+    }
+
+    /**
+     * Returns the maximum time in milliseconds to spend parsing the source model. Builders check the time where they
+     * can, an individual step may overrun it. When the time runs out a builder may settle for a partial reading of
+     * the source and report {@link ProjectModelMetrics.Outcome#DEGRADED}, as the Markdown builder does by extracting
+     * only the code blocks under the section headers. Otherwise, or if the partial reading would leave out the
+     * environments or find no commands, building fails with a {@link ProjectModelLimitExceededException}.
+     *
+     * @return the maximum time in milliseconds, {@link Long#MAX_VALUE} if unlimited.
+     * @since 0.7
+     */
+    public long getMaxParseTimeMillis() {
+        return maxParseTimeMillis;
+    }
+
+    /**
+     * Returns the maximum size of the resulting model, as counted by {@link ProjectModel#getCommandCount()}, larger
+     * models are rejected with a {@link ProjectModelLimitExceededException}.
+     *
+     * @return the maximum size, {@link Long#MAX_VALUE} if unlimited.
+     * @since 0.7
+     */
+    public long getMaxModelSize() {
+        return maxModelSize;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        ProjectModelRequest that = (ProjectModelRequest) o;
+        return baseName.equals(that.baseName)
+                && buildId.equals(that.buildId)
+                && environmentsId.equals(that.environmentsId)
+                && envvarsId.equals(that.envvarsId)
+                && taskIds.equals(that.taskIds)
+                && (revision == null ? that.revision == null : revision.equals(that.revision))
+                && maxFileBytes == that.maxFileBytes
+                && maxParseTimeMillis == that.maxParseTimeMillis
+                && maxModelSize == that.maxModelSize
+                && repository.equals(that.repository);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int hashCode() {
+        int result = baseName.hashCode();
+        result = 31 * result + buildId.hashCode();
+        result = 31 * result + environmentsId.hashCode();
+        result = 31 * result + envvarsId.hashCode();
+        result = 31 * result + taskIds.hashCode();
+        result = 31 * result + (revision == null ? 0 : revision.hashCode());
+        result = 31 * result + (int) (maxFileBytes ^ (maxFileBytes >>> 32));
+        result = 31 * result + (int) (maxParseTimeMillis ^ (maxParseTimeMillis >>> 32));
+        result = 31 * result + (int) (maxModelSize ^ (maxModelSize >>> 32));
+        result = 31 * result + repository.hashCode();
+        return result;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder("ProjectModelRequest{");
+        sb.append("baseName='").append(baseName).append('\'');
+        sb.append(", repository=").append(repository);
+        sb.append(", environmentsId='").append(environmentsId).append('\'');
+        sb.append(", envvarsId='").append(envvarsId).append('\'');
+        sb.append(", buildId='").append(buildId).append('\'');
+        sb.append(", taskIds=").append(taskIds);
+        if (revision != null) {
+            sb.append(", revision='").append(revision).append('\'');
+        }
+        if (maxFileBytes != Long.MAX_VALUE) {
+            sb.append(", maxFileBytes=").append(maxFileBytes);
+        }
+        if (maxParseTimeMillis != Long.MAX_VALUE) {
+            sb.append(", maxParseTimeMillis=").append(maxParseTimeMillis);
+        }
+        if (maxModelSize != Long.MAX_VALUE) {
+            sb.append(", maxModelSize=").append(maxModelSize);
+        }
+        sb.append('}');
+        return sb.toString();
+    }
+
+    /**
+     * Returns a copy of this request that will build the project model from a different repository.
+     *
+     * @param repository the repository to construct the project model from.
+     * @return the copy of this request.
+     */
+    @NonNull
+    ProjectModelRequest withRepository(@NonNull ProjectRepository repository) {
+        return new ProjectModelRequest(baseName, repository, environmentsId, envvarsId, buildId,
+                new ArrayList<String>(taskIds), revision, metrics, maxFileBytes, maxParseTimeMillis, maxModelSize);
+    }
+
     /**
      * Instantiates a new {@link Builder}.
      *
@@ -237,6 +422,33 @@ public class ProjectModelRequest {
         @NonNull
         private final List<String> taskIds = new ArrayList<String>();
 
+        /**
+         * An opaque identifier of the content of the repository, such as a commit id.
+         */
+        @CheckForNull
+        private String revision;
+
+        /**
+         * The metrics to report to.
+         */
+        @CheckForNull
+        private ProjectModelMetrics metrics;
+
+        /**
+         * The maximum size in bytes of any file read to build the model.
+         */
+        private long maxFileBytes = Long.MAX_VALUE;
+
+        /**
+         * The maximum time in milliseconds to spend parsing.
+         */
+        private long maxParseTimeMillis = Long.MAX_VALUE;
+
+        /**
+         * The maximum size of the model.
+         */
+        private long maxModelSize = Long.MAX_VALUE;
+
         /**
          * Use {@link ProjectModelRequest#builder(org.cloudbees.literate.api.v1.vfs.ProjectRepository)}.
          *
@@ -295,6 +507,86 @@ public class ProjectModelRequest {
             return this;
         }
 
+        /**
+         * Configure the revision of the repository content for the request. Only supply a revision that identifies
+         * the content immutably, such as a commit id, and not one that can move, such as a branch name.
+         *
+         * @param revision the opaque identifier of the content of the repository.
+         * @return {@code this} for method chaining.
+         * @since 0.7
+         */
+        @NonNull
+        public Builder withRevision(@CheckForNull String revision) {
+            this.revision = revision;
+            return this;
+        }
+
+        /**
+         * Configure the metrics that the processing of the request reports to.
+         *
+         * @param metrics the metrics or {@code null} to not report any.
+         * @return {@code this} for method chaining.
+         * @since 0.7
+         */
+        @NonNull
+        public Builder withMetrics(@CheckForNull ProjectModelMetrics metrics) {
+            this.metrics = metrics;
+            return this;
+        }
+
+        /**
+         * Configure the maximum size in bytes of any file read to build the model.
+         *
+         * @param maxFileBytes the maximum size in bytes, {@link Long#MAX_VALUE} for unlimited.
+         * @return {@code this} for method chaining.
+         * @since 0.7
+         */
+        @NonNull
+        public Builder withMaxFileBytes(long maxFileBytes) {
+            this.maxFileBytes = checkLimit(maxFileBytes);
+            return this;
+        }
+
+        /**
+         * Configure the maximum time in milliseconds to spend parsing the source model.
+         *
+         * @param maxParseTimeMillis the maximum time in milliseconds, {@link Long#MAX_VALUE} for unlimited.
+         * @return {@code this} for method chaining.
+         * @since 0.7
+         */
+        @NonNull
+        public Builder withMaxParseTimeMillis(long maxParseTimeMillis) {
+            this.maxParseTimeMillis = checkLimit(maxParseTimeMillis);
+            return this;
+        }
+
+        /**
+         * Configure the maximum size of the resulting model, as counted by {@link ProjectModel#getCommandCount()}.
+         *
+         * @param maxModelSize the maximum size, {@link Long#MAX_VALUE} for unlimited.
+         * @return {@code this} for method chaining.
+         * @since 0.7
+         */
+        @NonNull
+        public Builder withMaxModelSize(long maxModelSize) {
+            this.maxModelSize = checkLimit(maxModelSize);
+            return this;
+        }
+
+        /**
+         * Checks the value of a limit.
+         *
+         * @param limit the limit.
+         * @return the limit.
+         * @throws IllegalArgumentException if the limit is not positive.
+         */
+        private static long checkLimit(long limit) {
+            if (limit <= 0) {
+                throw new IllegalArgumentException("Limits must be positive");
+            }
+            return limit;
+        }
+
         /**
          * Adds a task id to the request.
          *
@@ -345,7 +637,8 @@ public class ProjectModelRequest {
          */
         @NonNull
         public ProjectModelRequest build() {
-            return new ProjectModelRequest(baseName, repository, environmentsId, envvarsId, buildId, taskIds);
+            return new ProjectModelRequest(baseName, repository, environmentsId, envvarsId, buildId, taskIds,
+                    revision, metrics, maxFileBytes, maxParseTimeMillis, maxModelSize);
         }
     }
 }
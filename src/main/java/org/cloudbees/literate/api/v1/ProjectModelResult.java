@@ -0,0 +1,177 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2013, CloudBees, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.cloudbees.literate.api.v1;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import net.jcip.annotations.Immutable;
+
+import java.io.IOException;
+
+/**
+ * The outcome of one {@link ProjectModelRequest} of a {@link ProjectModelBatch}: either the {@link ProjectModel} or
+ * the exception that building it failed with.
+ *
+ * @since 0.7
+ */
+@Immutable
+public final class ProjectModelResult {
+
+    /**
+     * The request.
+     */
+    @NonNull
+    private final ProjectModelRequest request;
+
+    /**
+     * The model or {@code null} if the request failed.
+     */
+    @CheckForNull
+    private final ProjectModel model;
+
+    /**
+     * The failure or {@code null} if the request succeeded.
+     */
+    @CheckForNull
+    private final Exception failure;
+
+    /**
+     * Constructor.
+     *
+     * @param request the request.
+     * @param model   the model or {@code null} if the request failed.
+     * @param failure the failure or {@code null} if the request succeeded.
+     */
+    private ProjectModelResult(@NonNull ProjectModelRequest request, @CheckForNull ProjectModel model,
+                               @CheckForNull Exception failure) {
+        this.request = request;
+        this.model = model;
+        this.failure = failure;
+    }
+
+    /**
+     * Creates a successful result.
+     *
+     * @param request the request.
+     * @param model   the model.
+     * @return the result.
+     */
+    @NonNull
+    static ProjectModelResult success(@NonNull ProjectModelRequest request, @NonNull ProjectModel model) {
+        return new ProjectModelResult(request, model, null);
+    }
+
+    /**
+     * Creates a failed result.
+     *
+     * @param request the request.
+     * @param failure the failure.
+     * @return the result.
+     */
+    @NonNull
+    static ProjectModelResult failure(@NonNull ProjectModelRequest request, @NonNull Exception failure) {
+        return new ProjectModelResult(request, null, failure);
+    }
+
+    /**
+     * Returns the request.
+     *
+     * @return the request.
+     */
+    @NonNull
+    public ProjectModelRequest getRequest() {
+        return request;
+    }
+
+    /**
+     * Returns {@code true} if the model was built.
+     *
+     * @return {@code true} if the model was built.
+     */
+    public boolean isSuccess() {
+        return failure == null;
+    }
+
+    /**
+     * Returns the model.
+     *
+     * @return the model or {@code null} if the request failed.
+     */
+    @CheckForNull
+    public ProjectModel getModel() {
+        return model;
+    }
+
+    /**
+     * Returns the failure, typically an {@link IOException} or a {@link ProjectModelBuildingException}, or a
+     * {@link java.util.concurrent.CancellationException} if the batch was cancelled before the request started.
+     *
+     * @return the failure or {@code null} if the request succeeded.
+     */
+    @CheckForNull
+    public Exception getFailure() {
+        return failure;
+    }
+
+    /**
+     * Returns the model or throws the failure, the same way {@link ProjectModelSource#submit(ProjectModelRequest)}
+     * would have.
+     *
+     * @return the model.
+     * @throws IOException                   if there were IO problems connecting to the repository.
+     * @throws ProjectModelBuildingException if the repository did not contain a valid model definition.
+     */
+    @NonNull
+    public ProjectModel get() throws IOException, ProjectModelBuildingException {
+        if (failure instanceof IOException) {
+            throw (IOException) failure;
+        }
+        if (failure instanceof ProjectModelBuildingException) {
+            throw (ProjectModelBuildingException) failure;
+        }
+        if (failure instanceof RuntimeException) {
+            throw (RuntimeException) failure;
+        }
+        if (failure != null) {
+            throw new ProjectModelBuildingException(failure);
+        }
+        return model;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder("ProjectModelResult{");
+        sb.append("request=").append(request);
+        if (failure == null) {
+            sb.append(", model=").append(model);
+        } else {
+            sb.append(", failure=").append(failure);
+        }
+        sb.append('}');
+        return sb.toString();
+    }
+}
@@ -23,17 +23,24 @@
  */
 package org.cloudbees.literate.api.v1;
 
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import edu.umd.cs.findbugs.annotations.NonNull;
 import net.jcip.annotations.Immutable;
+import org.cloudbees.literate.api.v1.vfs.ProjectRepository;
+import org.cloudbees.literate.spi.v1.DetectingProjectModelBuilder;
 import org.cloudbees.literate.spi.v1.ProjectModelBuilder;
 
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.LinkedHashSet;
-import java.util.List;
+import java.util.Collection;
 import java.util.ServiceLoader;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 
 /**
  * A source of {@link ProjectModel} instances. The source depends on what SPI implementations are available on the
@@ -44,9 +51,9 @@ import java.util.Set;
 public class ProjectModelSource {
 
     /**
-     * The classloader.
+     * The builders available from the classloader.
      */
-    private final ClassLoader classLoader;
+    private final ProjectModelBuilderRegistry registry;
 
     /**
      * Constructs an instance from a specific classloader.
@@ -55,7 +62,7 @@ public class ProjectModelSource {
      */
     public ProjectModelSource(ClassLoader classLoader) {
         classLoader.getClass(); // throw NPE if null
-        this.classLoader = classLoader;
+        this.registry = ProjectModelBuilderRegistry.forClassLoader(classLoader);
     }
 
     /**
@@ -65,6 +72,17 @@ public class ProjectModelSource {
         this(Thread.currentThread().getContextClassLoader());
     }
 
+    /**
+     * Returns the registry of {@link ProjectModelBuilder} implementations that this source uses.
+     *
+     * @return the registry of {@link ProjectModelBuilder} implementations that this source uses.
+     * @since 0.7
+     */
+    @NonNull
+    public ProjectModelBuilderRegistry getRegistry() {
+        return registry;
+    }
+
     /**
      * Returns the set of marker filename(s) that the source supports based on the supplied basename.
      * The presence of a marker file in a project root indicates that the project root is worth attempting
@@ -75,21 +93,19 @@ public class ProjectModelSource {
      */
     @NonNull
     public Set<String> markerFiles(@NonNull String basename) {
-        basename.getClass(); // throw NPE if null;
-        Set<String> result = new LinkedHashSet<String>();
-        List<ProjectModelBuilder> builders = new ArrayList<ProjectModelBuilder>();
-        for (ProjectModelBuilder builder : ServiceLoader.load(ProjectModelBuilder.class, classLoader)) {
-            builders.add(builder);
-        }
-        Collections.sort(builders, new ProjectModelBuilder.PriorityComparator());
-        for (ProjectModelBuilder builder : builders) {
-            result.addAll(builder.markerFiles(basename));
-        }
-        return result;
+        return registry.markerFiles(basename);
     }
 
     /**
-     * Submits a request and returns the resulting model
+     * Submits a request and returns the resulting model.
+     * <p/>
+     * The marker files of all the builders are looked for in the root of the
+     * {@link ProjectModelRequest#getRepository()} with a single filtered listing, and the request is only passed to
+     * the builders that have at least one of their {@link ProjectModelBuilder#markerFiles(String)} in that listing
+     * (builders that do not declare any marker files are always tried). The builders see a view of the repository
+     * that answers {@link ProjectRepository#isFile(String)} for the marker files from that same listing.
+     * Builders that are {@link DetectingProjectModelBuilder}s are asked to detect whether the request applies to them
+     * rather than being left to throw a {@link ProjectModelBuildingException} when it does not.
      *
      * @param request the request.
      * @return the {@link ProjectModel}.
@@ -101,24 +117,59 @@ public class ProjectModelSource {
     @NonNull
     public ProjectModel submit(@NonNull ProjectModelRequest request) throws IOException, ProjectModelBuildingException {
         request.getClass(); // throw NPE if null
+        ProjectModelMetrics metrics = request.getMetrics();
+        long start = System.nanoTime();
+        ListedProjectRepository listed =
+                ListedProjectRepository.list(request.getRepository(), markerFiles(request.getBaseName()));
+        metrics.time(ProjectModelSource.class, ProjectModelMetrics.Phase.PROBE, System.nanoTime() - start);
+        if (listed != null) {
+            request = request.withRepository(listed);
+        }
         IOException ioe = null;
         ProjectModelBuildingException pmbe = null;
-        List<ProjectModelBuilder> builders = new ArrayList<ProjectModelBuilder>();
-        for (ProjectModelBuilder builder : ServiceLoader.load(ProjectModelBuilder.class, classLoader)) {
-            builders.add(builder);
-        }
-        Collections.sort(builders, new ProjectModelBuilder.PriorityComparator());
-        for (ProjectModelBuilder builder : builders) {
+        for (ProjectModelBuilder builder : registry.getBuilders()) {
+            Class<? extends ProjectModelBuilder> builderClass = builder.getClass();
+            if (listed != null) {
+                Collection<String> markerFiles = builder.markerFiles(request.getBaseName());
+                if (!markerFiles.isEmpty() && !listed.containsAny(markerFiles)) {
+                    metrics.outcome(builderClass, ProjectModelMetrics.Outcome.NOT_APPLICABLE);
+                    continue;
+                }
+            }
             try {
-                return builder.build(request);
+                ProjectModel model;
+                if (builder instanceof DetectingProjectModelBuilder) {
+                    DetectingProjectModelBuilder detecting = (DetectingProjectModelBuilder) builder;
+                    start = System.nanoTime();
+                    String markerFile = detecting.detect(request);
+                    metrics.time(builderClass, ProjectModelMetrics.Phase.PROBE, System.nanoTime() - start);
+                    if (markerFile == null) {
+                        metrics.outcome(builderClass, ProjectModelMetrics.Outcome.NOT_APPLICABLE);
+                        continue;
+                    }
+                    model = detecting.build(request, markerFile);
+                } else {
+                    model = builder.build(request);
+                }
+                metrics.outcome(builderClass, ProjectModelMetrics.Outcome.SUCCESS);
+                return model;
             } catch (IOException e) {
+                metrics.outcome(builderClass, ProjectModelMetrics.Outcome.ERROR);
                 if (ioe == null) {
                     ioe = e;
                 }
+            } catch (ProjectModelLimitExceededException e) {
+                // the other builders would only spend the same budget again
+                metrics.outcome(builderClass, ProjectModelMetrics.Outcome.INVALID);
+                throw e;
             } catch (ProjectModelBuildingException e) {
+                metrics.outcome(builderClass, ProjectModelMetrics.Outcome.INVALID);
                 if (pmbe == null) {
                     pmbe = e;
                 }
+            } catch (RuntimeException e) {
+                metrics.outcome(builderClass, ProjectModelMetrics.Outcome.ERROR);
+                throw e;
             }
         }
         if (ioe != null) {
@@ -127,7 +178,172 @@ public class ProjectModelSource {
         if (pmbe != null) {
             throw pmbe;
         }
-        throw new ProjectModelBuildingException("Could not find a builder to instantiate a model");
+        if (listed != null) {
+            throw ProjectModelBuildingException.stackless(
+                    "Not a literate project, none of " + markerFiles(request.getBaseName()) + " are present");
+        }
+        throw ProjectModelBuildingException.stackless("Could not find a builder to instantiate a model");
+    }
+
+    /**
+     * Submits a request without blocking the caller, using the default executors. The default repository access
+     * executor uses a virtual thread per task when running on a JVM that supports them, and a cached pool of daemon
+     * threads otherwise. The default parsing executor is a pool of daemon threads sized to the number of processors.
+     *
+     * @param request the request.
+     * @return the future {@link ProjectModel}, which will fail with the exceptions {@link #submit(ProjectModelRequest)}
+     *         would have thrown.
+     * @since 0.7
+     */
+    @NonNull
+    public ListenableFuture<ProjectModel> submitAsync(@NonNull ProjectModelRequest request) {
+        return submitAsync(request, DefaultExecutors.IO, DefaultExecutors.PARSE);
+    }
+
+    /**
+     * Submits a request without blocking the caller. The listing of the repository and the reading of the marker
+     * files are performed on {@code ioExecutor} while the parsing and validation of the model are performed on
+     * {@code parseExecutor}, so that slow repositories do not starve the parsing of the models of fast ones.
+     *
+     * @param request       the request.
+     * @param ioExecutor    the executor to access the {@link ProjectModelRequest#getRepository()} from.
+     * @param parseExecutor the executor to build the model from.
+     * @return the future {@link ProjectModel}, which will fail with the exceptions {@link #submit(ProjectModelRequest)}
+     *         would have thrown.
+     * @since 0.7
+     */
+    @NonNull
+    public ListenableFuture<ProjectModel> submitAsync(@NonNull final ProjectModelRequest request,
+                                                      @NonNull Executor ioExecutor,
+                                                      @NonNull final Executor parseExecutor) {
+        request.getClass(); // throw NPE if null
+        ioExecutor.getClass(); // throw NPE if null
+        parseExecutor.getClass(); // throw NPE if null
+        final SettableFuture<ProjectModel> result = SettableFuture.create();
+        try {
+            ioExecutor.execute(new Runnable() {
+                //@Override
+                public void run() {
+                    if (result.isDone()) {
+                        return;
+                    }
+                    try {
+                        final ProjectModelRequest prefetched = prefetch(request);
+                        parseExecutor.execute(new Runnable() {
+                            //@Override
+                            public void run() {
+                                if (result.isDone()) {
+                                    return;
+                                }
+                                try {
+                                    result.set(submit(prefetched));
+                                } catch (Throwable t) {
+                                    result.setException(t);
+                                }
+                            }
+                        });
+                    } catch (Throwable t) {
+                        result.setException(t);
+                    }
+                }
+            });
+        } catch (RuntimeException e) {
+            result.setException(e);
+        }
+        return result;
+    }
+
+    /**
+     * Submits a batch of requests that will be built in parallel. All the requests share the builders of this source.
+     *
+     * @param requests    the requests.
+     * @param parallelism the maximum number of requests to build at the same time.
+     * @return the batch, from which the results can be taken as the requests complete.
+     * @since 0.7
+     */
+    @NonNull
+    public ProjectModelBatch submitAll(@NonNull Collection<ProjectModelRequest> requests, int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be positive");
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(parallelism, Math.max(1, requests.size())),
+                DefaultExecutors.newThreadFactory("literate-batch-%d"));
+        ProjectModelBatch batch = new ProjectModelBatch(executor);
+        try {
+            for (final ProjectModelRequest request : requests) {
+                request.getClass(); // throw NPE if null
+                batch.submit(request, new Callable<ProjectModelResult>() {
+                    //@Override
+                    public ProjectModelResult call() {
+                        try {
+                            return ProjectModelResult.success(request, submit(request));
+                        } catch (Exception e) {
+                            return ProjectModelResult.failure(request, e);
+                        }
+                    }
+                });
+            }
+        } finally {
+            // lets the threads exit once the queued requests are done
+            executor.shutdown();
+        }
+        return batch;
+    }
+
+    /**
+     * Looks for the marker files in the repository root and reads those that are present so that the returned
+     * request can be built without blocking on the repository.
+     *
+     * @param request the request.
+     * @return the request to build.
+     * @throws IOException if the marker files could not be read.
+     */
+    @NonNull
+    private ProjectModelRequest prefetch(@NonNull ProjectModelRequest request) throws IOException {
+        Set<String> markerFiles = markerFiles(request.getBaseName());
+        ListedProjectRepository listed = ListedProjectRepository.list(request.getRepository(), markerFiles);
+        return listed == null
+                ? request
+                : request.withRepository(listed.prefetch(markerFiles, request.getMaxFileBytes()));
+    }
+
+    /**
+     * The default executors for {@link #submitAsync(ProjectModelRequest)}, only created on first use.
+     */
+    private static final class DefaultExecutors {
+        /**
+         * The executor for repository access.
+         */
+        private static final Executor IO = newIoExecutor();
+        /**
+         * The executor for parsing.
+         */
+        private static final Executor PARSE = Executors.newFixedThreadPool(
+                Runtime.getRuntime().availableProcessors(), newThreadFactory("literate-parse-%d"));
+
+        /**
+         * Creates the repository access executor, preferring virtual threads when the JVM provides them.
+         *
+         * @return the repository access executor.
+         */
+        private static Executor newIoExecutor() {
+            try {
+                // Java 21+, looked up reflectively as we still run on older JVMs
+                return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+            } catch (Exception e) {
+                return Executors.newCachedThreadPool(newThreadFactory("literate-io-%d"));
+            }
+        }
+
+        /**
+         * Creates a factory of daemon threads.
+         *
+         * @param nameFormat the thread name format.
+         * @return the thread factory.
+         */
+        private static ThreadFactory newThreadFactory(String nameFormat) {
+            return new ThreadFactoryBuilder().setDaemon(true).setNameFormat(nameFormat).build();
+        }
     }
 
 }
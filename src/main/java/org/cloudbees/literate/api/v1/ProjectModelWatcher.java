@@ -0,0 +1,447 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2013, CloudBees, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.cloudbees.literate.api.v1;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import net.jcip.annotations.GuardedBy;
+import net.jcip.annotations.ThreadSafe;
+import org.cloudbees.literate.api.v1.vfs.FilesystemRepository;
+import org.cloudbees.literate.api.v1.vfs.ProjectRepositories;
+import org.cloudbees.literate.api.v1.vfs.ProjectRepository;
+import org.cloudbees.literate.impl.MarkdownProjectModelBuilder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Watches the marker files of a {@link FilesystemRepository} and pushes a fresh {@link ProjectModel} to the
+ * registered {@link Listener}s whenever their content changes.
+ * <p/>
+ * The marker files and the {@link MarkdownProjectModelBuilder#FALLBACK_FILE} are polled for changes to their size and
+ * modification time. A burst of changes is debounced until the files have been quiet for the configured period, and
+ * the model is only rebuilt if the content of the files is actually different from the last successful build (so
+ * touching a file or an editor's save-and-restore is ignored). The first poll after {@link #start()} always builds
+ * the model, and a build that fails with an {@link IOException} or gives a {@link ProjectModel#isDegraded()} model is
+ * retried once the files are quiet again.
+ * <p/>
+ * Polling was chosen over {@code java.nio.file.WatchService} as this API still supports Java 6. Polling a handful
+ * of files costs a few {@code stat} calls per interval.
+ *
+ * @since 0.7
+ */
+@ThreadSafe
+public class ProjectModelWatcher {
+
+    /**
+     * The default interval between polls.
+     */
+    public static final long DEFAULT_POLL_INTERVAL_MILLIS = 500;
+
+    /**
+     * The default period the marker files must be unchanged for before the model is rebuilt.
+     */
+    public static final long DEFAULT_QUIET_PERIOD_MILLIS = 250;
+
+    /**
+     * The algorithm used to detect content changes.
+     */
+    private static final String DIGEST_ALGORITHM = "SHA-1";
+
+    /**
+     * The source that builds the models.
+     */
+    @NonNull
+    private final ProjectModelSource source;
+
+    /**
+     * The request to build.
+     */
+    @NonNull
+    private final ProjectModelRequest request;
+
+    /**
+     * The root of the {@link FilesystemRepository}.
+     */
+    @NonNull
+    private final File root;
+
+    /**
+     * The marker files.
+     */
+    @NonNull
+    private final Set<String> markerFiles;
+
+    /**
+     * The files being watched: the marker files and the fall-back file.
+     */
+    @NonNull
+    private final Set<String> watchedFiles;
+
+    /**
+     * The interval between polls in milliseconds.
+     */
+    private final long pollIntervalMillis;
+
+    /**
+     * The quiet period in milliseconds.
+     */
+    private final long quietPeriodMillis;
+
+    /**
+     * The listeners.
+     */
+    @NonNull
+    private final List<Listener> listeners = new CopyOnWriteArrayList<Listener>();
+
+    /**
+     * Serializes polls, and hence builds and callbacks.
+     */
+    @NonNull
+    private final Object pollLock = new Object();
+
+    /**
+     * The executor running the polls, or {@code null} when not started.
+     */
+    @GuardedBy("this")
+    @CheckForNull
+    private ScheduledExecutorService executor;
+
+    /**
+     * The size and modification time of the marker files as of the last poll.
+     */
+    @GuardedBy("pollLock")
+    @CheckForNull
+    private long[] lastStamp;
+
+    /**
+     * When the last change was seen, in {@link System#nanoTime()}.
+     */
+    @GuardedBy("pollLock")
+    private long lastChangeNanos;
+
+    /**
+     * {@code true} if a change has been seen that has not been built yet.
+     */
+    @GuardedBy("pollLock")
+    private boolean pending;
+
+    /**
+     * The digest of the watched files as of the last build that did not fail with an {@link IOException} or give a
+     * {@link ProjectModel#isDegraded()} model.
+     */
+    @GuardedBy("pollLock")
+    @CheckForNull
+    private byte[] lastDigest;
+
+    /**
+     * The most recently built model.
+     */
+    @CheckForNull
+    private volatile ProjectModel model;
+
+    /**
+     * Constructor using the default poll interval and quiet period.
+     *
+     * @param source  the source that builds the models.
+     * @param request the request to build, its {@link ProjectModelRequest#getRepository()} must be a
+     *                {@link FilesystemRepository}.
+     */
+    public ProjectModelWatcher(@NonNull ProjectModelSource source, @NonNull ProjectModelRequest request) {
+        this(source, request, DEFAULT_POLL_INTERVAL_MILLIS, DEFAULT_QUIET_PERIOD_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param source       the source that builds the models.
+     * @param request      the request to build, its {@link ProjectModelRequest#getRepository()} must be a
+     *                     {@link FilesystemRepository}.
+     * @param pollInterval the interval between polls.
+     * @param quietPeriod  how long the marker files must be unchanged before the model is rebuilt.
+     * @param unit         the unit of {@code pollInterval} and {@code quietPeriod}.
+     */
+    public ProjectModelWatcher(@NonNull ProjectModelSource source, @NonNull ProjectModelRequest request,
+                               long pollInterval, long quietPeriod, @NonNull TimeUnit unit) {
+        source.getClass(); // throw NPE if null
+        request.getClass(); // throw NPE if null
+        if (!(request.getRepository() instanceof FilesystemRepository)) {
+            throw new IllegalArgumentException("Only a FilesystemRepository can be watched");
+        }
+        if (pollInterval <= 0) {
+            throw new IllegalArgumentException("Poll interval must be positive");
+        }
+        if (quietPeriod < 0) {
+            throw new IllegalArgumentException("Quiet period must not be negative");
+        }
+        this.source = source;
+        this.request = request;
+        this.root = ((FilesystemRepository) request.getRepository()).getRoot();
+        this.markerFiles = new TreeSet<String>(source.markerFiles(request.getBaseName()));
+        this.watchedFiles = new TreeSet<String>(markerFiles);
+        this.watchedFiles.add(MarkdownProjectModelBuilder.FALLBACK_FILE);
+        this.pollIntervalMillis = unit.toMillis(pollInterval);
+        this.quietPeriodMillis = unit.toMillis(quietPeriod);
+        reset();
+    }
+
+    /**
+     * Registers a listener.
+     *
+     * @param listener the listener.
+     */
+    public void addListener(@NonNull Listener listener) {
+        listener.getClass(); // throw NPE if null
+        listeners.add(listener);
+    }
+
+    /**
+     * Unregisters a listener.
+     *
+     * @param listener the listener.
+     */
+    public void removeListener(@NonNull Listener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Returns the marker files being watched, the {@link MarkdownProjectModelBuilder#FALLBACK_FILE} is watched too.
+     *
+     * @return the marker files being watched.
+     */
+    @NonNull
+    public Set<String> getMarkerFiles() {
+        return Collections.unmodifiableSet(markerFiles);
+    }
+
+    /**
+     * Returns the most recently built model.
+     *
+     * @return the most recently built model or {@code null} if none has been built successfully yet.
+     */
+    @CheckForNull
+    public ProjectModel getModel() {
+        return model;
+    }
+
+    /**
+     * Returns {@code true} if the watcher is polling.
+     *
+     * @return {@code true} if the watcher is polling.
+     */
+    public synchronized boolean isStarted() {
+        return executor != null;
+    }
+
+    /**
+     * Starts polling on a background daemon thread. Does nothing if already started.
+     */
+    public synchronized void start() {
+        if (executor != null) {
+            return;
+        }
+        reset();
+        executor = Executors.newSingleThreadScheduledExecutor(
+                new ThreadFactoryBuilder().setDaemon(true).setNameFormat("literate-watcher-%d").build());
+        executor.scheduleWithFixedDelay(new Runnable() {
+            public void run() {
+                poll();
+            }
+        }, 0, pollIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops polling. Does nothing if not started.
+     */
+    public synchronized void stop() {
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+    }
+
+    /**
+     * Forgets the state of the marker files, so that the next poll builds the model.
+     */
+    private void reset() {
+        synchronized (pollLock) {
+            lastStamp = null;
+            lastDigest = null;
+            pending = true;
+            lastChangeNanos = System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(quietPeriodMillis);
+        }
+    }
+
+    /**
+     * Checks the watched files and rebuilds the model if their content has changed and they have been quiet for long
+     * enough. Called on the polling thread but may also be called directly, e.g. from tests.
+     */
+    void poll() {
+        synchronized (pollLock) {
+            long[] stamp = stamp();
+            long now = System.nanoTime();
+            if (!Arrays.equals(stamp, lastStamp)) {
+                if (lastStamp != null) {
+                    pending = true;
+                    lastChangeNanos = now;
+                }
+                lastStamp = stamp;
+            }
+            if (!pending || now - lastChangeNanos < TimeUnit.MILLISECONDS.toNanos(quietPeriodMillis)) {
+                return;
+            }
+            pending = false;
+            byte[] digest;
+            try {
+                digest = digest();
+            } catch (IOException e) {
+                // most likely a file being replaced under us, try again once things settle
+                pending = true;
+                lastChangeNanos = now;
+                return;
+            }
+            if (lastDigest != null && MessageDigest.isEqual(digest, lastDigest)) {
+                return;
+            }
+            ProjectModel model;
+            try {
+                model = source.submit(request);
+            } catch (Exception e) {
+                if (e instanceof IOException) {
+                    // the same content may well build next time
+                    pending = true;
+                    lastChangeNanos = now;
+                } else {
+                    lastDigest = digest;
+                }
+                for (Listener listener : listeners) {
+                    try {
+                        listener.onFailure(request, e);
+                    } catch (RuntimeException ignored) {
+                        // a misbehaving listener must not stop the polling
+                    }
+                }
+                return;
+            }
+            if (model.isDegraded()) {
+                // the same content may well build completely next time
+                pending = true;
+                lastChangeNanos = now;
+            } else {
+                lastDigest = digest;
+            }
+            this.model = model;
+            for (Listener listener : listeners) {
+                try {
+                    listener.onModel(request, model);
+                } catch (RuntimeException ignored) {
+                    // a misbehaving listener must not stop the polling
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the size and modification time of each watched file.
+     *
+     * @return the size and modification time of each watched file, both {@code 0} for missing files.
+     */
+    @NonNull
+    private long[] stamp() {
+        long[] stamp = new long[watchedFiles.size() * 2];
+        int i = 0;
+        for (String name : watchedFiles) {
+            File file = new File(root, name);
+            stamp[i++] = file.lastModified();
+            stamp[i++] = file.length();
+        }
+        return stamp;
+    }
+
+    /**
+     * Returns the digest of the names and content of the watched files that are present.
+     *
+     * @return the digest.
+     * @throws IOException if a watched file could not be read.
+     */
+    @NonNull
+    private byte[] digest() throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance(DIGEST_ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(DIGEST_ALGORITHM + " is a mandatory algorithm for all JVMs", e);
+        }
+        ProjectRepository repository = request.getRepository();
+        Set<String> present = ProjectRepositories.filterFiles(repository, watchedFiles);
+        for (Map.Entry<String, ByteBuffer> marker : ProjectRepositories.getAll(repository, present).entrySet()) {
+            digest.update(marker.getKey().getBytes("UTF-8"));
+            digest.update((byte) 0);
+            digest.update(marker.getValue().duplicate());
+            digest.update((byte) 0);
+        }
+        return digest.digest();
+    }
+
+    /**
+     * Receives the models built by a {@link ProjectModelWatcher}. Callbacks are made on the polling thread, one at a
+     * time.
+     *
+     * @since 0.7
+     */
+    public interface Listener {
+
+        /**
+         * Called when the content of the marker files has changed and the model was rebuilt.
+         *
+         * @param request the request that was built.
+         * @param model   the new model.
+         */
+        void onModel(@NonNull ProjectModelRequest request, @NonNull ProjectModel model);
+
+        /**
+         * Called when the content of the marker files has changed and the model could not be built, e.g. because the
+         * marker file is now invalid or has been removed. Also called each time a build that failed with an
+         * {@link IOException} is retried and fails again.
+         *
+         * @param request the request that was built.
+         * @param failure the failure.
+         */
+        void onFailure(@NonNull ProjectModelRequest request, @NonNull Exception failure);
+    }
+}
@@ -0,0 +1,65 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2013, CloudBees, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.cloudbees.literate.api.v1.vfs;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A {@link ProjectRepository} that can answer for many paths at once, typically because each call to the underlying
+ * storage is a round trip to a remote service. This is optional, consumers should go through
+ * {@link ProjectRepositories#filterFiles(ProjectRepository, Collection)} and
+ * {@link ProjectRepositories#getAll(ProjectRepository, Collection, long)} which fall back to asking about one path at a
+ * time for repositories that do not implement this interface.
+ *
+ * @since 0.7
+ */
+public interface BatchProjectRepository extends ProjectRepository {
+
+    /**
+     * Returns those of the specified paths that correspond to files, the batch form of {@link #isFile(String)}.
+     *
+     * @param paths the paths.
+     * @return the paths that are files, exactly as supplied.
+     * @throws IOException if there was a problem checking the paths.
+     */
+    Set<String> filterFiles(Collection<String> paths) throws IOException;
+
+    /**
+     * Returns the contents of those of the specified files that exist, the batch form of {@link #get(String)}. No
+     * more than {@code maxBytes + 1} bytes of any one file are read onto the heap.
+     *
+     * @param filePaths the file paths.
+     * @param maxBytes  the maximum number of bytes to read from each file, {@link Long#MAX_VALUE} for unlimited.
+     * @return the contents keyed by file path exactly as supplied, with the same contract as
+     *         {@link BufferedProjectRepository#getBuffer(String)}. Paths that do not exist or are not files are
+     *         absent.
+     * @throws FileTooLargeException if one of the files is larger than {@code maxBytes}.
+     * @throws IOException           if there was a problem retrieving the contents.
+     */
+    Map<String, ByteBuffer> getAll(Collection<String> filePaths, long maxBytes) throws IOException;
+}
@@ -0,0 +1,62 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2013, CloudBees, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.cloudbees.literate.api.v1.vfs;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * A {@link ProjectRepository} that can hand out the contents of a file as a {@link ByteBuffer} without going through
+ * an {@link java.io.InputStream}. This is optional, consumers should go through
+ * {@link ProjectRepositories#getBuffer(ProjectRepository, String)} which falls back to
+ * {@link ProjectRepository#get(String)} for repositories that do not implement this interface.
+ *
+ * @since 0.7
+ */
+public interface BufferedProjectRepository extends ProjectRepository {
+
+    /**
+     * Returns the contents of the specified file.
+     *
+     * @param filePath the file path.
+     * @return the contents, positioned at the start of the file with the limit at the end of the file. The caller
+     *         may move the position and limit but must not modify the contents.
+     * @throws PathNotFoundException if the specified path does not exist.
+     * @throws IOException           if there was a problem retrieving the contents.
+     */
+    ByteBuffer getBuffer(String filePath) throws PathNotFoundException, IOException;
+
+    /**
+     * Returns the contents of the specified file, failing as soon as it is known to be larger than a limit. At most
+     * {@code maxBytes + 1} bytes of the file are read onto the heap.
+     *
+     * @param filePath the file path.
+     * @param maxBytes the maximum number of bytes to read.
+     * @return the contents, with the same contract as {@link #getBuffer(String)}.
+     * @throws PathNotFoundException if the specified path does not exist.
+     * @throws FileTooLargeException if the file is larger than {@code maxBytes}.
+     * @throws IOException           if there was a problem retrieving the contents.
+     */
+    ByteBuffer getBuffer(String filePath, long maxBytes) throws PathNotFoundException, IOException;
+}
@@ -0,0 +1,486 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2013, CloudBees, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.cloudbees.literate.api.v1.vfs;
+
+import com.google.common.cache.CacheBuilder;
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import net.jcip.annotations.Immutable;
+import net.jcip.annotations.ThreadSafe;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A {@link ProjectRepository} that remembers the answers of {@link #isFile(String)}, {@link #isDirectory(String)}
+ * and {@link #getPaths(String)} of the repository it wraps, either for as long as it is in use (typically the
+ * lifetime of one request) or for a fixed time to live. Once a directory has been listed, the questions about its
+ * immediate children and {@link #listPaths(String, PathFilter)} are answered from that listing, a filtered listing is
+ * not remembered. {@link #filterFiles(Collection)} answers what it can from memory and passes the remaining paths to
+ * the underlying repository in one batch. File content is never cached. At most a fixed number of answers of each
+ * kind are remembered, the least recently used ones are forgotten first.
+ * <p/>
+ * Concurrent callers asking about the same path for the first time may each ask the underlying repository, the
+ * answers are expected to be the same.
+ *
+ * @since 0.7
+ */
+@ThreadSafe
+public class CachingProjectRepository
+        implements BufferedProjectRepository, ListingProjectRepository, BatchProjectRepository {
+
+    /**
+     * The default maximum number of answers of each kind to remember.
+     */
+    public static final int DEFAULT_MAX_ENTRIES = 10000;
+
+    /**
+     * The repository.
+     */
+    @NonNull
+    private final ProjectRepository delegate;
+
+    /**
+     * How long answers are remembered for, in nanoseconds, or {@code 0} to remember them for ever.
+     */
+    private final long ttlNanos;
+
+    /**
+     * The remembered answers to {@link #isFile(String)}, keyed by normalized path.
+     */
+    @NonNull
+    private final ConcurrentMap<String, Stat<Boolean>> files;
+
+    /**
+     * The remembered answers to {@link #isDirectory(String)}, keyed by normalized path.
+     */
+    @NonNull
+    private final ConcurrentMap<String, Stat<Boolean>> directories;
+
+    /**
+     * The remembered answers to {@link #getPaths(String)}, keyed by normalized path.
+     */
+    @NonNull
+    private final ConcurrentMap<String, Stat<Set<String>>> listings;
+
+    /**
+     * The number of questions answered from memory.
+     */
+    @NonNull
+    private final AtomicLong hitCount = new AtomicLong();
+
+    /**
+     * The number of questions passed to the underlying repository.
+     */
+    @NonNull
+    private final AtomicLong missCount = new AtomicLong();
+
+    /**
+     * Constructor that remembers answers for as long as this instance is in use.
+     *
+     * @param delegate the repository.
+     */
+    public CachingProjectRepository(@NonNull ProjectRepository delegate) {
+        this(delegate, 0, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param delegate the repository.
+     * @param ttl      how long answers are remembered for, {@code 0} to remember them for as long as this instance is
+     *                 in use.
+     * @param unit     the unit of {@code ttl}.
+     */
+    public CachingProjectRepository(@NonNull ProjectRepository delegate, long ttl, @NonNull TimeUnit unit) {
+        this(delegate, ttl, unit, DEFAULT_MAX_ENTRIES);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param delegate   the repository.
+     * @param ttl        how long answers are remembered for, {@code 0} to remember them for as long as this instance
+     *                   is in use.
+     * @param unit       the unit of {@code ttl}.
+     * @param maxEntries the maximum number of answers of each kind to remember.
+     */
+    public CachingProjectRepository(@NonNull ProjectRepository delegate, long ttl, @NonNull TimeUnit unit,
+                                    int maxEntries) {
+        delegate.getClass(); // throw NPE if null
+        if (ttl < 0) {
+            throw new IllegalArgumentException("Time to live must not be negative");
+        }
+        if (maxEntries < 1) {
+            throw new IllegalArgumentException("Maximum number of entries must be positive");
+        }
+        this.delegate = delegate;
+        this.ttlNanos = unit.toNanos(ttl);
+        this.files = newMap(ttlNanos, maxEntries);
+        this.directories = newMap(ttlNanos, maxEntries);
+        this.listings = newMap(ttlNanos, maxEntries);
+    }
+
+    /**
+     * Creates a map of remembered answers that forgets the least recently used ones beyond a size and the expired
+     * ones.
+     *
+     * @param ttlNanos   how long answers are remembered for, in nanoseconds, or {@code 0} to remember them for ever.
+     * @param maxEntries the maximum number of answers to remember.
+     * @param <T>        the type of answer.
+     * @return the map.
+     */
+    @NonNull
+    private static <T> ConcurrentMap<String, Stat<T>> newMap(long ttlNanos, int maxEntries) {
+        CacheBuilder<Object, Object> builder = CacheBuilder.newBuilder().maximumSize(maxEntries);
+        if (ttlNanos > 0) {
+            builder.expireAfterWrite(ttlNanos, TimeUnit.NANOSECONDS);
+        }
+        return builder.<String, Stat<T>>build().asMap();
+    }
+
+    /**
+     * Returns the repository this one wraps.
+     *
+     * @return the repository this one wraps.
+     */
+    @NonNull
+    public ProjectRepository getDelegate() {
+        return delegate;
+    }
+
+    /**
+     * Returns the number of questions answered from memory.
+     *
+     * @return the number of questions answered from memory.
+     */
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    /**
+     * Returns the number of questions passed to the underlying repository.
+     *
+     * @return the number of questions passed to the underlying repository.
+     */
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    /**
+     * Returns the ratio of questions that were answered from memory.
+     *
+     * @return the ratio of questions that were answered from memory, {@code 1.0} if there have been no questions.
+     */
+    public double getHitRate() {
+        long hits = hitCount.get();
+        long total = hits + missCount.get();
+        return total == 0 ? 1.0 : (double) hits / total;
+    }
+
+    /**
+     * Forgets all the remembered answers.
+     */
+    public void invalidateAll() {
+        files.clear();
+        directories.clear();
+        listings.clear();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    //@Override
+    public InputStream get(String filePath) throws PathNotFoundException, IOException {
+        return delegate.get(filePath);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    //@Override
+    public ByteBuffer getBuffer(String filePath) throws PathNotFoundException, IOException {
+        return ProjectRepositories.getBuffer(delegate, filePath);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    //@Override
+    public ByteBuffer getBuffer(String filePath, long maxBytes) throws PathNotFoundException, IOException {
+        return ProjectRepositories.getBuffer(delegate, filePath, maxBytes);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    //@Override
+    public boolean isFile(String path) throws IOException {
+        String key = key(path);
+        long now = System.nanoTime();
+        Boolean known = knownFile(key, now);
+        if (known != null) {
+            return known;
+        }
+        missCount.incrementAndGet();
+        boolean result = delegate.isFile(path);
+        files.put(key, new Stat<Boolean>(result, null, expires(now)));
+        return result;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    //@Override
+    public Set<String> filterFiles(Collection<String> paths) throws IOException {
+        long now = System.nanoTime();
+        Set<String> result = new HashSet<String>();
+        List<String> unknown = new ArrayList<String>();
+        for (String path : paths) {
+            Boolean known = knownFile(key(path), now);
+            if (known == null) {
+                unknown.add(path);
+            } else if (known) {
+                result.add(path);
+            }
+        }
+        if (!unknown.isEmpty()) {
+            missCount.addAndGet(unknown.size());
+            Set<String> found = ProjectRepositories.filterFiles(delegate, unknown);
+            for (String path : unknown) {
+                boolean isFile = found.contains(path);
+                files.put(key(path), new Stat<Boolean>(isFile, null, expires(now)));
+                if (isFile) {
+                    result.add(path);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    //@Override
+    public Map<String, ByteBuffer> getAll(Collection<String> filePaths, long maxBytes) throws IOException {
+        return ProjectRepositories.getAll(delegate, filePaths, maxBytes);
+    }
+
+    /**
+     * Returns the remembered answer to {@link #isFile(String)}, from the answer itself or from the listing of the
+     * parent, counting a hit if there is one.
+     *
+     * @param key the normalized path.
+     * @param now the current {@link System#nanoTime()}.
+     * @return the answer or {@code null} if there is no current answer.
+     */
+    @CheckForNull
+    private Boolean knownFile(@NonNull String key, long now) {
+        Stat<Boolean> stat = files.get(key);
+        if (stat != null && stat.isCurrent(now)) {
+            hitCount.incrementAndGet();
+            return stat.value;
+        }
+        Set<String> parent = parentListing(key, now);
+        if (parent != null) {
+            hitCount.incrementAndGet();
+            return parent.contains(key);
+        }
+        return null;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    //@Override
+    public boolean isDirectory(String path) throws IOException {
+        String key = key(path);
+        long now = System.nanoTime();
+        Stat<Boolean> stat = directories.get(key);
+        if (stat != null && stat.isCurrent(now)) {
+            hitCount.incrementAndGet();
+            return stat.get();
+        }
+        Set<String> parent = parentListing(key, now);
+        if (parent != null) {
+            hitCount.incrementAndGet();
+            return parent.contains(key + "/");
+        }
+        missCount.incrementAndGet();
+        boolean result = delegate.isDirectory(path);
+        directories.put(key, new Stat<Boolean>(result, null, expires(now)));
+        return result;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    //@Override
+    public Set<String> getPaths(String path) throws PathNotFoundException, IOException {
+        String key = key(path);
+        long now = System.nanoTime();
+        Stat<Set<String>> stat = listings.get(key);
+        if (stat != null && stat.isCurrent(now)) {
+            hitCount.incrementAndGet();
+            return stat.get();
+        }
+        missCount.incrementAndGet();
+        try {
+            Set<String> result = Collections.unmodifiableSet(delegate.getPaths(path));
+            listings.put(key, new Stat<Set<String>>(result, null, expires(now)));
+            return result;
+        } catch (PathNotFoundException e) {
+            listings.put(key, new Stat<Set<String>>(null, e, expires(now)));
+            throw e;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    //@Override
+    public Iterator<String> listPaths(String path, @CheckForNull PathFilter filter)
+            throws PathNotFoundException, IOException {
+        Stat<Set<String>> stat = listings.get(key(path));
+        if (stat != null && stat.isCurrent(System.nanoTime())) {
+            hitCount.incrementAndGet();
+            return ProjectRepositories.filter(stat.get(), filter);
+        }
+        missCount.incrementAndGet();
+        return ProjectRepositories.listPaths(delegate, path, filter);
+    }
+
+    /**
+     * Returns the current listing of the parent of a path, if it has been remembered.
+     *
+     * @param key the normalized path.
+     * @param now the current {@link System#nanoTime()}.
+     * @return the listing of the parent or {@code null} if there is no current listing.
+     */
+    @CheckForNull
+    private Set<String> parentListing(@NonNull String key, long now) {
+        if (key.equals("/")) {
+            return null;
+        }
+        int index = key.lastIndexOf('/');
+        Stat<Set<String>> stat = listings.get(index == 0 ? "/" : key.substring(0, index));
+        return stat != null && stat.exception == null && stat.isCurrent(now) ? stat.value : null;
+    }
+
+    /**
+     * Returns when an answer given now expires.
+     *
+     * @param now the current {@link System#nanoTime()}.
+     * @return when the answer expires, or {@link Long#MAX_VALUE} if it never does.
+     */
+    private long expires(long now) {
+        return ttlNanos == 0 ? Long.MAX_VALUE : now + ttlNanos;
+    }
+
+    /**
+     * Normalizes a path to the form used by {@link #getPaths(String)} but without any trailing {@code /}.
+     *
+     * @param path the path.
+     * @return the key, a path outside of the root is kept as it is as no path inside the root normalizes to it.
+     */
+    @NonNull
+    private static String key(@CheckForNull String path) {
+        try {
+            return "/" + ProjectRepositories.normalize(path);
+        } catch (PathNotFoundException e) {
+            return path;
+        }
+    }
+
+    /**
+     * A remembered answer.
+     *
+     * @param <T> the type of answer.
+     */
+    @Immutable
+    private static final class Stat<T> {
+        /**
+         * The answer, if there was one.
+         */
+        @CheckForNull
+        private final T value;
+        /**
+         * The exception, if there was one.
+         */
+        @CheckForNull
+        private final PathNotFoundException exception;
+        /**
+         * The {@link System#nanoTime()} after which the answer must be forgotten.
+         */
+        private final long expires;
+
+        /**
+         * Constructor.
+         *
+         * @param value     the answer.
+         * @param exception the exception.
+         * @param expires   the {@link System#nanoTime()} after which the answer must be forgotten.
+         */
+        private Stat(@CheckForNull T value, @CheckForNull PathNotFoundException exception, long expires) {
+            this.value = value;
+            this.exception = exception;
+            this.expires = expires;
+        }
+
+        /**
+         * Returns {@code true} if the answer has not expired.
+         *
+         * @param now the current {@link System#nanoTime()}.
+         * @return {@code true} if the answer has not expired.
+         */
+        private boolean isCurrent(long now) {
+            return expires == Long.MAX_VALUE || now - expires < 0;
+        }
+
+        /**
+         * Returns the answer.
+         *
+         * @return the answer.
+         * @throws PathNotFoundException if that was the answer.
+         */
+        private T get() throws PathNotFoundException {
+            if (exception != null) {
+                throw exception;
+            }
+            return value;
+        }
+    }
+}
@@ -0,0 +1,62 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2013, CloudBees, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.cloudbees.literate.api.v1.vfs;
+
+/**
+ * Thrown when a file is larger than the caller is prepared to read.
+ *
+ * @since 0.7
+ */
+public class FileTooLargeException extends ProjectRepositoryException {
+
+    /**
+     * Ensure consistent serialization.
+     */
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * The maximum number of bytes that the caller was prepared to read.
+     */
+    private final long maxBytes;
+
+    /**
+     * Constructor.
+     *
+     * @param message  the message.
+     * @param maxBytes the maximum number of bytes that the caller was prepared to read.
+     */
+    public FileTooLargeException(String message, long maxBytes) {
+        super(message);
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Returns the maximum number of bytes that the caller was prepared to read.
+     *
+     * @return the maximum number of bytes that the caller was prepared to read.
+     */
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+}
@@ -23,18 +23,43 @@
  */
 package org.cloudbees.literate.api.v1.vfs;
 
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import org.apache.commons.io.IOUtils;
+
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
+import java.io.FilenameFilter;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
 import java.util.Set;
 import java.util.TreeSet;
 
 /**
  * A {@link ProjectRepository} hosted on the local file system.
+ * <p/>
+ * Paths are normalized lexically against the root, which is made absolute once on construction, so a path can never
+ * resolve outside the root whatever {@code ..} segments it contains. Symbolic links inside the root are followed by
+ * the file system as usual, i.e. the check is on the requested path and not on the link target. Files of at least
+ * {@link #MAP_THRESHOLD} bytes are read through a memory mapped {@link FileChannel} rather than a
+ * {@link FileInputStream}, smaller files are read by {@link #getBuffer(String)} straight into a buffer of their size.
+ * {@link #listPaths(String, PathFilter)} only checks whether the children it returns are directories as they are
+ * iterated, and looks the names of a {@link PathFilter#names(String...)} filter up directly rather than listing the
+ * directory.
  */
-public class FilesystemRepository implements ProjectRepository {
+public class FilesystemRepository implements BufferedProjectRepository, ListingProjectRepository {
+    /**
+     * The size in bytes from which files are memory mapped. Mapping has a fixed set-up cost that only pays off for
+     * larger files.
+     *
+     * @since 0.7
+     */
+    public static final long MAP_THRESHOLD = 256 * 1024;
+
     /**
      * The root of the {@link ProjectRepository}.
      */
@@ -46,35 +71,57 @@ public class FilesystemRepository implements ProjectRepository {
      * @param root The root of the {@link ProjectRepository}.
      */
     public FilesystemRepository(File root) {
-        this.root = root;
+        this.root = root.getAbsoluteFile();
+    }
+
+    /**
+     * Returns the root of the {@link ProjectRepository}.
+     *
+     * @return the root of the {@link ProjectRepository}.
+     * @since 0.7
+     */
+    public File getRoot() {
+        return root;
     }
 
     /**
      * Resolves the path to a file.
      *
-     * @param path the path.
+     * @param normalized the normalized path.
      * @return the {@link File} corresponding to the path.
-     * @throws PathNotFoundException if the path does not exist.
      */
-    private File resolve(String path) throws PathNotFoundException {
-        File dir;
-        if (path == null || path.trim().length() == 0 || path.equals("/")) {
-            return root;
-        } else {
-            dir = new File(root, path);
-            String p1 = root.getAbsolutePath().replace('\\', '/');
-            if (!p1.endsWith("/")) {
-                p1 = p1 + "/";
-            }
-            String p2 = dir.getAbsolutePath().replace('\\', '/');
-            if (!p2.endsWith("/")) {
-                p2 = p2 + "/";
-            }
-            if (p2.startsWith(p1)) {
-                return dir;
-            } else {
-                throw new PathNotFoundException("Path is outside of repository");
-            }
+    private File resolve(String normalized) {
+        return normalized.length() == 0 ? root : new File(root, normalized);
+    }
+
+    /**
+     * Resolves the path to an existing file.
+     *
+     * @param filePath the file path.
+     * @return the file.
+     * @throws PathNotFoundException if the path does not exist or is not a file.
+     */
+    private File file(String filePath) throws PathNotFoundException {
+        File file = resolve(ProjectRepositories.normalize(filePath));
+        if (!file.isFile()) {
+            // an expected outcome when probing, so skip the stack trace of FileNotFoundException
+            throw PathNotFoundException.stackless("Path does not exist or is not a file");
+        }
+        return file;
+    }
+
+    /**
+     * Opens a file.
+     *
+     * @param file the file.
+     * @return the stream.
+     * @throws PathNotFoundException if the file could not be opened.
+     */
+    private static FileInputStream open(File file) throws PathNotFoundException {
+        try {
+            return new FileInputStream(file);
+        } catch (FileNotFoundException e) {
+            throw new PathNotFoundException(e);
         }
     }
 
@@ -83,10 +130,43 @@ public class FilesystemRepository implements ProjectRepository {
      */
     //@Override
     public InputStream get(String filePath) throws PathNotFoundException, IOException {
+        File file = file(filePath);
+        if (file.length() < MAP_THRESHOLD) {
+            return open(file);
+        }
+        return new MappedInputStream(getBuffer(filePath));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    //@Override
+    public ByteBuffer getBuffer(String filePath) throws PathNotFoundException, IOException {
+        return getBuffer(filePath, Long.MAX_VALUE);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    //@Override
+    public ByteBuffer getBuffer(String filePath, long maxBytes) throws PathNotFoundException, IOException {
+        FileInputStream stream = open(file(filePath));
         try {
-            return new FileInputStream(resolve(filePath));
-        } catch (FileNotFoundException e) {
-            throw new PathNotFoundException(e);
+            FileChannel channel = stream.getChannel();
+            long size = channel.size();
+            ProjectRepositories.checkSize(filePath, size, maxBytes);
+            if (size >= MAP_THRESHOLD) {
+                // the mapping stays valid after the channel is closed
+                return channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            }
+            ByteBuffer buffer = ByteBuffer.allocate((int) size);
+            while (buffer.hasRemaining() && channel.read(buffer) != -1) {
+                // keep reading
+            }
+            buffer.flip();
+            return buffer;
+        } finally {
+            IOUtils.closeQuietly(stream);
         }
     }
 
@@ -95,7 +175,7 @@ public class FilesystemRepository implements ProjectRepository {
      */
     //@Override
     public boolean isDirectory(String path) throws IOException {
-        return resolve(path).isDirectory();
+        return resolve(ProjectRepositories.normalize(path)).isDirectory();
     }
 
     /**
@@ -103,7 +183,7 @@ public class FilesystemRepository implements ProjectRepository {
      */
     //@Override
     public boolean isFile(String path) throws IOException {
-        return resolve(path).isFile();
+        return resolve(ProjectRepositories.normalize(path)).isFile();
     }
 
     /**
@@ -111,33 +191,14 @@ public class FilesystemRepository implements ProjectRepository {
      */
     //@Override
     public Set<String> getPaths(String path) throws PathNotFoundException, IOException {
-        File dir;
-        String prefix;
-        if (path == null || path.trim().length() == 0 || path.equals("/")) {
-            dir = root;
-            prefix = "/";
-        } else {
-            dir = new File(root, path);
-            String p1 = root.getAbsolutePath().replace('\\', '/');
-            if (!p1.endsWith("/")) {
-                p1 = p1 + "/";
-            }
-            String p2 = dir.getAbsolutePath().replace('\\', '/');
-            if (!p2.endsWith("/")) {
-                p2 = p2 + "/";
-            }
-            if (p2.startsWith(p1)) {
-                prefix = "/" + p2.substring(p1.length());
-            } else {
-                throw new PathNotFoundException("Path is outside of repository");
-            }
-        }
+        String normalized = ProjectRepositories.normalize(path);
+        String prefix = normalized.length() == 0 ? "/" : "/" + normalized + "/";
         Set<String> result = new TreeSet<String>();
-        File[] files = dir.listFiles();
+        File[] files = resolve(normalized).listFiles();
         if (files == null) {
-        	throw new PathNotFoundException("Path does not exist or is not a directory");
+            throw PathNotFoundException.stackless("Path does not exist or is not a directory");
         }
-		for (File f : files) {
+        for (File f : files) {
             if (f.isDirectory()) {
                 result.add(prefix + f.getName() + "/");
             } else {
@@ -146,4 +207,181 @@ public class FilesystemRepository implements ProjectRepository {
         }
         return result;
     }
+
+    /**
+     * {@inheritDoc}
+     */
+    //@Override
+    public Iterator<String> listPaths(String path, @CheckForNull final PathFilter filter)
+            throws PathNotFoundException, IOException {
+        String normalized = ProjectRepositories.normalize(path);
+        File directory = resolve(normalized);
+        Set<String> names = filter == null ? null : filter.getNames();
+        String[] children;
+        if (names != null) {
+            if (!directory.isDirectory()) {
+                throw PathNotFoundException.stackless("Path does not exist or is not a directory");
+            }
+            children = names.toArray(new String[names.size()]);
+        } else {
+            children = filter == null ? directory.list() : directory.list(new FilenameFilter() {
+                public boolean accept(File dir, String name) {
+                    return filter.accept(name);
+                }
+            });
+            if (children == null) {
+                throw PathNotFoundException.stackless("Path does not exist or is not a directory");
+            }
+        }
+        return new ChildIterator(directory, normalized.length() == 0 ? "/" : "/" + normalized + "/", children,
+                names != null);
+    }
+
+    /**
+     * Iterates the children of a directory, checking whether each is a directory only when it is reached.
+     */
+    private static class ChildIterator implements Iterator<String> {
+        /**
+         * The directory.
+         */
+        private final File directory;
+        /**
+         * The path of the directory with a trailing {@code /}.
+         */
+        private final String prefix;
+        /**
+         * The names of the children.
+         */
+        private final String[] names;
+        /**
+         * {@code true} if the names have not been listed but have to be checked for existence.
+         */
+        private final boolean probe;
+        /**
+         * The index of the next name to consider.
+         */
+        private int index;
+        /**
+         * The next path or {@code null} if it has to be found.
+         */
+        private String next;
+
+        /**
+         * Constructor.
+         *
+         * @param directory the directory.
+         * @param prefix    the path of the directory with a trailing {@code /}.
+         * @param names     the names of the children.
+         * @param probe     {@code true} if the names have to be checked for existence.
+         */
+        ChildIterator(File directory, String prefix, String[] names, boolean probe) {
+            this.directory = directory;
+            this.prefix = prefix;
+            this.names = names;
+            this.probe = probe;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        //@Override
+        public boolean hasNext() {
+            while (next == null && index < names.length) {
+                String name = names[index++];
+                if (probe && (name.length() == 0 || name.equals(".") || name.equals("..")
+                        || name.indexOf('/') != -1 || name.indexOf('\\') != -1)) {
+                    continue;
+                }
+                File file = new File(directory, name);
+                if (file.isDirectory()) {
+                    next = prefix + name + "/";
+                } else if (!probe || file.exists()) {
+                    next = prefix + name;
+                }
+            }
+            return next != null;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        //@Override
+        public String next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            String result = next;
+            next = null;
+            return result;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        //@Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    /**
+     * An {@link InputStream} over a memory mapped file.
+     */
+    private static class MappedInputStream extends InputStream {
+        /**
+         * The mapped file.
+         */
+        private final ByteBuffer buffer;
+
+        /**
+         * Constructor.
+         *
+         * @param buffer the mapped file.
+         */
+        MappedInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xff : -1;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (len == 0) {
+                return 0;
+            }
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            int count = Math.min(len, buffer.remaining());
+            buffer.get(b, off, count);
+            return count;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public long skip(long n) {
+            int count = (int) Math.max(0, Math.min(n, buffer.remaining()));
+            buffer.position(buffer.position() + count);
+            return count;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+    }
 }
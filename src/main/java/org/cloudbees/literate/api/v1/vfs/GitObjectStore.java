@@ -0,0 +1,796 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2013, CloudBees, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.cloudbees.literate.api.v1.vfs;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import net.jcip.annotations.GuardedBy;
+import net.jcip.annotations.Immutable;
+import net.jcip.annotations.ThreadSafe;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.ClosedChannelException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Reads objects directly from the object database of a local git repository, both loose objects and version 2 pack
+ * files, without needing a working tree or any git tooling. Parsed tree objects are cached so that repositories at
+ * different revisions of the same git repository share the lookups of the directories that did not change.
+ * <p/>
+ * Typical usage:
+ * <pre>
+ * GitObjectStore store = new GitObjectStore(new File("/var/git/project.git"));
+ * ProjectModel model = new ProjectModelSource().submit(
+ *         ProjectModelRequest.builder(store.at("refs/heads/master")).build());
+ * </pre>
+ * The store should be kept for as long as the git repository is in use and then {@link #close()}d.
+ *
+ * @since 0.7
+ */
+@ThreadSafe
+public class GitObjectStore implements Closeable {
+
+    /**
+     * The default number of tree objects to cache.
+     */
+    public static final int DEFAULT_TREE_CACHE_SIZE = 1024;
+
+    /**
+     * Object type of a commit.
+     */
+    static final int COMMIT = 1;
+
+    /**
+     * Object type of a tree.
+     */
+    static final int TREE = 2;
+
+    /**
+     * Object type of a blob.
+     */
+    static final int BLOB = 3;
+
+    /**
+     * Object type of an annotated tag.
+     */
+    static final int TAG = 4;
+
+    /**
+     * The object type names, indexed by type.
+     */
+    private static final String[] TYPE_NAMES = {null, "commit", "tree", "blob", "tag"};
+
+    /**
+     * The maximum depth of symbolic references.
+     */
+    private static final int MAX_SYMREF_DEPTH = 5;
+
+    /**
+     * The git directory.
+     */
+    @NonNull
+    private final File gitDir;
+
+    /**
+     * The objects directory.
+     */
+    @NonNull
+    private final File objectsDir;
+
+    /**
+     * The maximum number of tree objects to cache.
+     */
+    private final int treeCacheSize;
+
+    /**
+     * The open packs, keyed by the name of their index.
+     */
+    @GuardedBy("this")
+    @NonNull
+    private final Map<String, GitPack> packs = new LinkedHashMap<String, GitPack>();
+
+    /**
+     * The modification time of the pack directory when the packs were last scanned.
+     */
+    @GuardedBy("this")
+    private long packsScanned = -1;
+
+    /**
+     * The parsed tree objects, in least recently used order.
+     */
+    @GuardedBy("itself")
+    @NonNull
+    private final Map<String, Tree> trees;
+
+    /**
+     * The number of tree lookups answered from the cache.
+     */
+    @NonNull
+    private final AtomicLong treeHitCount = new AtomicLong();
+
+    /**
+     * The number of tree lookups that had to read the object.
+     */
+    @NonNull
+    private final AtomicLong treeMissCount = new AtomicLong();
+
+    /**
+     * Constructor.
+     *
+     * @param gitDir the git directory of a bare repository, or the working tree of a non-bare repository.
+     */
+    public GitObjectStore(@NonNull File gitDir) {
+        this(gitDir, DEFAULT_TREE_CACHE_SIZE);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param gitDir        the git directory of a bare repository, or the working tree of a non-bare repository.
+     * @param treeCacheSize the maximum number of tree objects to cache.
+     */
+    public GitObjectStore(@NonNull File gitDir, final int treeCacheSize) {
+        if (treeCacheSize < 0) {
+            throw new IllegalArgumentException("Tree cache size must not be negative");
+        }
+        File dotGit = new File(gitDir, ".git");
+        this.gitDir = dotGit.isDirectory() ? dotGit : gitDir;
+        this.objectsDir = new File(this.gitDir, "objects");
+        this.treeCacheSize = treeCacheSize;
+        this.trees = new LinkedHashMap<String, Tree>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Tree> eldest) {
+                return size() > treeCacheSize;
+            }
+        };
+    }
+
+    /**
+     * Returns a repository of the tree of a revision.
+     *
+     * @param revision a commit id, a tag or branch name, or a full reference name.
+     * @return the repository.
+     * @throws IOException if the revision could not be resolved to a commit.
+     */
+    @NonNull
+    public GitRepository at(@NonNull String revision) throws IOException {
+        return new GitRepository(this, resolve(revision));
+    }
+
+    /**
+     * Resolves a revision to a commit id, following symbolic references and peeling annotated tags.
+     *
+     * @param revision a commit id, a tag or branch name, or a full reference name.
+     * @return the commit id.
+     * @throws IOException if the revision could not be resolved to a commit.
+     */
+    @NonNull
+    public String resolve(@NonNull String revision) throws IOException {
+        String id = resolveRef(revision, 0);
+        while (true) {
+            RawObject object = read(id);
+            if (object.getType() == COMMIT) {
+                return id;
+            }
+            if (object.getType() != TAG) {
+                throw new ProjectRepositoryException(revision + " is not a commit");
+            }
+            id = header(object.getContent(), "object");
+            if (id == null) {
+                throw new ProjectRepositoryException("Corrupt tag " + revision);
+            }
+        }
+    }
+
+    /**
+     * Returns the number of tree lookups answered from the cache.
+     *
+     * @return the number of tree lookups answered from the cache.
+     */
+    public long getTreeHitCount() {
+        return treeHitCount.get();
+    }
+
+    /**
+     * Returns the number of tree lookups that had to read the object.
+     *
+     * @return the number of tree lookups that had to read the object.
+     */
+    public long getTreeMissCount() {
+        return treeMissCount.get();
+    }
+
+    /**
+     * Returns the number of pack files that are open.
+     *
+     * @return the number of pack files that are open.
+     */
+    public synchronized int getOpenPackCount() {
+        return packs.size();
+    }
+
+    /**
+     * Closes the pack files.
+     *
+     * @throws IOException if a pack file could not be closed.
+     */
+    public synchronized void close() throws IOException {
+        IOException failure = null;
+        for (GitPack pack : packs.values()) {
+            try {
+                pack.close();
+            } catch (IOException e) {
+                failure = e;
+            }
+        }
+        packs.clear();
+        packsScanned = -1;
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * Resolves a reference name to an object id.
+     *
+     * @param name  the reference name.
+     * @param depth the number of symbolic references followed so far.
+     * @return the object id.
+     * @throws IOException if the reference could not be resolved.
+     */
+    @NonNull
+    private String resolveRef(@NonNull String name, int depth) throws IOException {
+        if (isObjectId(name)) {
+            return name.toLowerCase();
+        }
+        if (depth > MAX_SYMREF_DEPTH || name.contains("..") || name.startsWith("/") || name.contains("\\")) {
+            throw new ProjectRepositoryException("Unknown revision " + name);
+        }
+        String[] candidates = {
+                name, "refs/" + name, "refs/tags/" + name, "refs/heads/" + name, "refs/remotes/" + name,
+                "refs/remotes/" + name + "/HEAD"
+        };
+        Map<String, String> packedRefs = null;
+        for (String candidate : candidates) {
+            File file = new File(gitDir, candidate);
+            if (file.isFile()) {
+                String content = FileUtils.readFileToString(file, "UTF-8").trim();
+                if (content.startsWith("ref: ")) {
+                    return resolveRef(content.substring(5).trim(), depth + 1);
+                }
+                if (isObjectId(content)) {
+                    return content.toLowerCase();
+                }
+            }
+            if (packedRefs == null) {
+                packedRefs = packedRefs();
+            }
+            String id = packedRefs.get(candidate);
+            if (id != null) {
+                return id;
+            }
+        }
+        throw new ProjectRepositoryException("Unknown revision " + name);
+    }
+
+    /**
+     * Reads the packed references.
+     *
+     * @return the object ids keyed by reference name.
+     * @throws IOException if the packed references could not be read.
+     */
+    @NonNull
+    private Map<String, String> packedRefs() throws IOException {
+        File file = new File(gitDir, "packed-refs");
+        if (!file.isFile()) {
+            return Collections.emptyMap();
+        }
+        Map<String, String> result = new HashMap<String, String>();
+        for (String line : FileUtils.readLines(file, "UTF-8")) {
+            if (line.length() > 41 && line.charAt(40) == ' ' && isObjectId(line.substring(0, 40))) {
+                result.put(line.substring(41).trim(), line.substring(0, 40).toLowerCase());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the id of the root tree of a commit.
+     *
+     * @param commitId the commit id.
+     * @return the id of the root tree.
+     * @throws IOException if the commit could not be read.
+     */
+    @NonNull
+    String commitTree(@NonNull String commitId) throws IOException {
+        RawObject commit = read(commitId);
+        String treeId = commit.getType() == COMMIT ? header(commit.getContent(), "tree") : null;
+        if (treeId == null) {
+            throw new ProjectRepositoryException("Corrupt commit " + commitId);
+        }
+        return treeId;
+    }
+
+    /**
+     * Returns a parsed tree object.
+     *
+     * @param treeId the tree id.
+     * @return the tree.
+     * @throws IOException if the tree could not be read.
+     */
+    @NonNull
+    Tree tree(@NonNull String treeId) throws IOException {
+        synchronized (trees) {
+            Tree tree = trees.get(treeId);
+            if (tree != null) {
+                treeHitCount.incrementAndGet();
+                return tree;
+            }
+        }
+        treeMissCount.incrementAndGet();
+        RawObject object = read(treeId);
+        if (object.getType() != TREE) {
+            throw new ProjectRepositoryException(treeId + " is not a tree");
+        }
+        Tree tree = Tree.parse(object.getContent());
+        synchronized (trees) {
+            trees.put(treeId, tree);
+        }
+        return tree;
+    }
+
+    /**
+     * Reads an object.
+     *
+     * @param id the object id.
+     * @return the object.
+     * @throws IOException if the object does not exist or could not be read.
+     */
+    @NonNull
+    RawObject read(@NonNull String id) throws IOException {
+        return read(id, Long.MAX_VALUE);
+    }
+
+    /**
+     * Reads an object no larger than a limit.
+     *
+     * @param id       the object id.
+     * @param maxBytes the maximum size of the object.
+     * @return the object.
+     * @throws FileTooLargeException if the object is larger than {@code maxBytes}, detected before it is inflated.
+     * @throws IOException           if the object does not exist or could not be read.
+     */
+    @NonNull
+    RawObject read(@NonNull String id, long maxBytes) throws IOException {
+        byte[] binaryId = fromHex(id);
+        try {
+            for (GitPack pack : packs(false)) {
+                long offset = pack.find(binaryId);
+                if (offset >= 0) {
+                    return pack.read(this, offset, maxBytes);
+                }
+            }
+        } catch (ClosedChannelException e) {
+            // a concurrent rescan closed a pack that has been removed, look again below
+        }
+        File loose = new File(objectsDir, id.substring(0, 2) + "/" + id.substring(2));
+        if (loose.isFile()) {
+            return readLoose(loose, maxBytes);
+        }
+        // the repository may have been repacked since we last looked
+        for (GitPack pack : packs(true)) {
+            long offset = pack.find(binaryId);
+            if (offset >= 0) {
+                return pack.read(this, offset, maxBytes);
+            }
+        }
+        throw PathNotFoundException.stackless("No such object " + id);
+    }
+
+    /**
+     * Checks the size of an object against a limit.
+     *
+     * @param size     the size of the object.
+     * @param maxBytes the maximum size of the object.
+     * @throws FileTooLargeException if the object is larger than {@code maxBytes}.
+     */
+    static void checkSize(long size, long maxBytes) throws FileTooLargeException {
+        if (size > maxBytes) {
+            throw new FileTooLargeException("Object of " + size + " bytes is larger than " + maxBytes + " bytes",
+                    maxBytes);
+        }
+    }
+
+    /**
+     * Returns the packs, opening any new ones and closing those whose index has been removed, e.g. by
+     * {@code git gc}.
+     *
+     * @param rescan {@code true} to look for new packs even if the pack directory appears unchanged.
+     * @return the packs.
+     * @throws IOException if a pack could not be opened.
+     */
+    @NonNull
+    private synchronized List<GitPack> packs(boolean rescan) throws IOException {
+        File packDir = new File(objectsDir, "pack");
+        long modified = packDir.lastModified();
+        if (rescan || modified != packsScanned) {
+            packsScanned = modified;
+            File[] files = packDir.listFiles();
+            Set<String> present = new HashSet<String>();
+            if (files != null) {
+                for (File file : files) {
+                    String name = file.getName();
+                    if (name.endsWith(".idx")) {
+                        present.add(name);
+                        if (!packs.containsKey(name)) {
+                            packs.put(name, new GitPack(file));
+                        }
+                    }
+                }
+            }
+            for (Iterator<Map.Entry<String, GitPack>> i = packs.entrySet().iterator(); i.hasNext(); ) {
+                Map.Entry<String, GitPack> entry = i.next();
+                if (!present.contains(entry.getKey())) {
+                    i.remove();
+                    IOUtils.closeQuietly(entry.getValue());
+                }
+            }
+        }
+        return new ArrayList<GitPack>(packs.values());
+    }
+
+    /**
+     * Reads a loose object.
+     *
+     * @param file     the object file.
+     * @param maxBytes the maximum size of the object.
+     * @return the object.
+     * @throws FileTooLargeException if the object is larger than {@code maxBytes}, detected before it is inflated.
+     * @throws IOException           if the object could not be read.
+     */
+    @NonNull
+    private static RawObject readLoose(@NonNull File file, long maxBytes) throws IOException {
+        InputStream stream = new InflaterInputStream(new FileInputStream(file));
+        try {
+            // "<type> <size>\0" then the content
+            byte[] header = new byte[32];
+            int length = 0;
+            int b;
+            while ((b = stream.read()) > 0 && length < header.length) {
+                header[length++] = (byte) b;
+            }
+            int space = indexOf(header, (byte) ' ', 0);
+            if (b != 0 || space == -1 || space >= length) {
+                throw new ProjectRepositoryException("Corrupt object " + file);
+            }
+            String typeName = new String(header, 0, space, ProjectRepositories.UTF_8);
+            int type = -1;
+            for (int i = 1; i < TYPE_NAMES.length; i++) {
+                if (TYPE_NAMES[i].equals(typeName)) {
+                    type = i;
+                }
+            }
+            long size;
+            try {
+                size = Long.parseLong(new String(header, space + 1, length - space - 1, ProjectRepositories.UTF_8));
+            } catch (NumberFormatException e) {
+                throw new ProjectRepositoryException("Corrupt object " + file, e);
+            }
+            if (type == -1 || size < 0 || size > ProjectRepositories.MAX_ARRAY_SIZE) {
+                throw new ProjectRepositoryException("Corrupt object " + file);
+            }
+            checkSize(size, maxBytes);
+            byte[] content = new byte[(int) size];
+            IOUtils.readFully(stream, content);
+            return new RawObject(type, content);
+        } finally {
+            IOUtils.closeQuietly(stream);
+        }
+    }
+
+    /**
+     * Returns the value of a header line of a commit or tag.
+     *
+     * @param content the object content.
+     * @param name    the header name.
+     * @return the value or {@code null} if the header is not present.
+     */
+    @CheckForNull
+    private static String header(@NonNull byte[] content, @NonNull String name) {
+        int start = 0;
+        while (start < content.length && content[start] != '\n') {
+            int end = indexOf(content, (byte) '\n', start);
+            if (end == -1) {
+                end = content.length;
+            }
+            String line = new String(content, start, end - start, ProjectRepositories.UTF_8);
+            if (line.startsWith(name + " ")) {
+                return line.substring(name.length() + 1).trim();
+            }
+            start = end + 1;
+        }
+        return null;
+    }
+
+    /**
+     * Returns the index of a byte.
+     *
+     * @param data  the data.
+     * @param b     the byte.
+     * @param start where to start looking.
+     * @return the index or {@code -1} if not found.
+     */
+    private static int indexOf(@NonNull byte[] data, byte b, int start) {
+        for (int i = start; i < data.length; i++) {
+            if (data[i] == b) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns {@code true} if the string is a full hex object id.
+     *
+     * @param s the string.
+     * @return {@code true} if the string is a full hex object id.
+     */
+    private static boolean isObjectId(@NonNull String s) {
+        if (s.length() != 40) {
+            return false;
+        }
+        for (int i = 0; i < 40; i++) {
+            if (Character.digit(s.charAt(i), 16) == -1) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Converts a binary object id to hex.
+     *
+     * @param id the binary id.
+     * @return the hex id.
+     */
+    @NonNull
+    static String toHex(@NonNull byte[] id) {
+        char[] chars = new char[id.length * 2];
+        for (int i = 0; i < id.length; i++) {
+            chars[i * 2] = Character.forDigit((id[i] >> 4) & 0xf, 16);
+            chars[i * 2 + 1] = Character.forDigit(id[i] & 0xf, 16);
+        }
+        return new String(chars);
+    }
+
+    /**
+     * Converts a hex object id to binary.
+     *
+     * @param id the hex id.
+     * @return the binary id.
+     * @throws ProjectRepositoryException if the id is not a full hex object id.
+     */
+    @NonNull
+    private static byte[] fromHex(@NonNull String id) throws ProjectRepositoryException {
+        if (!isObjectId(id)) {
+            throw new ProjectRepositoryException("Invalid object id " + id);
+        }
+        byte[] result = new byte[20];
+        for (int i = 0; i < 20; i++) {
+            result[i] = (byte) ((Character.digit(id.charAt(i * 2), 16) << 4) | Character.digit(id.charAt(i * 2 + 1), 16));
+        }
+        return result;
+    }
+
+    /**
+     * An object read from the store.
+     */
+    @Immutable
+    static final class RawObject {
+        /**
+         * The object type.
+         */
+        private final int type;
+        /**
+         * The object content.
+         */
+        @NonNull
+        private final byte[] content;
+
+        /**
+         * Constructor.
+         *
+         * @param type    the object type.
+         * @param content the object content.
+         */
+        RawObject(int type, @NonNull byte[] content) {
+            this.type = type;
+            this.content = content;
+        }
+
+        /**
+         * Returns the object type.
+         *
+         * @return the object type.
+         */
+        int getType() {
+            return type;
+        }
+
+        /**
+         * Returns the object content, which must not be modified.
+         *
+         * @return the object content.
+         */
+        @NonNull
+        byte[] getContent() {
+            return content;
+        }
+    }
+
+    /**
+     * A parsed tree object.
+     */
+    @Immutable
+    static final class Tree {
+        /**
+         * The entries keyed by name, in git order.
+         */
+        @NonNull
+        private final Map<String, TreeEntry> entries;
+
+        /**
+         * Constructor.
+         *
+         * @param entries the entries keyed by name.
+         */
+        private Tree(@NonNull Map<String, TreeEntry> entries) {
+            this.entries = Collections.unmodifiableMap(entries);
+        }
+
+        /**
+         * Parses a tree object.
+         *
+         * @param content the tree object content.
+         * @return the tree.
+         * @throws ProjectRepositoryException if the tree is corrupt.
+         */
+        @NonNull
+        static Tree parse(@NonNull byte[] content) throws ProjectRepositoryException {
+            Map<String, TreeEntry> entries = new LinkedHashMap<String, TreeEntry>();
+            int position = 0;
+            while (position < content.length) {
+                int space = indexOf(content, (byte) ' ', position);
+                int nul = space == -1 ? -1 : indexOf(content, (byte) 0, space);
+                if (nul == -1 || nul + 21 > content.length) {
+                    throw new ProjectRepositoryException("Corrupt tree");
+                }
+                int mode;
+                try {
+                    mode = Integer.parseInt(new String(content, position, space - position, ProjectRepositories.UTF_8), 8);
+                } catch (NumberFormatException e) {
+                    throw new ProjectRepositoryException("Corrupt tree", e);
+                }
+                String name = new String(content, space + 1, nul - space - 1, ProjectRepositories.UTF_8);
+                byte[] id = new byte[20];
+                System.arraycopy(content, nul + 1, id, 0, 20);
+                entries.put(name, new TreeEntry(mode, toHex(id)));
+                position = nul + 21;
+            }
+            return new Tree(entries);
+        }
+
+        /**
+         * Returns an entry.
+         *
+         * @param name the name.
+         * @return the entry or {@code null} if there is no such entry.
+         */
+        @CheckForNull
+        TreeEntry get(@NonNull String name) {
+            return entries.get(name);
+        }
+
+        /**
+         * Returns the entries keyed by name.
+         *
+         * @return the entries keyed by name.
+         */
+        @NonNull
+        Map<String, TreeEntry> getEntries() {
+            return entries;
+        }
+    }
+
+    /**
+     * An entry in a tree object.
+     */
+    @Immutable
+    static final class TreeEntry {
+        /**
+         * The file mode.
+         */
+        private final int mode;
+        /**
+         * The object id.
+         */
+        @NonNull
+        private final String id;
+
+        /**
+         * Constructor.
+         *
+         * @param mode the file mode.
+         * @param id   the object id.
+         */
+        TreeEntry(int mode, @NonNull String id) {
+            this.mode = mode;
+            this.id = id;
+        }
+
+        /**
+         * Returns {@code true} if the entry is a sub-tree.
+         *
+         * @return {@code true} if the entry is a sub-tree.
+         */
+        boolean isDirectory() {
+            return mode == 040000;
+        }
+
+        /**
+         * Returns {@code true} if the entry is a regular file (symbolic links and submodules are not).
+         *
+         * @return {@code true} if the entry is a regular file.
+         */
+        boolean isFile() {
+            return (mode & 0170000) == 0100000;
+        }
+
+        /**
+         * Returns the object id.
+         *
+         * @return the object id.
+         */
+        @NonNull
+        String getId() {
+            return id;
+        }
+    }
+}
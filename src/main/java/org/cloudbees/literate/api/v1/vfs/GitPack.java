@@ -0,0 +1,400 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2013, CloudBees, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.cloudbees.literate.api.v1.vfs;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import net.jcip.annotations.ThreadSafe;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * A git pack file and its version 2 index. The index is memory mapped, the pack is read with positional reads so
+ * that concurrent lookups do not contend.
+ */
+@ThreadSafe
+final class GitPack implements Closeable {
+
+    /**
+     * Pack object type of a delta against an object at an earlier offset in the same pack.
+     */
+    private static final int OFS_DELTA = 6;
+
+    /**
+     * Pack object type of a delta against an object identified by its id.
+     */
+    private static final int REF_DELTA = 7;
+
+    /**
+     * The magic number of a version 2 pack index.
+     */
+    private static final int IDX_MAGIC = 0xff744f63;
+
+    /**
+     * The size of the chunks in which compressed data is read.
+     */
+    private static final int CHUNK_SIZE = 8192;
+
+    /**
+     * The pack.
+     */
+    @NonNull
+    private final FileChannel pack;
+
+    /**
+     * The index.
+     */
+    @NonNull
+    private final MappedByteBuffer idx;
+
+    /**
+     * The number of objects in the pack.
+     */
+    private final int count;
+
+    /**
+     * Constructor.
+     *
+     * @param idxFile the {@code .idx} file, the {@code .pack} file is expected alongside.
+     * @throws IOException if the files could not be opened or the index is not a version 2 index.
+     */
+    GitPack(@NonNull File idxFile) throws IOException {
+        RandomAccessFile idxAccess = new RandomAccessFile(idxFile, "r");
+        try {
+            FileChannel channel = idxAccess.getChannel();
+            this.idx = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } finally {
+            idxAccess.close();
+        }
+        if (idx.capacity() < 8 + 256 * 4 || idx.getInt(0) != IDX_MAGIC || idx.getInt(4) != 2) {
+            throw new ProjectRepositoryException("Unsupported pack index " + idxFile);
+        }
+        this.count = idx.getInt(8 + 255 * 4);
+        String name = idxFile.getName();
+        File packFile = new File(idxFile.getParentFile(), name.substring(0, name.length() - 4) + ".pack");
+        this.pack = new RandomAccessFile(packFile, "r").getChannel();
+    }
+
+    /**
+     * Looks up an object.
+     *
+     * @param id the object id.
+     * @return the offset of the object in the pack or {@code -1} if the pack does not contain the object.
+     */
+    long find(@NonNull byte[] id) {
+        int first = id[0] & 0xff;
+        int lo = first == 0 ? 0 : idx.getInt(8 + (first - 1) * 4);
+        int hi = idx.getInt(8 + first * 4);
+        int names = 8 + 256 * 4;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            int cmp = compare(id, names + mid * 20);
+            if (cmp == 0) {
+                return offset(mid);
+            } else if (cmp < 0) {
+                hi = mid;
+            } else {
+                lo = mid + 1;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Compares an object id with a name in the index.
+     *
+     * @param id       the object id.
+     * @param position the position of the name in the index.
+     * @return the comparison, treating bytes as unsigned.
+     */
+    private int compare(@NonNull byte[] id, int position) {
+        for (int i = 0; i < 20; i++) {
+            int a = id[i] & 0xff;
+            int b = idx.get(position + i) & 0xff;
+            if (a != b) {
+                return a - b;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Returns the pack offset of an index entry.
+     *
+     * @param entry the index entry.
+     * @return the pack offset.
+     */
+    private long offset(int entry) {
+        int offsets32 = 8 + 256 * 4 + count * 24;
+        int value = idx.getInt(offsets32 + entry * 4);
+        if ((value & 0x80000000) == 0) {
+            return value;
+        }
+        int offsets64 = offsets32 + count * 4;
+        return idx.getLong(offsets64 + (value & 0x7fffffff) * 8);
+    }
+
+    /**
+     * Reads an object, resolving deltas.
+     *
+     * @param store    the store, to resolve {@link #REF_DELTA} bases.
+     * @param offset   the offset of the object in the pack.
+     * @param maxBytes the maximum size of the object.
+     * @return the object.
+     * @throws FileTooLargeException if the object is larger than {@code maxBytes}, detected before it is inflated.
+     * @throws IOException           if the object could not be read.
+     */
+    @NonNull
+    GitObjectStore.RawObject read(@NonNull GitObjectStore store, long offset, long maxBytes) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(32);
+        readAt(header, offset);
+        header.flip();
+        int c = header.get() & 0xff;
+        int type = (c >> 4) & 7;
+        long size = c & 0x0f;
+        int shift = 4;
+        while ((c & 0x80) != 0) {
+            c = header.get() & 0xff;
+            size += (long) (c & 0x7f) << shift;
+            shift += 7;
+        }
+        if (type == OFS_DELTA) {
+            c = header.get() & 0xff;
+            long distance = c & 0x7f;
+            while ((c & 0x80) != 0) {
+                c = header.get() & 0xff;
+                distance = ((distance + 1) << 7) | (c & 0x7f);
+            }
+            long[] sizes = deltaSizes(offset + header.position());
+            GitObjectStore.checkSize(sizes[1], maxBytes);
+            GitObjectStore.RawObject base = read(store, offset - distance, sizes[0]);
+            byte[] delta = inflate(offset + header.position(), size);
+            return new GitObjectStore.RawObject(base.getType(), applyDelta(base.getContent(), delta));
+        } else if (type == REF_DELTA) {
+            byte[] baseId = new byte[20];
+            header.get(baseId);
+            long[] sizes = deltaSizes(offset + header.position());
+            GitObjectStore.checkSize(sizes[1], maxBytes);
+            GitObjectStore.RawObject base = store.read(GitObjectStore.toHex(baseId), sizes[0]);
+            byte[] delta = inflate(offset + header.position(), size);
+            return new GitObjectStore.RawObject(base.getType(), applyDelta(base.getContent(), delta));
+        }
+        GitObjectStore.checkSize(size, maxBytes);
+        return new GitObjectStore.RawObject(type, inflate(offset + header.position(), size));
+    }
+
+    /**
+     * Reads the base and result sizes at the start of a delta, inflating no more than needed.
+     *
+     * @param position the position of the compressed delta.
+     * @return the base size and the result size.
+     * @throws IOException if the delta could not be inflated.
+     */
+    @NonNull
+    private long[] deltaSizes(long position) throws IOException {
+        // two varints of at most 10 bytes each
+        byte[] start = new byte[20];
+        int length = inflate(position, start, false);
+        int[] index = {0};
+        try {
+            long baseSize = readVarint(start, index);
+            long resultSize = readVarint(start, index);
+            if (index[0] > length) {
+                throw new ProjectRepositoryException("Corrupt delta");
+            }
+            return new long[]{baseSize, resultSize};
+        } catch (IndexOutOfBoundsException e) {
+            throw new ProjectRepositoryException("Corrupt delta", e);
+        }
+    }
+
+    /**
+     * Inflates data from the pack.
+     *
+     * @param position the position of the compressed data.
+     * @param size     the size of the inflated data.
+     * @return the inflated data.
+     * @throws IOException if the data could not be inflated.
+     */
+    @NonNull
+    private byte[] inflate(long position, long size) throws IOException {
+        if (size > Integer.MAX_VALUE) {
+            throw new ProjectRepositoryException("Object too large");
+        }
+        byte[] result = new byte[(int) size];
+        inflate(position, result, true);
+        return result;
+    }
+
+    /**
+     * Inflates data from the pack into a buffer.
+     *
+     * @param position the position of the compressed data.
+     * @param result   the buffer.
+     * @param exact    {@code true} if the inflated data must fill the buffer, {@code false} to stop early at the end
+     *                 of the compressed data.
+     * @return the number of bytes inflated.
+     * @throws IOException if the data could not be inflated.
+     */
+    private int inflate(long position, @NonNull byte[] result, boolean exact) throws IOException {
+        Inflater inflater = new Inflater();
+        try {
+            ByteBuffer input = ByteBuffer.allocate(exact ? CHUNK_SIZE : 64);
+            int length = 0;
+            while (length < result.length) {
+                if (inflater.needsInput()) {
+                    input.clear();
+                    int read = pack.read(input, position);
+                    if (read <= 0) {
+                        throw new ProjectRepositoryException("Truncated pack");
+                    }
+                    position += read;
+                    inflater.setInput(input.array(), 0, read);
+                }
+                int inflated = inflater.inflate(result, length, result.length - length);
+                if (inflated == 0 && (inflater.finished() || inflater.needsDictionary())) {
+                    if (!exact && inflater.finished()) {
+                        break;
+                    }
+                    throw new ProjectRepositoryException("Corrupt pack");
+                }
+                length += inflated;
+            }
+            return length;
+        } catch (DataFormatException e) {
+            throw new ProjectRepositoryException("Corrupt pack", e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    /**
+     * Applies a git delta.
+     *
+     * @param base  the base object content.
+     * @param delta the delta.
+     * @return the resulting content.
+     * @throws IOException if the delta is corrupt.
+     */
+    @NonNull
+    static byte[] applyDelta(@NonNull byte[] base, @NonNull byte[] delta) throws IOException {
+        int[] position = {0};
+        long baseSize = readVarint(delta, position);
+        long resultSize = readVarint(delta, position);
+        if (baseSize != base.length || resultSize > Integer.MAX_VALUE) {
+            throw new ProjectRepositoryException("Corrupt delta");
+        }
+        byte[] result = new byte[(int) resultSize];
+        int length = 0;
+        int p = position[0];
+        try {
+            while (p < delta.length) {
+                int op = delta[p++] & 0xff;
+                if ((op & 0x80) != 0) {
+                    int copyOffset = 0;
+                    int copySize = 0;
+                    for (int i = 0; i < 4; i++) {
+                        if ((op & (1 << i)) != 0) {
+                            copyOffset |= (delta[p++] & 0xff) << (8 * i);
+                        }
+                    }
+                    for (int i = 0; i < 3; i++) {
+                        if ((op & (0x10 << i)) != 0) {
+                            copySize |= (delta[p++] & 0xff) << (8 * i);
+                        }
+                    }
+                    if (copySize == 0) {
+                        copySize = 0x10000;
+                    }
+                    System.arraycopy(base, copyOffset, result, length, copySize);
+                    length += copySize;
+                } else if (op != 0) {
+                    System.arraycopy(delta, p, result, length, op);
+                    p += op;
+                    length += op;
+                } else {
+                    throw new ProjectRepositoryException("Corrupt delta");
+                }
+            }
+        } catch (IndexOutOfBoundsException e) {
+            throw new ProjectRepositoryException("Corrupt delta", e);
+        }
+        if (length != result.length) {
+            throw new ProjectRepositoryException("Corrupt delta");
+        }
+        return result;
+    }
+
+    /**
+     * Reads a little endian base 128 number from a delta.
+     *
+     * @param delta    the delta.
+     * @param position the position, updated.
+     * @return the number.
+     */
+    private static long readVarint(@NonNull byte[] delta, @NonNull int[] position) {
+        long result = 0;
+        int shift = 0;
+        int c;
+        do {
+            c = delta[position[0]++] & 0xff;
+            result |= (long) (c & 0x7f) << shift;
+            shift += 7;
+        } while ((c & 0x80) != 0);
+        return result;
+    }
+
+    /**
+     * Reads from the pack until the buffer is full or the end of the pack is reached.
+     *
+     * @param buffer   the buffer.
+     * @param position the position in the pack.
+     * @throws IOException if the pack could not be read.
+     */
+    private void readAt(@NonNull ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = pack.read(buffer, position);
+            if (read < 0) {
+                return;
+            }
+            position += read;
+        }
+    }
+
+    /**
+     * Closes the pack.
+     *
+     * @throws IOException if the pack could not be closed.
+     */
+    public void close() throws IOException {
+        pack.close();
+    }
+}
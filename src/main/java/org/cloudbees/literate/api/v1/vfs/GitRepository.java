@@ -0,0 +1,242 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2013, CloudBees, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.cloudbees.literate.api.v1.vfs;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import net.jcip.annotations.ThreadSafe;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * A {@link ProjectRepository} of the tree of a commit in a {@link GitObjectStore}. Paths are resolved lazily, one
+ * tree object per directory level, so probing for a marker file in the root costs a commit and a tree lookup.
+ * Symbolic links and submodules are not followed: they are neither files nor directories and are left out of the
+ * listings.
+ *
+ * @see GitObjectStore#at(String)
+ * @since 0.7
+ */
+@ThreadSafe
+public class GitRepository implements BufferedProjectRepository {
+
+    /**
+     * The object store.
+     */
+    @NonNull
+    private final GitObjectStore store;
+
+    /**
+     * The commit id.
+     */
+    @NonNull
+    private final String commitId;
+
+    /**
+     * The id of the root tree, once known.
+     */
+    @CheckForNull
+    private volatile String rootTreeId;
+
+    /**
+     * Constructor.
+     *
+     * @param store    the object store.
+     * @param commitId the commit id.
+     */
+    GitRepository(@NonNull GitObjectStore store, @NonNull String commitId) {
+        this.store = store;
+        this.commitId = commitId;
+    }
+
+    /**
+     * Returns the commit id, suitable for {@code ProjectModelRequest.Builder#withRevision(String)}.
+     *
+     * @return the commit id.
+     */
+    @NonNull
+    public String getCommitId() {
+        return commitId;
+    }
+
+    /**
+     * Returns the root tree.
+     *
+     * @return the root tree.
+     * @throws IOException if the commit or tree could not be read.
+     */
+    @NonNull
+    private GitObjectStore.Tree root() throws IOException {
+        String treeId = rootTreeId;
+        if (treeId == null) {
+            rootTreeId = treeId = store.commitTree(commitId);
+        }
+        return store.tree(treeId);
+    }
+
+    /**
+     * Returns the tree of a directory.
+     *
+     * @param normalized the normalized path.
+     * @return the tree or {@code null} if the path is not a directory.
+     * @throws IOException if an object could not be read.
+     */
+    @CheckForNull
+    private GitObjectStore.Tree directory(@NonNull String normalized) throws IOException {
+        GitObjectStore.Tree tree = root();
+        if (normalized.length() == 0) {
+            return tree;
+        }
+        int start = 0;
+        while (tree != null) {
+            int end = normalized.indexOf('/', start);
+            String name = end == -1 ? normalized.substring(start) : normalized.substring(start, end);
+            GitObjectStore.TreeEntry entry = tree.get(name);
+            tree = entry != null && entry.isDirectory() ? store.tree(entry.getId()) : null;
+            if (end == -1) {
+                return tree;
+            }
+            start = end + 1;
+        }
+        return null;
+    }
+
+    /**
+     * Returns the tree entry of a path.
+     *
+     * @param normalized the normalized path, not the root.
+     * @return the entry or {@code null} if the path does not exist.
+     * @throws IOException if an object could not be read.
+     */
+    @CheckForNull
+    private GitObjectStore.TreeEntry entry(@NonNull String normalized) throws IOException {
+        int index = normalized.lastIndexOf('/');
+        GitObjectStore.Tree parent = index == -1 ? root() : directory(normalized.substring(0, index));
+        return parent == null ? null : parent.get(normalized.substring(index + 1));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    //@Override
+    public InputStream get(String filePath) throws PathNotFoundException, IOException {
+        return new ByteArrayInputStream(blob(filePath, Long.MAX_VALUE));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    //@Override
+    public ByteBuffer getBuffer(String filePath) throws PathNotFoundException, IOException {
+        return ByteBuffer.wrap(blob(filePath, Long.MAX_VALUE));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    //@Override
+    public ByteBuffer getBuffer(String filePath, long maxBytes) throws PathNotFoundException, IOException {
+        return ByteBuffer.wrap(blob(filePath, maxBytes));
+    }
+
+    /**
+     * Returns the content of a file.
+     *
+     * @param filePath the file path.
+     * @param maxBytes the maximum size of the file.
+     * @return the content, which must not be modified.
+     * @throws PathNotFoundException if the path does not exist or is not a file.
+     * @throws FileTooLargeException if the file is larger than {@code maxBytes}.
+     * @throws IOException           if an object could not be read.
+     */
+    @NonNull
+    private byte[] blob(String filePath, long maxBytes) throws IOException {
+        String normalized = ProjectRepositories.normalize(filePath);
+        GitObjectStore.TreeEntry entry = normalized.length() == 0 ? null : entry(normalized);
+        if (entry == null || !entry.isFile()) {
+            throw PathNotFoundException.stackless("Path does not exist or is not a file");
+        }
+        GitObjectStore.RawObject object;
+        try {
+            object = store.read(entry.getId(), maxBytes);
+        } catch (FileTooLargeException e) {
+            throw new FileTooLargeException(filePath + " is larger than " + maxBytes + " bytes", maxBytes);
+        }
+        if (object.getType() != GitObjectStore.BLOB) {
+            throw new ProjectRepositoryException("Corrupt tree, " + filePath + " is not a blob");
+        }
+        return object.getContent();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    //@Override
+    public boolean isFile(String path) throws IOException {
+        String normalized = ProjectRepositories.normalize(path);
+        if (normalized.length() == 0) {
+            return false;
+        }
+        GitObjectStore.TreeEntry entry = entry(normalized);
+        return entry != null && entry.isFile();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    //@Override
+    public boolean isDirectory(String path) throws IOException {
+        return directory(ProjectRepositories.normalize(path)) != null;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    //@Override
+    public Set<String> getPaths(String path) throws PathNotFoundException, IOException {
+        String normalized = ProjectRepositories.normalize(path);
+        GitObjectStore.Tree tree = directory(normalized);
+        if (tree == null) {
+            throw PathNotFoundException.stackless("Path does not exist or is not a directory");
+        }
+        String prefix = normalized.length() == 0 ? "/" : "/" + normalized + "/";
+        Set<String> result = new TreeSet<String>();
+        for (Map.Entry<String, GitObjectStore.TreeEntry> entry : tree.getEntries().entrySet()) {
+            if (entry.getValue().isDirectory()) {
+                result.add(prefix + entry.getKey() + "/");
+            } else if (entry.getValue().isFile()) {
+                result.add(prefix + entry.getKey());
+            }
+            // symbolic links and submodules are neither, as for isFile and isDirectory
+        }
+        return Collections.unmodifiableSet(result);
+    }
+}
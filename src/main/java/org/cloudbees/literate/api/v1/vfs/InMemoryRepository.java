@@ -0,0 +1,514 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2013, CloudBees, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.cloudbees.literate.api.v1.vfs;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import net.jcip.annotations.Immutable;
+import net.jcip.annotations.NotThreadSafe;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * An immutable {@link ProjectRepository} held entirely in memory.
+ * <p/>
+ * The repository is a persistent tree: {@link #with(String, byte[])} and {@link #without(String)} return a new
+ * repository that shares every directory and every file content not on the path being changed with the original, so
+ * keeping a snapshot per revision costs only the directories that changed. File contents are copied once when they
+ * are added and then shared, they are never handed out in a modifiable form.
+ *
+ * @since 0.7
+ */
+@Immutable
+public final class InMemoryRepository implements BufferedProjectRepository, ListingProjectRepository {
+
+    /**
+     * The empty repository.
+     */
+    private static final InMemoryRepository EMPTY =
+            new InMemoryRepository(Node.directory(Collections.<String, Node>emptyMap()));
+
+    /**
+     * The root directory.
+     */
+    @NonNull
+    private final Node root;
+
+    /**
+     * Constructor.
+     *
+     * @param root the root directory.
+     */
+    private InMemoryRepository(@NonNull Node root) {
+        this.root = root;
+    }
+
+    /**
+     * Returns the empty repository.
+     *
+     * @return the empty repository.
+     */
+    @NonNull
+    public static InMemoryRepository empty() {
+        return EMPTY;
+    }
+
+    /**
+     * Creates a builder, which is cheaper than repeated calls to {@link #with(String, byte[])} when adding many
+     * files.
+     *
+     * @return the builder.
+     */
+    @NonNull
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Returns a repository with a file added or replaced. Any missing parent directories are created and any files
+     * in the way of the parent directories are replaced.
+     *
+     * @param filePath the file path.
+     * @param content  the content, which is copied.
+     * @return the new repository.
+     * @throws IllegalArgumentException if the path is the root or outside of the root.
+     */
+    @NonNull
+    public InMemoryRepository with(@NonNull String filePath, @NonNull byte[] content) {
+        return new InMemoryRepository(put(root, segments(filePath), 0, Node.file(content.clone())));
+    }
+
+    /**
+     * Returns a repository with a file added or replaced.
+     *
+     * @param filePath the file path.
+     * @param content  the content, which is encoded as UTF-8.
+     * @return the new repository.
+     * @throws IllegalArgumentException if the path is the root or outside of the root.
+     */
+    @NonNull
+    public InMemoryRepository with(@NonNull String filePath, @NonNull String content) {
+        return new InMemoryRepository(
+                put(root, segments(filePath), 0, Node.file(content.getBytes(ProjectRepositories.UTF_8))));
+    }
+
+    /**
+     * Returns a repository with a file or directory removed.
+     *
+     * @param path the path.
+     * @return the new repository, or this repository if the path does not exist.
+     * @throws IllegalArgumentException if the path is the root or outside of the root.
+     */
+    @NonNull
+    public InMemoryRepository without(@NonNull String path) {
+        Node result = remove(root, segments(path), 0);
+        return result == root ? this : new InMemoryRepository(result);
+    }
+
+    /**
+     * Splits a path into its segments.
+     *
+     * @param path the path.
+     * @return the segments.
+     * @throws IllegalArgumentException if the path is the root or outside of the root.
+     */
+    @NonNull
+    private static String[] segments(@NonNull String path) {
+        String normalized;
+        try {
+            normalized = ProjectRepositories.normalize(path);
+        } catch (PathNotFoundException e) {
+            throw new IllegalArgumentException(e.getMessage());
+        }
+        if (normalized.length() == 0) {
+            throw new IllegalArgumentException("Cannot replace the root");
+        }
+        return normalized.split("/");
+    }
+
+    /**
+     * Returns a copy of a directory with a node put at a path, sharing everything off the path.
+     *
+     * @param directory the directory.
+     * @param segments  the path segments.
+     * @param index     the index of the segment within the directory.
+     * @param node      the node to put.
+     * @return the new directory.
+     */
+    @NonNull
+    private static Node put(@NonNull Node directory, @NonNull String[] segments, int index, @NonNull Node node) {
+        Map<String, Node> children = new TreeMap<String, Node>(directory.children);
+        if (index == segments.length - 1) {
+            children.put(segments[index], node);
+        } else {
+            Node child = directory.children.get(segments[index]);
+            if (child == null || !child.isDirectory()) {
+                child = EMPTY.root;
+            }
+            children.put(segments[index], put(child, segments, index + 1, node));
+        }
+        return Node.directory(children);
+    }
+
+    /**
+     * Returns a copy of a directory with the node at a path removed, sharing everything off the path.
+     *
+     * @param directory the directory.
+     * @param segments  the path segments.
+     * @param index     the index of the segment within the directory.
+     * @return the new directory, or the same directory if there was nothing to remove.
+     */
+    @NonNull
+    private static Node remove(@NonNull Node directory, @NonNull String[] segments, int index) {
+        Node child = directory.children.get(segments[index]);
+        if (child == null) {
+            return directory;
+        }
+        Map<String, Node> children = new TreeMap<String, Node>(directory.children);
+        if (index == segments.length - 1) {
+            children.remove(segments[index]);
+        } else {
+            if (!child.isDirectory()) {
+                return directory;
+            }
+            Node result = remove(child, segments, index + 1);
+            if (result == child) {
+                return directory;
+            }
+            children.put(segments[index], result);
+        }
+        return Node.directory(children);
+    }
+
+    /**
+     * Looks up a node.
+     *
+     * @param path the path.
+     * @return the node or {@code null} if there is no such node.
+     * @throws PathNotFoundException if the path is outside of the root.
+     */
+    @CheckForNull
+    private Node lookup(String path) throws PathNotFoundException {
+        String normalized = ProjectRepositories.normalize(path);
+        Node node = root;
+        int start = 0;
+        while (node != null && start < normalized.length()) {
+            if (!node.isDirectory()) {
+                return null;
+            }
+            int end = normalized.indexOf('/', start);
+            if (end == -1) {
+                end = normalized.length();
+            }
+            node = node.children.get(normalized.substring(start, end));
+            start = end + 1;
+        }
+        return node;
+    }
+
+    /**
+     * Returns the content of a file.
+     *
+     * @param filePath the file path.
+     * @return the content, which must not be modified.
+     * @throws PathNotFoundException if the path does not exist or is not a file.
+     */
+    @NonNull
+    private byte[] content(String filePath) throws PathNotFoundException {
+        Node node = lookup(filePath);
+        if (node == null || node.isDirectory()) {
+            throw PathNotFoundException.stackless("Path does not exist or is not a file");
+        }
+        return node.content;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    //@Override
+    public InputStream get(String filePath) throws PathNotFoundException, IOException {
+        return new ByteArrayInputStream(content(filePath));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    //@Override
+    public ByteBuffer getBuffer(String filePath) throws PathNotFoundException, IOException {
+        return ByteBuffer.wrap(content(filePath)).asReadOnlyBuffer();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    //@Override
+    public ByteBuffer getBuffer(String filePath, long maxBytes) throws PathNotFoundException, IOException {
+        byte[] content = content(filePath);
+        ProjectRepositories.checkSize(filePath, content.length, maxBytes);
+        return ByteBuffer.wrap(content).asReadOnlyBuffer();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    //@Override
+    public boolean isFile(String path) throws IOException {
+        Node node = lookup(path);
+        return node != null && !node.isDirectory();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    //@Override
+    public boolean isDirectory(String path) throws IOException {
+        Node node = lookup(path);
+        return node != null && node.isDirectory();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    //@Override
+    public Set<String> getPaths(String path) throws PathNotFoundException, IOException {
+        Node node = lookup(path);
+        if (node == null || !node.isDirectory()) {
+            throw PathNotFoundException.stackless("Path does not exist or is not a directory");
+        }
+        String normalized = ProjectRepositories.normalize(path);
+        String prefix = normalized.length() == 0 ? "/" : "/" + normalized + "/";
+        Set<String> result = new TreeSet<String>();
+        for (Map.Entry<String, Node> entry : node.children.entrySet()) {
+            result.add(entry.getValue().isDirectory()
+                    ? prefix + entry.getKey() + "/"
+                    : prefix + entry.getKey());
+        }
+        return Collections.unmodifiableSet(result);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    //@Override
+    public Iterator<String> listPaths(String path, @CheckForNull PathFilter filter)
+            throws PathNotFoundException, IOException {
+        Node node = lookup(path);
+        if (node == null || !node.isDirectory()) {
+            throw PathNotFoundException.stackless("Path does not exist or is not a directory");
+        }
+        String normalized = ProjectRepositories.normalize(path);
+        String prefix = normalized.length() == 0 ? "/" : "/" + normalized + "/";
+        Set<String> names = filter == null ? null : filter.getNames();
+        List<String> result = new ArrayList<String>();
+        if (names != null) {
+            for (String name : names) {
+                Node child = node.children.get(name);
+                if (child != null) {
+                    result.add(child.isDirectory() ? prefix + name + "/" : prefix + name);
+                }
+            }
+        } else {
+            for (Map.Entry<String, Node> entry : node.children.entrySet()) {
+                if (filter == null || filter.accept(entry.getKey())) {
+                    result.add(entry.getValue().isDirectory()
+                            ? prefix + entry.getKey() + "/"
+                            : prefix + entry.getKey());
+                }
+            }
+        }
+        return result.iterator();
+    }
+
+    /**
+     * A file or directory.
+     */
+    @Immutable
+    private static final class Node {
+        /**
+         * The content of a file, {@code null} for a directory.
+         */
+        @CheckForNull
+        private final byte[] content;
+        /**
+         * The children of a directory, sorted by name, {@code null} for a file.
+         */
+        @CheckForNull
+        private final SortedMap<String, Node> children;
+
+        /**
+         * Constructor.
+         *
+         * @param content  the content of a file.
+         * @param children the children of a directory.
+         */
+        private Node(@CheckForNull byte[] content, @CheckForNull SortedMap<String, Node> children) {
+            this.content = content;
+            this.children = children;
+        }
+
+        /**
+         * Creates a file.
+         *
+         * @param content the content, which must not be shared with anyone who may modify it.
+         * @return the file.
+         */
+        @NonNull
+        static Node file(@NonNull byte[] content) {
+            return new Node(content, null);
+        }
+
+        /**
+         * Creates a directory.
+         *
+         * @param children the children, which are copied.
+         * @return the directory.
+         */
+        @NonNull
+        static Node directory(@NonNull Map<String, Node> children) {
+            return new Node(null, Collections.unmodifiableSortedMap(new TreeMap<String, Node>(children)));
+        }
+
+        /**
+         * Returns {@code true} if this is a directory.
+         *
+         * @return {@code true} if this is a directory.
+         */
+        boolean isDirectory() {
+            return children != null;
+        }
+    }
+
+    /**
+     * Builds an {@link InMemoryRepository}.
+     */
+    @NotThreadSafe
+    public static final class Builder {
+        /**
+         * The files added so far, keyed by normalized path.
+         */
+        @NonNull
+        private final SortedMap<String, byte[]> files = new TreeMap<String, byte[]>();
+
+        /**
+         * Constructor.
+         */
+        private Builder() {
+        }
+
+        /**
+         * Adds or replaces a file.
+         *
+         * @param filePath the file path.
+         * @param content  the content, which is copied.
+         * @return this builder.
+         */
+        @NonNull
+        public Builder add(@NonNull String filePath, @NonNull byte[] content) {
+            files.put(join(segments(filePath)), content.clone());
+            return this;
+        }
+
+        /**
+         * Adds or replaces a file.
+         *
+         * @param filePath the file path.
+         * @param content  the content, which is encoded as UTF-8.
+         * @return this builder.
+         */
+        @NonNull
+        public Builder add(@NonNull String filePath, @NonNull String content) {
+            files.put(join(segments(filePath)), content.getBytes(ProjectRepositories.UTF_8));
+            return this;
+        }
+
+        /**
+         * Builds the repository.
+         *
+         * @return the repository.
+         */
+        @NonNull
+        public InMemoryRepository build() {
+            return files.isEmpty() ? EMPTY : new InMemoryRepository(build(files, ""));
+        }
+
+        /**
+         * Builds a directory from the files below it.
+         *
+         * @param files  the files below the directory, keyed by path relative to the root.
+         * @param prefix the path of the directory relative to the root, with a trailing {@code /} unless the root.
+         * @return the directory.
+         */
+        @NonNull
+        private static Node build(@NonNull SortedMap<String, byte[]> files, @NonNull String prefix) {
+            Map<String, Node> children = new TreeMap<String, Node>();
+            String subdirectory = null;
+            for (Map.Entry<String, byte[]> entry : files.entrySet()) {
+                String relative = entry.getKey().substring(prefix.length());
+                int slash = relative.indexOf('/');
+                if (slash == -1) {
+                    children.put(relative, Node.file(entry.getValue()));
+                } else {
+                    String name = relative.substring(0, slash);
+                    if (!name.equals(subdirectory)) {
+                        subdirectory = name;
+                        String childPrefix = prefix + name + "/";
+                        // '0' is the character after '/' so this is exactly the files below the child
+                        children.put(name, build(files.subMap(childPrefix, prefix + name + "0"), childPrefix));
+                    }
+                }
+            }
+            return Node.directory(children);
+        }
+
+        /**
+         * Joins path segments.
+         *
+         * @param segments the segments.
+         * @return the path.
+         */
+        @NonNull
+        private static String join(@NonNull String[] segments) {
+            StringBuilder buf = new StringBuilder();
+            for (String segment : segments) {
+                if (buf.length() > 0) {
+                    buf.append('/');
+                }
+                buf.append(segment);
+            }
+            return buf.toString();
+        }
+    }
+}
@@ -0,0 +1,53 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2013, CloudBees, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.cloudbees.literate.api.v1.vfs;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+
+import java.io.IOException;
+import java.util.Iterator;
+
+/**
+ * A {@link ProjectRepository} that can list the children of a directory one at a time and only those that match a
+ * filter, so that a caller looking for a handful of names in a large directory neither pays for the whole listing
+ * nor has to wait for it. This is optional, consumers should go through
+ * {@link ProjectRepositories#listPaths(ProjectRepository, String, PathFilter)} which falls back to
+ * {@link ProjectRepository#getPaths(String)} for repositories that do not implement this interface.
+ *
+ * @since 0.7
+ */
+public interface ListingProjectRepository extends ProjectRepository {
+
+    /**
+     * Lists the immediate child paths of the specified path that are accepted by a filter.
+     *
+     * @param path   the path to get child paths of. {@code null} is equivalent to the empty string or {@code /}
+     * @param filter the filter or {@code null} to list every child.
+     * @return the child paths in the form returned by {@link #getPaths(String)}, in no particular order. The
+     *         caller may stop iterating at any point.
+     * @throws PathNotFoundException if the specified path does not exist.
+     * @throws IOException           if there was a problem retrieving the list of child paths.
+     */
+    Iterator<String> listPaths(String path, @CheckForNull PathFilter filter) throws PathNotFoundException, IOException;
+}
@@ -0,0 +1,366 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2013, CloudBees, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.cloudbees.literate.api.v1.vfs;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import net.jcip.annotations.GuardedBy;
+import net.jcip.annotations.Immutable;
+import net.jcip.annotations.ThreadSafe;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * A {@link ProjectRepository} that stacks several repositories, for example a repository's own files over a set of
+ * organization wide defaults. Earlier layers override later ones: a file in an earlier layer hides the file or
+ * directory at the same path in every later layer, directories are merged.
+ * <p/>
+ * Each directory is merged the first time it is needed, from one listing of that directory in every layer that has
+ * it, and remembered, so that asking about a marker file only lists the root of each layer and the later questions
+ * about the same directory are single lookups. {@link #get(String)} goes straight to the layer that owns the file.
+ * When a layer changes, {@link #invalidate(int)} forgets the listings of that layer only, the merged directories are
+ * rebuilt on the next use.
+ *
+ * @since 0.7
+ */
+@ThreadSafe
+public class OverlayRepository implements BufferedProjectRepository {
+
+    /**
+     * The layers, the earliest takes precedence.
+     */
+    @NonNull
+    private final List<ProjectRepository> layers;
+
+    /**
+     * The listings of each layer, keyed by normalized directory path. A directory that the layer does not have maps
+     * to an empty set.
+     */
+    @NonNull
+    @GuardedBy("this")
+    private final Map<String, Set<String>>[] listings;
+
+    /**
+     * The merged directories, keyed by normalized path.
+     */
+    @NonNull
+    private final ConcurrentMap<String, Directory> directories = new ConcurrentHashMap<String, Directory>();
+
+    /**
+     * Constructor.
+     *
+     * @param layers the layers, the earliest takes precedence.
+     */
+    public OverlayRepository(@NonNull ProjectRepository... layers) {
+        this(Arrays.asList(layers));
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param layers the layers, the earliest takes precedence.
+     */
+    @SuppressWarnings("unchecked")
+    public OverlayRepository(@NonNull List<? extends ProjectRepository> layers) {
+        for (ProjectRepository layer : layers) {
+            layer.getClass(); // throw NPE if null
+        }
+        this.layers = Collections.unmodifiableList(new ArrayList<ProjectRepository>(layers));
+        this.listings = new Map[layers.size()];
+        for (int i = 0; i < listings.length; i++) {
+            listings[i] = new HashMap<String, Set<String>>();
+        }
+    }
+
+    /**
+     * Returns the layers.
+     *
+     * @return the layers, the earliest takes precedence.
+     */
+    @NonNull
+    public List<ProjectRepository> getLayers() {
+        return layers;
+    }
+
+    /**
+     * Forgets the listings of one layer, its directories will be listed again on the next use.
+     *
+     * @param layer the index of the layer in {@link #getLayers()}.
+     * @throws IndexOutOfBoundsException if there is no such layer.
+     */
+    public synchronized void invalidate(int layer) {
+        if (layer < 0 || layer >= listings.length) {
+            throw new IndexOutOfBoundsException("No layer " + layer);
+        }
+        listings[layer].clear();
+        directories.clear();
+    }
+
+    /**
+     * Forgets the listings of all the layers.
+     */
+    public synchronized void invalidateAll() {
+        for (Map<String, Set<String>> listing : listings) {
+            listing.clear();
+        }
+        directories.clear();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    //@Override
+    public InputStream get(String filePath) throws PathNotFoundException, IOException {
+        return layers.get(owner(filePath)).get(filePath);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    //@Override
+    public ByteBuffer getBuffer(String filePath) throws PathNotFoundException, IOException {
+        return ProjectRepositories.getBuffer(layers.get(owner(filePath)), filePath);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    //@Override
+    public ByteBuffer getBuffer(String filePath, long maxBytes) throws PathNotFoundException, IOException {
+        return ProjectRepositories.getBuffer(layers.get(owner(filePath)), filePath, maxBytes);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    //@Override
+    public boolean isFile(String path) throws IOException {
+        String normalized = ProjectRepositories.normalize(path);
+        if (normalized.length() == 0) {
+            return false;
+        }
+        int index = normalized.lastIndexOf('/');
+        Directory parent = directory(index == -1 ? "" : normalized.substring(0, index));
+        return parent != null && parent.files.containsKey(normalized.substring(index + 1));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    //@Override
+    public boolean isDirectory(String path) throws IOException {
+        return directory(ProjectRepositories.normalize(path)) != null;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    //@Override
+    public Set<String> getPaths(String path) throws PathNotFoundException, IOException {
+        Directory directory = directory(ProjectRepositories.normalize(path));
+        if (directory == null) {
+            throw PathNotFoundException.stackless("Path does not exist or is not a directory");
+        }
+        return directory.paths;
+    }
+
+    /**
+     * Returns the layer that owns a file.
+     *
+     * @param filePath the file path.
+     * @return the index of the layer.
+     * @throws PathNotFoundException if the path does not exist or is not a file.
+     * @throws IOException           if a layer could not be listed.
+     */
+    private int owner(String filePath) throws IOException {
+        String normalized = ProjectRepositories.normalize(filePath);
+        int index = normalized.lastIndexOf('/');
+        Directory parent = normalized.length() == 0
+                ? null
+                : directory(index == -1 ? "" : normalized.substring(0, index));
+        Integer owner = parent == null ? null : parent.files.get(normalized.substring(index + 1));
+        if (owner == null) {
+            throw PathNotFoundException.stackless("Path does not exist or is not a file");
+        }
+        return owner;
+    }
+
+    /**
+     * Returns a merged directory, merging it and its ancestors if needed.
+     *
+     * @param normalized the normalized path of the directory.
+     * @return the directory or {@code null} if the path is not a directory.
+     * @throws IOException if a layer could not be listed.
+     */
+    @CheckForNull
+    private Directory directory(@NonNull String normalized) throws IOException {
+        Directory directory = directories.get(normalized);
+        if (directory != null) {
+            return directory;
+        }
+        int[] owners;
+        if (normalized.length() == 0) {
+            owners = new int[layers.size()];
+            for (int i = 0; i < owners.length; i++) {
+                owners[i] = i;
+            }
+        } else {
+            int index = normalized.lastIndexOf('/');
+            Directory parent = directory(index == -1 ? "" : normalized.substring(0, index));
+            owners = parent == null ? null : parent.directories.get(normalized.substring(index + 1));
+            if (owners == null) {
+                return null;
+            }
+        }
+        synchronized (this) {
+            directory = directories.get(normalized);
+            if (directory == null) {
+                directory = merge(normalized, owners);
+                directories.put(normalized, directory);
+            }
+            return directory;
+        }
+    }
+
+    /**
+     * Merges a directory from the layers that have it. Called with the lock held.
+     *
+     * @param normalized the normalized path of the directory.
+     * @param owners     the layers that have the directory, the earliest first.
+     * @return the directory.
+     * @throws IOException if a layer could not be listed.
+     */
+    @NonNull
+    private Directory merge(@NonNull String normalized, @NonNull int[] owners) throws IOException {
+        Map<String, Integer> files = new HashMap<String, Integer>();
+        Map<String, List<Integer>> subdirectories = new HashMap<String, List<Integer>>();
+        for (int layer : owners) {
+            for (String child : listing(layer, normalized)) {
+                boolean isDirectory = child.endsWith("/");
+                String name = ProjectRepositories.name(child);
+                if (name.length() == 0 || files.containsKey(name)) {
+                    continue;
+                }
+                List<Integer> layers = subdirectories.get(name);
+                if (layers == null) {
+                    if (isDirectory) {
+                        layers = new ArrayList<Integer>();
+                        layers.add(layer);
+                        subdirectories.put(name, layers);
+                    } else {
+                        files.put(name, layer);
+                    }
+                } else if (isDirectory) {
+                    layers.add(layer);
+                }
+            }
+        }
+        return new Directory(normalized, files, subdirectories);
+    }
+
+    /**
+     * Returns the listing of a directory of a layer. Called with the lock held.
+     *
+     * @param layer      the index of the layer.
+     * @param normalized the normalized path of the directory.
+     * @return the child paths in the form returned by {@link ProjectRepository#getPaths(String)}, empty if the layer
+     *         does not have the directory.
+     * @throws IOException if the layer could not be listed.
+     */
+    @NonNull
+    private Set<String> listing(int layer, @NonNull String normalized) throws IOException {
+        Set<String> listing = listings[layer].get(normalized);
+        if (listing == null) {
+            try {
+                listing = layers.get(layer).getPaths("/" + normalized);
+            } catch (PathNotFoundException e) {
+                listing = Collections.emptySet();
+            }
+            listings[layer].put(normalized, listing);
+        }
+        return listing;
+    }
+
+    /**
+     * A merged directory.
+     */
+    @Immutable
+    private static final class Directory {
+        /**
+         * The files, mapping name to the index of the layer that owns the file.
+         */
+        @NonNull
+        private final Map<String, Integer> files;
+        /**
+         * The subdirectories, mapping name to the indices of the layers that have the subdirectory.
+         */
+        @NonNull
+        private final Map<String, int[]> directories;
+        /**
+         * The child paths in the form returned by {@link ProjectRepository#getPaths(String)}.
+         */
+        @NonNull
+        private final Set<String> paths;
+
+        /**
+         * Constructor.
+         *
+         * @param normalized  the normalized path of the directory.
+         * @param files       the files, mapping name to the index of the layer that owns the file.
+         * @param directories the subdirectories, mapping name to the indices of the layers that have it.
+         */
+        private Directory(@NonNull String normalized, @NonNull Map<String, Integer> files,
+                          @NonNull Map<String, List<Integer>> directories) {
+            String prefix = normalized.length() == 0 ? "/" : "/" + normalized + "/";
+            Set<String> paths = new TreeSet<String>();
+            for (String name : files.keySet()) {
+                paths.add(prefix + name);
+            }
+            this.directories = new HashMap<String, int[]>(directories.size());
+            for (Map.Entry<String, List<Integer>> entry : directories.entrySet()) {
+                List<Integer> layers = entry.getValue();
+                int[] owners = new int[layers.size()];
+                for (int i = 0; i < owners.length; i++) {
+                    owners[i] = layers.get(i);
+                }
+                this.directories.put(entry.getKey(), owners);
+                paths.add(prefix + entry.getKey() + "/");
+            }
+            this.files = files;
+            this.paths = Collections.unmodifiableSet(paths);
+        }
+    }
+}
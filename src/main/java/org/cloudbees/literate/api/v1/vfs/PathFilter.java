@@ -0,0 +1,157 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2013, CloudBees, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.cloudbees.literate.api.v1.vfs;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import net.jcip.annotations.Immutable;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Selects the children of a directory by name, for {@link ListingProjectRepository#listPaths(String, PathFilter)}.
+ *
+ * @since 0.7
+ */
+@Immutable
+public abstract class PathFilter {
+
+    /**
+     * Accepts everything.
+     */
+    public static final PathFilter ALL = new PathFilter() {
+        @Override
+        public boolean accept(@NonNull String name) {
+            return true;
+        }
+
+        @Override
+        public String toString() {
+            return "PathFilter.ALL";
+        }
+    };
+
+    /**
+     * Returns {@code true} if the child with the supplied name should be listed.
+     *
+     * @param name the name of the child, without any path or trailing {@code /}.
+     * @return {@code true} if the child should be listed.
+     */
+    public abstract boolean accept(@NonNull String name);
+
+    /**
+     * Returns the names that this filter accepts, if it accepts only a known set of names. A repository can look
+     * those names up directly rather than listing the whole directory.
+     *
+     * @return the names or {@code null} if the filter is not limited to a known set of names.
+     */
+    @CheckForNull
+    public Set<String> getNames() {
+        return null;
+    }
+
+    /**
+     * Returns a filter that accepts exactly the supplied names.
+     *
+     * @param names the names.
+     * @return the filter.
+     */
+    @NonNull
+    public static PathFilter names(@NonNull String... names) {
+        return names(Arrays.asList(names));
+    }
+
+    /**
+     * Returns a filter that accepts exactly the supplied names.
+     *
+     * @param names the names.
+     * @return the filter.
+     */
+    @NonNull
+    public static PathFilter names(@NonNull Collection<String> names) {
+        final Set<String> set = Collections.unmodifiableSet(new LinkedHashSet<String>(names));
+        return new PathFilter() {
+            @Override
+            public boolean accept(@NonNull String name) {
+                return set.contains(name);
+            }
+
+            @Override
+            public Set<String> getNames() {
+                return set;
+            }
+
+            @Override
+            public String toString() {
+                return "PathFilter.names(" + set + ")";
+            }
+        };
+    }
+
+    /**
+     * Returns a filter that accepts the names matching a glob, where {@code *} matches any run of characters and
+     * {@code ?} matches any single character. Matching is case sensitive.
+     *
+     * @param glob the glob.
+     * @return the filter.
+     */
+    @NonNull
+    public static PathFilter glob(@NonNull final String glob) {
+        if (glob.indexOf('*') == -1 && glob.indexOf('?') == -1) {
+            return names(glob);
+        }
+        StringBuilder regex = new StringBuilder(glob.length() + 8);
+        int literal = 0;
+        for (int i = 0; i < glob.length(); i++) {
+            char c = glob.charAt(i);
+            if (c == '*' || c == '?') {
+                if (literal < i) {
+                    regex.append(Pattern.quote(glob.substring(literal, i)));
+                }
+                regex.append(c == '*' ? ".*" : ".");
+                literal = i + 1;
+            }
+        }
+        if (literal < glob.length()) {
+            regex.append(Pattern.quote(glob.substring(literal)));
+        }
+        final Pattern pattern = Pattern.compile(regex.toString(), Pattern.DOTALL);
+        return new PathFilter() {
+            @Override
+            public boolean accept(@NonNull String name) {
+                return pattern.matcher(name).matches();
+            }
+
+            @Override
+            public String toString() {
+                return "PathFilter.glob(" + glob + ")";
+            }
+        };
+    }
+}
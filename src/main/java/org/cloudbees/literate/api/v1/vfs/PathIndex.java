@@ -0,0 +1,272 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2013, CloudBees, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.cloudbees.literate.api.v1.vfs;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import net.jcip.annotations.Immutable;
+import net.jcip.annotations.NotThreadSafe;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * An index of the files and directories of a repository that does not have a real file system behind it, answering
+ * the metadata questions of {@link ProjectRepository} without touching the underlying storage.
+ *
+ * @param <T> the type of handle used to retrieve the content of a file.
+ */
+@Immutable
+final class PathIndex<T> {
+
+    /**
+     * The handles of the files, keyed by normalized path.
+     */
+    @NonNull
+    private final Map<String, T> files;
+
+    /**
+     * The children of each directory, in the form returned by {@link ProjectRepository#getPaths(String)}, keyed by
+     * normalized path (the empty string for the root).
+     */
+    @NonNull
+    private final Map<String, Set<String>> directories;
+
+    /**
+     * Constructor.
+     *
+     * @param files       the handles of the files.
+     * @param directories the children of each directory.
+     */
+    private PathIndex(@NonNull Map<String, T> files, @NonNull Map<String, Set<String>> directories) {
+        this.files = files;
+        this.directories = directories;
+    }
+
+    /**
+     * Creates a builder.
+     *
+     * @param stripComponents the number of leading path components to strip from each entry name, entries with no
+     *                        components left are ignored.
+     * @param <T>             the type of handle used to retrieve the content of a file.
+     * @return the builder.
+     */
+    @NonNull
+    static <T> Builder<T> builder(int stripComponents) {
+        return new Builder<T>(stripComponents);
+    }
+
+    /**
+     * Returns the handle of a file.
+     *
+     * @param path the path.
+     * @return the handle.
+     * @throws PathNotFoundException if the path does not exist or is not a file.
+     */
+    @NonNull
+    T file(String path) throws PathNotFoundException {
+        T handle = files.get(ProjectRepositories.normalize(path));
+        if (handle == null) {
+            throw PathNotFoundException.stackless("Path does not exist or is not a file");
+        }
+        return handle;
+    }
+
+    /**
+     * Returns {@code true} if and only if the path is a file.
+     *
+     * @param path the path.
+     * @return {@code true} if and only if the path is a file.
+     * @throws PathNotFoundException if the path is outside of the repository.
+     */
+    boolean isFile(String path) throws PathNotFoundException {
+        return files.containsKey(ProjectRepositories.normalize(path));
+    }
+
+    /**
+     * Returns {@code true} if and only if the path is a directory.
+     *
+     * @param path the path.
+     * @return {@code true} if and only if the path is a directory.
+     * @throws PathNotFoundException if the path is outside of the repository.
+     */
+    boolean isDirectory(String path) throws PathNotFoundException {
+        return directories.containsKey(ProjectRepositories.normalize(path));
+    }
+
+    /**
+     * Returns the immediate children of a directory.
+     *
+     * @param path the path.
+     * @return the immediate children.
+     * @throws PathNotFoundException if the path does not exist or is not a directory.
+     */
+    @NonNull
+    Set<String> getPaths(String path) throws PathNotFoundException {
+        Set<String> children = directories.get(ProjectRepositories.normalize(path));
+        if (children == null) {
+            throw PathNotFoundException.stackless("Path does not exist or is not a directory");
+        }
+        return children;
+    }
+
+    /**
+     * Builds a {@link PathIndex}.
+     *
+     * @param <T> the type of handle used to retrieve the content of a file.
+     */
+    @NotThreadSafe
+    static final class Builder<T> {
+        /**
+         * The number of leading path components to strip.
+         */
+        private final int stripComponents;
+        /**
+         * The handles of the files.
+         */
+        @NonNull
+        private final Map<String, T> files = new HashMap<String, T>();
+        /**
+         * The children of each directory.
+         */
+        @NonNull
+        private final Map<String, Set<String>> directories = new HashMap<String, Set<String>>();
+
+        /**
+         * Constructor.
+         *
+         * @param stripComponents the number of leading path components to strip.
+         */
+        private Builder(int stripComponents) {
+            if (stripComponents < 0) {
+                throw new IllegalArgumentException("Cannot strip a negative number of components");
+            }
+            this.stripComponents = stripComponents;
+            directories.put("", new TreeSet<String>());
+        }
+
+        /**
+         * Adds an entry. Entries with a name outside of the root are ignored, a later entry for the same path
+         * replaces an earlier one.
+         *
+         * @param name   the name of the entry as found in the archive.
+         * @param handle the handle of the file or {@code null} for a directory.
+         * @return this builder.
+         */
+        @NonNull
+        Builder<T> add(@NonNull String name, @CheckForNull T handle) {
+            String path;
+            try {
+                path = ProjectRepositories.normalize(name);
+            } catch (PathNotFoundException e) {
+                // e.g. ../../etc/passwd, never expose it
+                return this;
+            }
+            path = strip(path);
+            if (path == null) {
+                return this;
+            }
+            addParents(path);
+            String parent = parent(path);
+            if (handle == null) {
+                if (!files.containsKey(path) && !directories.containsKey(path)) {
+                    directories.put(path, new TreeSet<String>());
+                    directories.get(parent).add("/" + path + "/");
+                }
+            } else if (!directories.containsKey(path)) {
+                files.put(path, handle);
+                directories.get(parent).add("/" + path);
+            }
+            return this;
+        }
+
+        /**
+         * Builds the index.
+         *
+         * @return the index.
+         */
+        @NonNull
+        PathIndex<T> build() {
+            Map<String, Set<String>> directories = new HashMap<String, Set<String>>(this.directories.size());
+            for (Map.Entry<String, Set<String>> entry : this.directories.entrySet()) {
+                directories.put(entry.getKey(), Collections.unmodifiableSet(new TreeSet<String>(entry.getValue())));
+            }
+            return new PathIndex<T>(new HashMap<String, T>(files), directories);
+        }
+
+        /**
+         * Ensures that all the ancestors of a path are directories.
+         *
+         * @param path the normalized path.
+         */
+        private void addParents(@NonNull String path) {
+            int index = path.lastIndexOf('/');
+            if (index == -1) {
+                return;
+            }
+            String parent = path.substring(0, index);
+            if (directories.containsKey(parent)) {
+                return;
+            }
+            addParents(parent);
+            files.remove(parent);
+            directories.get(parent(parent)).remove("/" + parent);
+            directories.put(parent, new TreeSet<String>());
+            directories.get(parent(parent)).add("/" + parent + "/");
+        }
+
+        /**
+         * Returns the parent of a normalized path.
+         *
+         * @param path the normalized path.
+         * @return the parent, the empty string for the root.
+         */
+        @NonNull
+        private static String parent(@NonNull String path) {
+            int index = path.lastIndexOf('/');
+            return index == -1 ? "" : path.substring(0, index);
+        }
+
+        /**
+         * Strips the leading components from a normalized entry name.
+         *
+         * @param path the normalized entry name.
+         * @return the stripped name or {@code null} if there is nothing left.
+         */
+        @CheckForNull
+        private String strip(@NonNull String path) {
+            for (int i = 0; i < stripComponents; i++) {
+                int index = path.indexOf('/');
+                if (index == -1) {
+                    return null;
+                }
+                path = path.substring(index + 1);
+            }
+            return path.length() == 0 ? null : path;
+        }
+    }
+}
@@ -54,4 +54,41 @@ public class PathNotFoundException extends ProjectRepositoryException {
     public PathNotFoundException(String message, Throwable cause) {
         super(message, cause);
     }
+
+    /**
+     * Creates an instance without a stack trace, for the expected outcomes (such as probing for a file that is not
+     * there) where filling in the stack trace would be wasted effort.
+     *
+     * @param message the message.
+     * @return the exception.
+     * @since 0.7
+     */
+    public static PathNotFoundException stackless(String message) {
+        return new Stackless(message);
+    }
+
+    /**
+     * An instance without a stack trace.
+     */
+    private static final class Stackless extends PathNotFoundException {
+        /**
+         * Ensure consistent serialization.
+         */
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * {@inheritDoc}
+         */
+        private Stackless(String message) {
+            super(message);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public Throwable fillInStackTrace() {
+            return this;
+        }
+    }
 }
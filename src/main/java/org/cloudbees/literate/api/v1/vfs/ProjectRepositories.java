@@ -0,0 +1,392 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2013, CloudBees, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.cloudbees.literate.api.v1.vfs;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import org.apache.commons.io.IOUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CodingErrorAction;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Utility methods for accessing the content of a {@link ProjectRepository}.
+ *
+ * @since 0.7
+ */
+public final class ProjectRepositories {
+
+    /**
+     * The encoding of literate build descriptions.
+     */
+    public static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /**
+     * The largest array that can be allocated.
+     */
+    static final int MAX_ARRAY_SIZE = Integer.MAX_VALUE - 8;
+
+    /**
+     * Utility class.
+     */
+    private ProjectRepositories() {
+    }
+
+    /**
+     * Returns the contents of the specified file, directly if the repository is a {@link BufferedProjectRepository}
+     * and by reading {@link ProjectRepository#get(String)} otherwise.
+     *
+     * @param repository the repository.
+     * @param filePath   the file path.
+     * @return the contents.
+     * @throws PathNotFoundException if the specified path does not exist.
+     * @throws IOException           if there was a problem retrieving the contents.
+     */
+    @NonNull
+    public static ByteBuffer getBuffer(@NonNull ProjectRepository repository, String filePath)
+            throws PathNotFoundException, IOException {
+        if (repository instanceof BufferedProjectRepository) {
+            return ((BufferedProjectRepository) repository).getBuffer(filePath);
+        }
+        InputStream stream = repository.get(filePath);
+        try {
+            return ByteBuffer.wrap(IOUtils.toByteArray(stream));
+        } finally {
+            IOUtils.closeQuietly(stream);
+        }
+    }
+
+    /**
+     * Returns the contents of the specified file, failing as soon as it is known to be larger than a limit. A
+     * {@link BufferedProjectRepository} is asked for the bounded contents directly, otherwise
+     * {@link ProjectRepository#get(String)} is read no further than the limit.
+     *
+     * @param repository the repository.
+     * @param filePath   the file path.
+     * @param maxBytes   the maximum number of bytes to read.
+     * @return the contents.
+     * @throws PathNotFoundException if the specified path does not exist.
+     * @throws FileTooLargeException if the file is larger than {@code maxBytes}.
+     * @throws IOException           if there was a problem retrieving the contents.
+     */
+    @NonNull
+    public static ByteBuffer getBuffer(@NonNull ProjectRepository repository, String filePath, long maxBytes)
+            throws PathNotFoundException, IOException {
+        if (repository instanceof BufferedProjectRepository) {
+            return ((BufferedProjectRepository) repository).getBuffer(filePath, maxBytes);
+        }
+        return read(repository.get(filePath), filePath, maxBytes);
+    }
+
+    /**
+     * Checks the size of a file against a limit.
+     *
+     * @param filePath the file path, for error messages.
+     * @param size     the size of the file.
+     * @param maxBytes the maximum size.
+     * @throws FileTooLargeException if {@code size} is larger than {@code maxBytes}.
+     */
+    public static void checkSize(String filePath, long size, long maxBytes) throws FileTooLargeException {
+        if (size > maxBytes) {
+            throw new FileTooLargeException(filePath + " is larger than " + maxBytes + " bytes", maxBytes);
+        }
+    }
+
+    /**
+     * Reads a stream no further than a limit and closes it.
+     *
+     * @param stream   the stream.
+     * @param filePath the file path, for error messages.
+     * @param maxBytes the maximum number of bytes to read.
+     * @return the contents.
+     * @throws FileTooLargeException if the stream has more than {@code maxBytes}.
+     * @throws IOException           if the stream could not be read.
+     */
+    @NonNull
+    static ByteBuffer read(@NonNull InputStream stream, String filePath, long maxBytes) throws IOException {
+        try {
+            // an array cannot hold more than this
+            int limit = (int) Math.min(maxBytes, MAX_ARRAY_SIZE);
+            byte[] content = new byte[Math.min(limit, 8192)];
+            int count = 0;
+            while (true) {
+                if (count == content.length) {
+                    if (count == limit) {
+                        if (stream.read() == -1) {
+                            break;
+                        }
+                        throw new FileTooLargeException(filePath + " is larger than " + maxBytes + " bytes",
+                                maxBytes);
+                    }
+                    byte[] grown = new byte[(int) Math.min(limit, count * 2L)];
+                    System.arraycopy(content, 0, grown, 0, count);
+                    content = grown;
+                }
+                int read = stream.read(content, count, content.length - count);
+                if (read == -1) {
+                    break;
+                }
+                count += read;
+            }
+            return ByteBuffer.wrap(content, 0, count);
+        } finally {
+            IOUtils.closeQuietly(stream);
+        }
+    }
+
+    /**
+     * Returns those of the specified paths that correspond to files, in one request if the repository is a
+     * {@link BatchProjectRepository} and by asking {@link ProjectRepository#isFile(String)} for each path otherwise.
+     *
+     * @param repository the repository.
+     * @param paths      the paths.
+     * @return the paths that are files, exactly as supplied and in the order supplied.
+     * @throws IOException if there was a problem checking the paths.
+     */
+    @NonNull
+    public static Set<String> filterFiles(@NonNull ProjectRepository repository, @NonNull Collection<String> paths)
+            throws IOException {
+        if (paths.isEmpty()) {
+            return Collections.emptySet();
+        }
+        Set<String> result = new LinkedHashSet<String>();
+        if (repository instanceof BatchProjectRepository) {
+            Set<String> files = ((BatchProjectRepository) repository).filterFiles(paths);
+            for (String path : paths) {
+                if (files.contains(path)) {
+                    result.add(path);
+                }
+            }
+        } else {
+            for (String path : paths) {
+                if (repository.isFile(path)) {
+                    result.add(path);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the contents of those of the specified files that exist, in one request if the repository is a
+     * {@link BatchProjectRepository} and by calling {@link #getBuffer(ProjectRepository, String)} for each file
+     * otherwise.
+     *
+     * @param repository the repository.
+     * @param filePaths  the file paths.
+     * @return the contents keyed by file path exactly as supplied, in the order supplied. Paths that do not exist or
+     *         are not files are absent.
+     * @throws IOException if there was a problem retrieving the contents.
+     */
+    @NonNull
+    public static Map<String, ByteBuffer> getAll(@NonNull ProjectRepository repository,
+                                                 @NonNull Collection<String> filePaths) throws IOException {
+        return getAll(repository, filePaths, Long.MAX_VALUE);
+    }
+
+    /**
+     * Returns the contents of those of the specified files that exist, failing as soon as one is known to be larger
+     * than a limit. This is done in one request if the repository is a {@link BatchProjectRepository} and by calling
+     * {@link #getBuffer(ProjectRepository, String, long)} for each file otherwise.
+     *
+     * @param repository the repository.
+     * @param filePaths  the file paths.
+     * @param maxBytes   the maximum number of bytes to read from each file.
+     * @return the contents keyed by file path exactly as supplied, in the order supplied. Paths that do not exist or
+     *         are not files are absent.
+     * @throws FileTooLargeException if one of the files is larger than {@code maxBytes}.
+     * @throws IOException           if there was a problem retrieving the contents.
+     */
+    @NonNull
+    public static Map<String, ByteBuffer> getAll(@NonNull ProjectRepository repository,
+                                                 @NonNull Collection<String> filePaths, long maxBytes)
+            throws IOException {
+        if (filePaths.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        Map<String, ByteBuffer> result = new LinkedHashMap<String, ByteBuffer>();
+        if (repository instanceof BatchProjectRepository) {
+            Map<String, ByteBuffer> contents = ((BatchProjectRepository) repository).getAll(filePaths, maxBytes);
+            for (String path : filePaths) {
+                ByteBuffer content = contents.get(path);
+                if (content != null) {
+                    result.put(path, content);
+                }
+            }
+        } else {
+            for (String path : filePaths) {
+                try {
+                    result.put(path, getBuffer(repository, path, maxBytes));
+                } catch (PathNotFoundException e) {
+                    // absent
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Lists the immediate child paths of the specified path that are accepted by a filter, directly if the repository
+     * is a {@link ListingProjectRepository} and by filtering {@link ProjectRepository#getPaths(String)} otherwise.
+     *
+     * @param repository the repository.
+     * @param path       the path to get child paths of.
+     * @param filter     the filter or {@code null} to list every child.
+     * @return the child paths in the form returned by {@link ProjectRepository#getPaths(String)}, in no particular
+     *         order.
+     * @throws PathNotFoundException if the specified path does not exist.
+     * @throws IOException           if there was a problem retrieving the list of child paths.
+     */
+    @NonNull
+    public static Iterator<String> listPaths(@NonNull ProjectRepository repository, String path,
+                                             @CheckForNull PathFilter filter)
+            throws PathNotFoundException, IOException {
+        if (repository instanceof ListingProjectRepository) {
+            return ((ListingProjectRepository) repository).listPaths(path, filter);
+        }
+        return filter(repository.getPaths(path), filter);
+    }
+
+    /**
+     * Filters a listing.
+     *
+     * @param paths  the listing in the form returned by {@link ProjectRepository#getPaths(String)}.
+     * @param filter the filter or {@code null} to keep every path.
+     * @return the accepted paths.
+     */
+    @NonNull
+    static Iterator<String> filter(@NonNull Set<String> paths, @CheckForNull PathFilter filter) {
+        if (filter == null) {
+            return paths.iterator();
+        }
+        List<String> result = new ArrayList<String>();
+        for (String child : paths) {
+            if (filter.accept(name(child))) {
+                result.add(child);
+            }
+        }
+        return result.iterator();
+    }
+
+    /**
+     * Returns the name of a path in the form returned by {@link ProjectRepository#getPaths(String)}.
+     *
+     * @param path the path.
+     * @return the last segment of the path, without any trailing {@code /}.
+     */
+    @NonNull
+    static String name(@NonNull String path) {
+        int end = path.endsWith("/") ? path.length() - 1 : path.length();
+        return path.substring(path.lastIndexOf('/', end - 1) + 1, end);
+    }
+
+    /**
+     * Returns the contents of the specified file decoded as UTF-8, without any leading byte order mark. Malformed
+     * input is replaced rather than rejected.
+     *
+     * @param repository the repository.
+     * @param filePath   the file path.
+     * @return the decoded contents, backed by an array.
+     * @throws PathNotFoundException if the specified path does not exist.
+     * @throws IOException           if there was a problem retrieving the contents.
+     */
+    @NonNull
+    public static CharBuffer getChars(@NonNull ProjectRepository repository, String filePath)
+            throws PathNotFoundException, IOException {
+        return decode(getBuffer(repository, filePath));
+    }
+
+    /**
+     * Decodes UTF-8 content, without any leading byte order mark. Malformed input is replaced rather than rejected.
+     *
+     * @param content the content, its position is moved to its limit.
+     * @return the decoded contents, backed by an array.
+     * @throws CharacterCodingException never as errors are replaced.
+     */
+    @NonNull
+    public static CharBuffer decode(@NonNull ByteBuffer content) throws CharacterCodingException {
+        CharBuffer chars = UTF_8.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE)
+                .decode(content);
+        if (chars.hasRemaining() && chars.get(chars.position()) == '\uFEFF') {
+            chars.position(chars.position() + 1);
+        }
+        return chars;
+    }
+
+    /**
+     * Normalizes a path relative to the root.
+     *
+     * @param path the path.
+     * @return the normalized path without leading or trailing separators, the empty string for the root.
+     * @throws PathNotFoundException if the path is outside of the root.
+     */
+    static String normalize(String path) throws PathNotFoundException {
+        if (path == null || path.trim().length() == 0) {
+            return "";
+        }
+        if (path.indexOf('/') == -1 && path.indexOf('\\') == -1 && !path.equals(".") && !path.equals("..")) {
+            // the common case: a plain name in the root
+            return path;
+        }
+        StringBuilder result = new StringBuilder(path.length());
+        int length = path.length();
+        int start = 0;
+        while (start < length) {
+            int end = start;
+            while (end < length && path.charAt(end) != '/' && path.charAt(end) != '\\') {
+                end++;
+            }
+            int segmentLength = end - start;
+            if (segmentLength == 2 && path.charAt(start) == '.' && path.charAt(start + 1) == '.') {
+                if (result.length() == 0) {
+                    throw new PathNotFoundException("Path is outside of repository");
+                }
+                result.setLength(Math.max(0, result.lastIndexOf("/")));
+            } else if (segmentLength > 1 || (segmentLength == 1 && path.charAt(start) != '.')) {
+                if (result.length() > 0) {
+                    result.append('/');
+                }
+                result.append(path, start, end);
+            }
+            start = end + 1;
+        }
+        return result.toString();
+    }
+}
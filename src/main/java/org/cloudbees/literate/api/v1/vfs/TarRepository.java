@@ -0,0 +1,430 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2013, CloudBees, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.cloudbees.literate.api.v1.vfs;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import net.jcip.annotations.Immutable;
+import net.jcip.annotations.ThreadSafe;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Set;
+
+/**
+ * A {@link ProjectRepository} backed by an uncompressed tar archive (POSIX ustar, with GNU long names and PAX path
+ * headers). The headers are read once on construction and the metadata questions are answered from them, only the
+ * entries that are actually requested are streamed, using positional reads so that concurrent requests do not
+ * contend. Links and special files are ignored. Compressed archives have to be decompressed first as they cannot be
+ * read randomly.
+ * <p/>
+ * The repository keeps the archive open until it is {@link #close()}d.
+ *
+ * @since 0.7
+ */
+@ThreadSafe
+public class TarRepository implements BufferedProjectRepository, Closeable {
+
+    /**
+     * The size of a tar block.
+     */
+    private static final int BLOCK_SIZE = 512;
+
+    /**
+     * The largest GNU long name or PAX extended header that is read, real ones are a few hundred bytes at most.
+     */
+    private static final int MAX_EXTENDED_HEADER_SIZE = 1024 * 1024;
+
+    /**
+     * The archive.
+     */
+    @NonNull
+    private final FileChannel channel;
+
+    /**
+     * The index of the archive.
+     */
+    @NonNull
+    private final PathIndex<Entry> index;
+
+    /**
+     * Constructor.
+     *
+     * @param archive the tar archive.
+     * @throws IOException if the archive could not be read.
+     */
+    public TarRepository(@NonNull File archive) throws IOException {
+        this(archive, 0);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param archive         the tar archive.
+     * @param stripComponents the number of leading path components to strip from each entry name, e.g. {@code 1}
+     *                        for a snapshot where everything is below a single top level directory.
+     * @throws IOException if the archive could not be read.
+     */
+    public TarRepository(@NonNull File archive, int stripComponents) throws IOException {
+        this.channel = new RandomAccessFile(archive, "r").getChannel();
+        boolean success = false;
+        try {
+            this.index = readIndex(stripComponents);
+            success = true;
+        } finally {
+            if (!success) {
+                channel.close();
+            }
+        }
+    }
+
+    /**
+     * Reads the headers of the archive.
+     *
+     * @param stripComponents the number of leading path components to strip.
+     * @return the index.
+     * @throws IOException if the archive could not be read.
+     */
+    @NonNull
+    private PathIndex<Entry> readIndex(int stripComponents) throws IOException {
+        PathIndex.Builder<Entry> builder = PathIndex.builder(stripComponents);
+        ByteBuffer header = ByteBuffer.allocate(BLOCK_SIZE);
+        long position = 0;
+        long length = channel.size();
+        String longName = null;
+        while (position + BLOCK_SIZE <= length) {
+            header.clear();
+            readFully(header, position);
+            byte[] block = header.array();
+            if (block[0] == 0) {
+                // end of archive marker
+                break;
+            }
+            long size = parseOctal(block, 124, 12);
+            long data = position + BLOCK_SIZE;
+            if (size > length - data) {
+                throw new EOFException("Truncated tar archive");
+            }
+            position = data + (size + BLOCK_SIZE - 1) / BLOCK_SIZE * BLOCK_SIZE;
+            char type = (char) block[156];
+            if (type == 'L' || type == 'x') {
+                if (size > MAX_EXTENDED_HEADER_SIZE) {
+                    throw new ProjectRepositoryException("Extended tar header of " + size + " bytes is larger than "
+                            + MAX_EXTENDED_HEADER_SIZE + " bytes");
+                }
+                ByteBuffer content = ByteBuffer.allocate((int) size);
+                readFully(content, data);
+                String extended = type == 'L'
+                        ? parseString(content.array(), 0, (int) size)
+                        : parsePaxPath(content.array());
+                if (extended != null) {
+                    longName = extended;
+                }
+                continue;
+            }
+            String name = longName != null ? longName : parseName(block);
+            longName = null;
+            if (type == '5' || (type == '0' || type == 0) && name.endsWith("/")) {
+                builder.add(name, null);
+            } else if (type == '0' || type == 0 || type == '7') {
+                builder.add(name, new Entry(data, size));
+            }
+        }
+        return builder.build();
+    }
+
+    /**
+     * Reads from the archive until the buffer is full.
+     *
+     * @param buffer   the buffer.
+     * @param position the position in the archive.
+     * @throws IOException if the archive is truncated or could not be read.
+     */
+    private void readFully(@NonNull ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int count = channel.read(buffer, position);
+            if (count < 0) {
+                throw new EOFException("Truncated tar archive");
+            }
+            position += count;
+        }
+    }
+
+    /**
+     * Returns the name of an entry, taking the ustar prefix into account.
+     *
+     * @param block the header block.
+     * @return the name.
+     */
+    @NonNull
+    private static String parseName(@NonNull byte[] block) {
+        String name = parseString(block, 0, 100);
+        if (block[257] == 'u' && block[258] == 's' && block[259] == 't' && block[260] == 'a' && block[261] == 'r') {
+            String prefix = parseString(block, 345, 155);
+            if (prefix.length() > 0) {
+                return prefix + "/" + name;
+            }
+        }
+        return name;
+    }
+
+    /**
+     * Returns the {@code path} of a PAX extended header.
+     *
+     * @param content the content of the extended header.
+     * @return the path or {@code null} if the header does not define one.
+     */
+    @CheckForNull
+    private static String parsePaxPath(@NonNull byte[] content) {
+        // records are "<length> <key>=<value>\n" where length counts the whole record
+        int offset = 0;
+        while (offset < content.length) {
+            int space = offset;
+            while (space < content.length && content[space] != ' ') {
+                space++;
+            }
+            int recordLength;
+            try {
+                recordLength = Integer.parseInt(new String(content, offset, space - offset, ProjectRepositories.UTF_8));
+            } catch (NumberFormatException e) {
+                return null;
+            }
+            if (recordLength <= 0 || offset + recordLength > content.length) {
+                return null;
+            }
+            String record = new String(content, space + 1, offset + recordLength - space - 2, ProjectRepositories.UTF_8);
+            if (record.startsWith("path=")) {
+                return record.substring(5);
+            }
+            offset += recordLength;
+        }
+        return null;
+    }
+
+    /**
+     * Parses a NUL terminated string field.
+     *
+     * @param block  the header block.
+     * @param offset the offset of the field.
+     * @param length the length of the field.
+     * @return the string.
+     */
+    @NonNull
+    private static String parseString(@NonNull byte[] block, int offset, int length) {
+        int end = offset;
+        while (end < offset + length && block[end] != 0) {
+            end++;
+        }
+        return new String(block, offset, end - offset, ProjectRepositories.UTF_8);
+    }
+
+    /**
+     * Parses an octal number field.
+     *
+     * @param block  the header block.
+     * @param offset the offset of the field.
+     * @param length the length of the field.
+     * @return the number.
+     * @throws IOException if the field is not a valid number.
+     */
+    private static long parseOctal(@NonNull byte[] block, int offset, int length) throws IOException {
+        long result = 0;
+        for (int i = offset; i < offset + length; i++) {
+            byte b = block[i];
+            if (b == 0 || b == ' ') {
+                if (result != 0) {
+                    break;
+                }
+                continue;
+            }
+            if (b < '0' || b > '7') {
+                throw new IOException("Invalid tar header");
+            }
+            result = (result << 3) + (b - '0');
+        }
+        return result;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    //@Override
+    public InputStream get(String filePath) throws PathNotFoundException, IOException {
+        return new EntryInputStream(index.file(filePath));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    //@Override
+    public ByteBuffer getBuffer(String filePath) throws PathNotFoundException, IOException {
+        return getBuffer(filePath, ProjectRepositories.MAX_ARRAY_SIZE);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    //@Override
+    public ByteBuffer getBuffer(String filePath, long maxBytes) throws PathNotFoundException, IOException {
+        Entry entry = index.file(filePath);
+        // the header sizes were checked against the archive when it was indexed
+        ProjectRepositories.checkSize(filePath, entry.size, maxBytes);
+        return ProjectRepositories.read(new EntryInputStream(entry), filePath, maxBytes);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    //@Override
+    public boolean isFile(String path) throws IOException {
+        return index.isFile(path);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    //@Override
+    public boolean isDirectory(String path) throws IOException {
+        return index.isDirectory(path);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    //@Override
+    public Set<String> getPaths(String path) throws PathNotFoundException, IOException {
+        return index.getPaths(path);
+    }
+
+    /**
+     * Closes the archive.
+     *
+     * @throws IOException if the archive could not be closed.
+     */
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * Reads the content of an entry with positional reads, so that it does not contend with other readers.
+     */
+    private final class EntryInputStream extends InputStream {
+        /**
+         * The position of the next byte in the archive.
+         */
+        private long position;
+        /**
+         * The end of the entry in the archive.
+         */
+        private final long end;
+
+        /**
+         * Constructor.
+         *
+         * @param entry the entry.
+         */
+        private EntryInputStream(@NonNull Entry entry) {
+            this.position = entry.offset;
+            this.end = entry.offset + entry.size;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            return read(b, 0, 1) == -1 ? -1 : b[0] & 0xff;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            if (position >= end) {
+                return -1;
+            }
+            int count = channel.read(ByteBuffer.wrap(b, off, (int) Math.min(len, end - position)), position);
+            if (count < 0) {
+                throw new EOFException("Truncated tar archive");
+            }
+            position += count;
+            return count;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public long skip(long n) {
+            long skipped = Math.max(0, Math.min(n, end - position));
+            position += skipped;
+            return skipped;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public int available() {
+            return (int) Math.min(end - position, Integer.MAX_VALUE);
+        }
+    }
+
+    /**
+     * The location of the content of a file in the archive.
+     */
+    @Immutable
+    private static final class Entry {
+        /**
+         * The offset of the content.
+         */
+        private final long offset;
+        /**
+         * The size of the content.
+         */
+        private final long size;
+
+        /**
+         * Constructor.
+         *
+         * @param offset the offset of the content.
+         * @param size   the size of the content.
+         */
+        private Entry(long offset, long size) {
+            this.offset = offset;
+            this.size = size;
+        }
+    }
+}
@@ -0,0 +1,158 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2013, CloudBees, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.cloudbees.literate.api.v1.vfs;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import net.jcip.annotations.ThreadSafe;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Enumeration;
+import java.util.Set;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * A {@link ProjectRepository} backed by a zip archive. The central directory is read once on construction and the
+ * metadata questions are answered from it, only the entries that are actually requested are inflated.
+ * <p/>
+ * The repository keeps the archive open until it is {@link #close()}d.
+ *
+ * @since 0.7
+ */
+@ThreadSafe
+public class ZipRepository implements BufferedProjectRepository, Closeable {
+
+    /**
+     * The archive.
+     */
+    @NonNull
+    private final ZipFile zip;
+
+    /**
+     * The index of the archive.
+     */
+    @NonNull
+    private final PathIndex<ZipEntry> index;
+
+    /**
+     * Constructor.
+     *
+     * @param archive the zip archive.
+     * @throws IOException if the archive could not be read.
+     */
+    public ZipRepository(@NonNull File archive) throws IOException {
+        this(archive, 0);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param archive         the zip archive.
+     * @param stripComponents the number of leading path components to strip from each entry name, e.g. {@code 1}
+     *                        for a snapshot where everything is below a single top level directory.
+     * @throws IOException if the archive could not be read.
+     */
+    public ZipRepository(@NonNull File archive, int stripComponents) throws IOException {
+        this.zip = new ZipFile(archive);
+        try {
+            PathIndex.Builder<ZipEntry> builder = PathIndex.builder(stripComponents);
+            Enumeration<? extends ZipEntry> entries = zip.entries();
+            while (entries.hasMoreElements()) {
+                ZipEntry entry = entries.nextElement();
+                builder.add(entry.getName(), entry.isDirectory() ? null : entry);
+            }
+            this.index = builder.build();
+        } catch (RuntimeException e) {
+            try {
+                // ZipFile is only Closeable from Java 7
+                zip.close();
+            } catch (IOException ignored) {
+                // ignore
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    //@Override
+    public InputStream get(String filePath) throws PathNotFoundException, IOException {
+        return zip.getInputStream(index.file(filePath));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    //@Override
+    public ByteBuffer getBuffer(String filePath) throws PathNotFoundException, IOException {
+        return getBuffer(filePath, ProjectRepositories.MAX_ARRAY_SIZE);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    //@Override
+    public ByteBuffer getBuffer(String filePath, long maxBytes) throws PathNotFoundException, IOException {
+        // the sizes in the central directory are not trusted
+        return ProjectRepositories.read(get(filePath), filePath, maxBytes);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    //@Override
+    public boolean isFile(String path) throws IOException {
+        return index.isFile(path);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    //@Override
+    public boolean isDirectory(String path) throws IOException {
+        return index.isDirectory(path);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    //@Override
+    public Set<String> getPaths(String path) throws PathNotFoundException, IOException {
+        return index.getPaths(path);
+    }
+
+    /**
+     * Closes the archive.
+     *
+     * @throws IOException if the archive could not be closed.
+     */
+    public void close() throws IOException {
+        zip.close();
+    }
+}
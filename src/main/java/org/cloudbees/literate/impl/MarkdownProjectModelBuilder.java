@@ -24,22 +24,23 @@
 package org.cloudbees.literate.impl;
 
 import edu.umd.cs.findbugs.annotations.NonNull;
-import org.apache.commons.io.IOUtils;
 import org.cloudbees.literate.api.v1.ExecutionEnvironment;
 import org.cloudbees.literate.api.v1.Parameter;
 import org.cloudbees.literate.api.v1.ProjectModel;
 import org.cloudbees.literate.api.v1.ProjectModelBuildingException;
+import org.cloudbees.literate.api.v1.ProjectModelLimitExceededException;
+import org.cloudbees.literate.api.v1.ProjectModelMetrics;
 import org.cloudbees.literate.api.v1.ProjectModelRequest;
 import org.cloudbees.literate.api.v1.ProjectModelValidationException;
+import org.cloudbees.literate.api.v1.vfs.FileTooLargeException;
+import org.cloudbees.literate.api.v1.vfs.ProjectRepositories;
 import org.cloudbees.literate.api.v1.vfs.ProjectRepository;
+import org.cloudbees.literate.spi.v1.DetectingProjectModelBuilder;
 import org.cloudbees.literate.spi.v1.ProjectModelBuilder;
-import org.hamcrest.BaseMatcher;
-import org.hamcrest.CoreMatchers;
-import org.hamcrest.Description;
-import org.hamcrest.Factory;
-import org.hamcrest.Matcher;
-import org.hamcrest.core.SubstringMatcher;
+import org.cloudbees.literate.spi.v1.SectionClassifier;
+import org.parboiled.errors.ParserRuntimeException;
 import org.pegdown.Extensions;
+import org.pegdown.ParsingTimeoutException;
 import org.pegdown.PegDownProcessor;
 import org.pegdown.ast.BulletListNode;
 import org.pegdown.ast.CodeNode;
@@ -56,10 +57,13 @@ import org.pegdown.ast.TextNode;
 import org.pegdown.ast.VerbatimNode;
 
 import java.io.IOException;
-import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
@@ -68,10 +72,7 @@ import java.util.Map;
 import java.util.Set;
 import java.util.Stack;
 import java.util.TreeSet;
-
-import static org.cloudbees.literate.impl.MarkdownProjectModelBuilder.StringContainsIgnoreCase.containsStringIgnoreCase;
-import static org.hamcrest.CoreMatchers.allOf;
-import static org.hamcrest.CoreMatchers.instanceOf;
+import java.util.concurrent.TimeUnit;
 
 /**
  * A {@link ProjectModelBuilder} that uses a Markdown file as the source of its {@link ProjectModel}
@@ -79,13 +80,72 @@ import static org.hamcrest.CoreMatchers.instanceOf;
  * @todo finish documenting this hairy code.
  */
 @ProjectModelBuilder.Priority(Integer.MAX_VALUE)
-public class MarkdownProjectModelBuilder implements ProjectModelBuilder {
+public class MarkdownProjectModelBuilder implements DetectingProjectModelBuilder {
     /**
      * The {@link PegDownProcessor} extension flags to match GitHub's Markdown rules.
      */
     private static final int GITHUB = Extensions.AUTOLINKS + Extensions.FENCED_CODE_BLOCKS + Extensions.HARDWRAPS
             + Extensions.DEFINITIONS;
 
+    /**
+     * The file that the model is read from when the marker file does not describe a build.
+     *
+     * @since 0.7
+     */
+    public static final String FALLBACK_FILE = "README.md";
+
+    /**
+     * The system property that overrides the default {@link #getMaxParsingTimeMillis()}.
+     *
+     * @since 0.7
+     */
+    public static final String MAX_PARSING_TIME_PROPERTY =
+            MarkdownProjectModelBuilder.class.getName() + ".maxParsingTimeMillis";
+
+    /**
+     * The processors, reused across requests as they are expensive to create.
+     */
+    private final PegDownProcessorPool processors =
+            new PegDownProcessorPool(GITHUB, Runtime.getRuntime().availableProcessors());
+
+    /**
+     * The maximum time to spend parsing a document before falling back to line by line extraction.
+     */
+    private final long maxParsingTimeMillis;
+
+    /**
+     * Constructs an instance with the maximum parsing time from the {@link #MAX_PARSING_TIME_PROPERTY} system property,
+     * or Pegdown's default if the property is not set.
+     */
+    public MarkdownProjectModelBuilder() {
+        this(Long.getLong(MAX_PARSING_TIME_PROPERTY, PegDownProcessor.DEFAULT_MAX_PARSING_TIME));
+    }
+
+    /**
+     * Constructs an instance with a specific maximum parsing time.
+     *
+     * @param maxParsingTimeMillis the maximum time to spend parsing a document, in milliseconds, before falling back to
+     *                             line by line extraction.
+     * @since 0.7
+     */
+    public MarkdownProjectModelBuilder(long maxParsingTimeMillis) {
+        if (maxParsingTimeMillis <= 0) {
+            throw new IllegalArgumentException("Maximum parsing time must be positive");
+        }
+        this.maxParsingTimeMillis = maxParsingTimeMillis;
+    }
+
+    /**
+     * Returns the maximum time to spend parsing a document before falling back to line by line extraction. A request
+     * with a lower {@link ProjectModelRequest#getMaxParseTimeMillis()} uses its own limit instead.
+     *
+     * @return the maximum parsing time in milliseconds.
+     * @since 0.7
+     */
+    public long getMaxParsingTimeMillis() {
+        return maxParsingTimeMillis;
+    }
+
     public static String getText(Node node) {
         return getTextUntil(node, null);
     }
@@ -120,12 +180,32 @@ public class MarkdownProjectModelBuilder implements ProjectModelBuilder {
      */
     //@Override
     public ProjectModel build(ProjectModelRequest request) throws IOException, ProjectModelBuildingException {
-        for (String name : markerFiles(request.getBaseName())) {
-            if (request.getRepository().isFile(name)) {
-                return new Parser(request).parseProjectModel(request.getRepository(), name);
-            }
+        String markerFile = detect(request);
+        if (markerFile == null) {
+            throw ProjectModelBuildingException.stackless("Not a Markdown based literate project");
         }
-        throw new ProjectModelBuildingException("Not a Markdown based literate project");
+        return build(request, markerFile);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    //@Override
+    public String detect(@NonNull ProjectModelRequest request) throws IOException {
+        Set<String> present = ProjectRepositories.filterFiles(request.getRepository(),
+                markerFiles(request.getBaseName()));
+        return present.isEmpty() ? null : present.iterator().next();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    //@Override
+    @NonNull
+    public ProjectModel build(@NonNull ProjectModelRequest request, @NonNull String markerFile)
+            throws IOException, ProjectModelBuildingException {
+        return new Parser(request, processors, maxParsingTimeMillis)
+                .parseProjectModel(request.getRepository(), markerFile);
     }
 
     /**
@@ -141,94 +221,50 @@ public class MarkdownProjectModelBuilder implements ProjectModelBuilder {
      */
     private static class Parser {
 
-        private static final String FALLBACK_FILE = "README.md";
-        /**
-         * Matches header nodes.
-         */
-        private static final Matcher<Node> isHeader = instanceOf(HeaderNode.class);
-        /**
-         * Matches the root node.
-         */
-        private static final Matcher<Node> isRoot = instanceOf(RootNode.class);
-        /**
-         * Matches paragraphs of text.
-         */
-        private static final Matcher<Node> isPara = instanceOf(ParaNode.class);
         /**
-         * Matches super nodes.
+         * The facts about the nodes of the document being parsed.
          */
-        private static final Matcher<Node> isSuper = instanceOf(SuperNode.class);
+        private Facts facts;
         /**
-         * Matches code blocks.
+         * Recognizes the section headers of the request.
          */
-        private static final Matcher<Node> isCode = instanceOf(CodeNode.class);
+        private final SectionClassifier sections;
         /**
-         * Matches a node that has code blocks.
+         * Holds the text of the header being classified.
          */
-        private static final Matcher<Node> hasCode = new WithDescendant(isCode);
-        /**
-         * Matches list items.
-         */
-        private static final Matcher<Node> isItem = allOf(instanceOf(ListItemNode.class), new WithChild(isRoot));
-        /**
-         * Matches bullet points.
-         */
-        private static final Matcher<Node> isBullet = allOf(instanceOf(BulletListNode.class), new WithChild(isItem));
-        /**
-         * Matches a node that has a bullet point descendant.
-         */
-        private static final Matcher<Node> hasBullet = new WithDescendant(isBullet);
-        /**
-         * Matches a verbatim block.
-         */
-        private static final Matcher<Node> isVerbatim = instanceOf(VerbatimNode.class);
-        /**
-         * Matches a node that has a verbatim descendant.
-         */
-        private static final Matcher<Node> hasVerbatim = new WithDescendant(isVerbatim);
-        /**
-         * Matches a node that is the term in a definition list.
-         */
-        private static final Matcher<Node> isDefinitionTerm = instanceOf(DefinitionTermNode.class);
-        /**
-         * Matches a node that is the definition in a definition list.
-         */
-        private static final Matcher<Node> isDefinition = instanceOf(DefinitionNode.class);
+        private final StringBuilder headerText = new StringBuilder();
+        private final int minLength;
         /**
-         * Matches a node that is a definition list.
+         * The metrics to report to.
          */
-        private static final Matcher<Node> isDefinitionList = allOf(instanceOf(DefinitionListNode.class),
-                new WithChild(isDefinitionTerm), new WithChild(isDefinition));
+        private final ProjectModelMetrics metrics;
         /**
-         * Matches the environments section header.
+         * The request being parsed, for its limits.
          */
-        private final Matcher<Node> isEnvHeader;
+        private final ProjectModelRequest request;
         /**
-         * Matches the build section header.
+         * The processors to parse with.
          */
-        private final Matcher<Node> isBuildHeader;
+        private final PegDownProcessorPool processors;
         /**
-         * Matchers for the task section headers.
+         * The maximum time to spend parsing a document before falling back to line by line extraction.
          */
-        private final Map<String, Matcher<Node>> isTaskHeader;
-        private final int minLength;
+        private final long maxParsingTimeMillis;
 
         /**
          * Makes the parser.
          *
-         * @param request the request to parse.
+         * @param request              the request to parse.
+         * @param processors           the processors to parse with.
+         * @param maxParsingTimeMillis the maximum parsing time of the builder.
          */
-        private Parser(ProjectModelRequest request) {
+        private Parser(ProjectModelRequest request, PegDownProcessorPool processors, long maxParsingTimeMillis) {
+            this.request = request;
+            this.processors = processors;
+            this.maxParsingTimeMillis = Math.min(maxParsingTimeMillis, request.getMaxParseTimeMillis());
+            metrics = request.getMetrics();
             minLength = "#".length() + request.getBuildId().length() + "\n    a".length();
-            isEnvHeader = allOf(isHeader, new WithText(containsStringIgnoreCase(request.getEnvironmentsId())));
-            isBuildHeader = allOf(isHeader, new WithText(containsStringIgnoreCase(request.getBuildId())));
-            Map<String, Matcher<Node>> isTaskHeader = new LinkedHashMap<String, Matcher<Node>>();
-            for (String taskId : request.getTaskIds()) {
-                isTaskHeader.put(taskId, CoreMatchers.<Node>allOf(
-                        isHeader, new WithText(containsStringIgnoreCase(taskId)))
-                );
-            }
-            this.isTaskHeader = isTaskHeader;
+            sections = SectionClassifier.forRequest(request);
         }
 
         /**
@@ -237,75 +273,316 @@ public class MarkdownProjectModelBuilder implements ProjectModelBuilder {
          * @param repository the repository.
          * @param filePath   the file to parse.
          * @return the model.
-         * @throws IOException when things go wrong.
+         * @throws IOException                        when things go wrong.
+         * @throws ProjectModelValidationException    if the file does not contain a valid model.
+         * @throws ProjectModelLimitExceededException if the file or the model is too large or takes too long to
+         *                                            parse.
          */
         private ProjectModel parseProjectModel(ProjectRepository repository, String filePath)
-                throws IOException, ProjectModelValidationException {
-            InputStream stream = repository.get(filePath);
+                throws IOException, ProjectModelBuildingException {
+            long start = System.nanoTime();
+            ByteBuffer content;
             try {
-                char[] chars = IOUtils.toCharArray(stream);
-                RootNode document = chars.length < minLength ? null : new PegDownProcessor(GITHUB).parseMarkdown(chars);
-                ProjectModel.Builder builder = ProjectModel.builder();
-                if (document != null && !document.getChildren().isEmpty()) {
-                    Iterator<Node> iterator = document.getChildren().iterator();
-
-                    consumeEnvironmentSection(iterator, builder);
-
-                    iterator = document.getChildren().iterator();
-                    if (discardTo(iterator, isBuildHeader)) {
-                        consumeBuild(iterator, builder);
+                content = ProjectRepositories.getBuffer(repository, filePath, request.getMaxFileBytes());
+            } catch (FileTooLargeException e) {
+                throw new ProjectModelLimitExceededException(ProjectModelLimitExceededException.Limit.FILE_BYTES,
+                        e.getMaxBytes(), e.getMessage(), e);
+            }
+            int byteCount = content.remaining();
+            char[] chars = toCharArray(ProjectRepositories.decode(content));
+            metrics.time(MarkdownProjectModelBuilder.class, ProjectModelMetrics.Phase.READ, System.nanoTime() - start);
+            metrics.bytesRead(MarkdownProjectModelBuilder.class, byteCount);
+            start = System.nanoTime();
+            RootNode document = chars.length < minLength ? null : parseMarkdown(chars);
+            boolean extracted = document == null && chars.length >= minLength;
+            ProjectModel.Builder builder = ProjectModel.builder();
+            if (extracted) {
+                // too expensive to parse, settle for the code blocks under the section headers
+                if (!extractLines(chars, builder)) {
+                    // the environments cannot be extracted and a model without them would run the wrong builds
+                    throw parseTimeExceeded(filePath, maxParsingTimeMillis);
+                }
+            } else if (document != null && !document.getChildren().isEmpty()) {
+                facts = new Facts();
+                List<Node> nodes = document.getChildren();
+                int[] starts = findSections(nodes);
+                if (starts[SectionClassifier.ENVIRONMENTS] != -1) {
+                    consumeEnvironmentSection(nodes.listIterator(starts[SectionClassifier.ENVIRONMENTS]), builder);
+                }
+                if (starts[SectionClassifier.BUILD] != -1) {
+                    consumeBuild(nodes.listIterator(starts[SectionClassifier.BUILD]), builder);
+                }
+                for (int i = SectionClassifier.FIRST_TASK; i < starts.length; i++) {
+                    if (starts[i] != -1) {
+                        consumeTask(nodes.listIterator(starts[i]), builder, sections.getId(i));
                     }
+                }
+            }
+            long parseNanos = System.nanoTime() - start;
+            metrics.time(MarkdownProjectModelBuilder.class, ProjectModelMetrics.Phase.PARSE, parseNanos);
+            if (!extracted && TimeUnit.NANOSECONDS.toMillis(parseNanos) > request.getMaxParseTimeMillis()) {
+                throw parseTimeExceeded(filePath, request.getMaxParseTimeMillis());
+            }
+            ProjectModel model;
+            boolean isFallbackFile = FALLBACK_FILE.equals(filePath);
+            start = System.nanoTime();
+            try {
+                model = builder.withDegraded(extracted).build();
+            } catch (ProjectModelBuildingException e) {
+                if (!isFallbackFile) {
+                    model = null;
+                } else {
+                    throw new ProjectModelValidationException("Unable to turn " + filePath + " into a valid model", e);
+                }
+            } finally {
+                metrics.time(MarkdownProjectModelBuilder.class, ProjectModelMetrics.Phase.VALIDATE,
+                        System.nanoTime() - start);
+            }
+            if (model == null || model.getBuild().getCommands().isEmpty() && model.getTaskIds().isEmpty()) {
+                if (!isFallbackFile && repository.isFile(FALLBACK_FILE)) {
+                    // try the fall-back
+                    return parseProjectModel(repository, FALLBACK_FILE);
+                }
+                if (extracted) {
+                    throw parseTimeExceeded(filePath, maxParsingTimeMillis);
+                }
+                StringBuilder sb = new StringBuilder();
+                sb.append("Unable to turn " + filePath + " into a valid model. Please check that it contains a valid build section.\n");
+                sb.append("Valid build sections include :\n");
+                sb.append("- verbatim (starts by 4 spaces or tab)\n");
+                sb.append("- bullet list (starts by *, +, -, or a number)\n");
+                sb.append("- definition list");
+                throw new ProjectModelValidationException(sb.toString());
+            }
+            if (model.getCommandCount() > request.getMaxModelSize()) {
+                throw new ProjectModelLimitExceededException(ProjectModelLimitExceededException.Limit.MODEL_SIZE,
+                        request.getMaxModelSize(), "The model built from " + filePath + " has more than "
+                        + request.getMaxModelSize() + " commands");
+            }
+            if (extracted) {
+                metrics.outcome(MarkdownProjectModelBuilder.class, ProjectModelMetrics.Outcome.DEGRADED);
+            }
+            return model;
+        }
 
-                    for (Map.Entry<String, Matcher<Node>> entry : isTaskHeader.entrySet()) {
-                        iterator = document.getChildren().iterator();
-                        if (discardTo(iterator, entry.getValue())) {
-                            consumeTask(iterator, builder, entry.getKey());
-                        }
+        /**
+         * Parses Markdown within {@link #maxParsingTimeMillis}.
+         *
+         * @param chars the Markdown.
+         * @return the document or {@code null} if parsing took too long.
+         */
+        private RootNode parseMarkdown(char[] chars) {
+            PegDownProcessor processor = processors.borrow(maxParsingTimeMillis);
+            try {
+                return processor.parseMarkdown(chars);
+            } catch (ParsingTimeoutException e) {
+                return null;
+            } catch (ParserRuntimeException e) {
+                // a timeout within a parser action is wrapped
+                for (Throwable cause = e.getCause(); cause != null; cause = cause.getCause()) {
+                    if (cause instanceof ParsingTimeoutException) {
+                        return null;
                     }
                 }
-                ProjectModel model;
-                boolean isFallbackFile = FALLBACK_FILE.equals(filePath);
-                try {
-                    model = builder.build();
-                } catch (ProjectModelBuildingException e) {
-                    if (!isFallbackFile) {
-                        model = null;
+                throw e;
+            } finally {
+                processors.release(processor, maxParsingTimeMillis);
+            }
+        }
+
+        /**
+         * Creates the exception for exceeding the parse time limit.
+         *
+         * @param filePath           the file being parsed.
+         * @param maxParseTimeMillis the limit.
+         * @return the exception.
+         */
+        private ProjectModelLimitExceededException parseTimeExceeded(String filePath, long maxParseTimeMillis) {
+            return new ProjectModelLimitExceededException(ProjectModelLimitExceededException.Limit.PARSE_TIME_MILLIS,
+                    maxParseTimeMillis, "Parsing " + filePath + " took longer than " + maxParseTimeMillis + "ms");
+        }
+
+        /**
+         * Extracts the build and task commands with a line by line scan, for documents that are too expensive to
+         * parse. Only headers, indented code blocks and fenced code blocks are recognized, so the labels and
+         * parameters of the commands are lost and an environments section cannot be extracted at all.
+         *
+         * @param chars   the Markdown.
+         * @param builder the builder to add the commands to.
+         * @return {@code false} if the document has an environments section, which was not extracted.
+         */
+        private boolean extractLines(char[] chars, ProjectModel.Builder builder) {
+            List<String> lines = new ArrayList<String>();
+            int start = 0;
+            for (int i = 0; i <= chars.length; i++) {
+                if (i == chars.length || chars[i] == '\n') {
+                    int end = i > start && chars[i - 1] == '\r' ? i - 1 : i;
+                    lines.add(new String(chars, start, end - start));
+                    start = i + 1;
+                }
+            }
+            int[] starts = new int[sections.size()];
+            Arrays.fill(starts, -1);
+            int header = -1;
+            List<String> block = new ArrayList<String>();
+            String fence = null;
+            boolean blank = true;
+            for (int i = 0; i < lines.size(); i++) {
+                String line = lines.get(i);
+                String trimmed = line.trim();
+                if (fence != null) {
+                    if (trimmed.startsWith(fence)) {
+                        addBlock(block, starts, header, builder);
+                        fence = null;
                     } else {
-                        throw new ProjectModelValidationException("Unable to turn " + filePath + " into a valid model", e);
+                        block.add(line);
                     }
+                    continue;
+                }
+                if (indentOf(line) >= 4 && trimmed.length() > 0 && (blank || !block.isEmpty())) {
+                    block.add(line);
+                    continue;
                 }
-                if (model == null || model.getBuild().getCommands().isEmpty() && model.getTaskIds().isEmpty()) {
-                    if (!isFallbackFile && repository.isFile(FALLBACK_FILE)) {
-                        // try the fall-back
-                        return parseProjectModel(repository, FALLBACK_FILE);
+                if (trimmed.length() == 0) {
+                    if (!block.isEmpty()) {
+                        block.add(line);
                     }
-                    StringBuilder sb = new StringBuilder();
-                    sb.append("Unable to turn " + filePath + " into a valid model. Please check that it contains a valid build section.\n");
-                    sb.append("Valid build sections include :\n");
-                    sb.append("- verbatim (starts by 4 spaces or tab)\n");
-                    sb.append("- bullet list (starts by *, +, -, or a number)\n");
-                    sb.append("- definition list");
-                    throw new ProjectModelValidationException(sb.toString());
-                }
-                return model;
-            } finally {
-                IOUtils.closeQuietly(stream);
+                    blank = true;
+                    continue;
+                }
+                addBlock(block, starts, header, builder);
+                blank = false;
+                if (trimmed.startsWith("```") || trimmed.startsWith("~~~")) {
+                    fence = trimmed.substring(0, 3);
+                } else if (line.startsWith("#")) {
+                    header++;
+                    sections.assign(trimmed.replaceAll("^#+|#+$", ""), starts, header);
+                    blank = true;
+                } else if (i + 1 < lines.size() && isUnderline(lines.get(i + 1).trim())) {
+                    header++;
+                    sections.assign(trimmed, starts, header);
+                    blank = true;
+                    i++;
+                }
+            }
+            addBlock(block, starts, header, builder);
+            return starts[SectionClassifier.ENVIRONMENTS] == -1;
+        }
+
+        /**
+         * Adds a code block found by {@link #extractLines(char[], ProjectModel.Builder)} to the sections started by
+         * the header that it follows, and clears it.
+         *
+         * @param block   the lines of the block.
+         * @param starts  the header that started each section, as assigned by {@link SectionClassifier}.
+         * @param header  the header that the block follows.
+         * @param builder the builder to add the commands to.
+         */
+        private void addBlock(List<String> block, int[] starts, int header, ProjectModel.Builder builder) {
+            while (!block.isEmpty() && block.get(block.size() - 1).trim().length() == 0) {
+                block.remove(block.size() - 1);
+            }
+            if (block.isEmpty()) {
+                return;
+            }
+            int indent = Integer.MAX_VALUE;
+            for (String line : block) {
+                if (line.trim().length() > 0) {
+                    indent = Math.min(indent, indentOf(line));
+                }
+            }
+            StringBuilder text = new StringBuilder();
+            for (String line : block) {
+                int column = 0;
+                int index = 0;
+                while (index < line.length() && column < indent && Character.isWhitespace(line.charAt(index))) {
+                    column = line.charAt(index) == '\t' ? column + 4 - column % 4 : column + 1;
+                    index++;
+                }
+                text.append(line, index, line.length()).append('\n');
+            }
+            block.clear();
+            if (header == -1) {
+                return;
+            }
+            if (starts[SectionClassifier.BUILD] == header) {
+                builder.addBuild(text.toString());
+            }
+            for (int i = SectionClassifier.FIRST_TASK; i < starts.length; i++) {
+                if (starts[i] == header) {
+                    builder.addTask(sections.getId(i).toLowerCase(), text.toString());
+                }
+            }
+        }
+
+        /**
+         * Returns {@code true} if a trimmed line underlines the previous line as a header.
+         *
+         * @param trimmed the trimmed line.
+         * @return {@code true} if the line consists only of {@code =} or only of {@code -} characters.
+         */
+        private static boolean isUnderline(String trimmed) {
+            if (trimmed.length() == 0 || trimmed.charAt(0) != '=' && trimmed.charAt(0) != '-') {
+                return false;
+            }
+            for (int i = 1; i < trimmed.length(); i++) {
+                if (trimmed.charAt(i) != trimmed.charAt(0)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Returns the indentation of a line, counting tabs to the next multiple of four columns.
+         *
+         * @param line the line.
+         * @return the number of columns of leading whitespace.
+         */
+        private static int indentOf(String line) {
+            int column = 0;
+            for (int i = 0; i < line.length(); i++) {
+                char c = line.charAt(i);
+                if (c == '\t') {
+                    column += 4 - column % 4;
+                } else if (c == ' ') {
+                    column++;
+                } else {
+                    break;
+                }
             }
+            return column;
+        }
+
+        /**
+         * Returns the characters of a buffer, avoiding a copy when the buffer wraps exactly its backing array.
+         *
+         * @param chars the buffer.
+         * @return the characters.
+         */
+        private static char[] toCharArray(CharBuffer chars) {
+            if (chars.hasArray() && chars.arrayOffset() == 0 && chars.position() == 0
+                    && chars.remaining() == chars.array().length) {
+                return chars.array();
+            }
+            char[] result = new char[chars.remaining()];
+            chars.get(result);
+            return result;
         }
 
         private void consumeBuild(Iterator<Node> iterator, ProjectModel.Builder builder) {
             while (iterator.hasNext()) {
                 Node node = iterator.next();
-                if (isHeader.matches(node)) {
+                if (facts.is(node, Facts.HEADER)) {
                     break;
                 }
-                if (isVerbatim.matches(node)) {
+                if (facts.is(node, Facts.VERBATIM)) {
                     builder.addBuild(getText(node));
                 }
-                if (isBullet.matches(node)) {
+                if (facts.is(node, Facts.BULLET)) {
                     builder.addBuild(parseBuild(node.getChildren()));
                 }
-                if (isDefinitionList.matches(node)) {
+                if (facts.is(node, Facts.DEFINITION_LIST)) {
                     builder.addBuildParameters(parseDefinitions(node.getChildren()));
                 }
             }
@@ -315,21 +592,21 @@ public class MarkdownProjectModelBuilder implements ProjectModelBuilder {
             ArrayList<Parameter> result = new ArrayList<Parameter>();
             DefinitionTermNode term = null;
             for (Node node : children) {
-                if (isDefinitionTerm.matches(node)) {
+                if (facts.is(node, Facts.DEFINITION_TERM)) {
                     term = (DefinitionTermNode) node;
                 }
-                if (isDefinition.matches(node) && term != null) {
+                if (facts.is(node, Facts.DEFINITION) && term != null) {
                     String name = getText(term);
                     String defaultValue = null;
                     Set<String> validValues = null;
-                    if (hasCode.matches(node)) {
+                    if (facts.is(node, Facts.HAS_CODE)) {
                         Stack<Iterator<Node>> stack = new Stack<Iterator<Node>>();
                         stack.push(node.getChildren().iterator());
                         while (!stack.isEmpty()) {
                             Iterator<Node> i = stack.pop();
                             while (i.hasNext()) {
                                 Node c = i.next();
-                                if (isCode.matches(c)) {
+                                if (facts.is(c, Facts.CODE)) {
                                     String text = getText(c);
                                     if (defaultValue == null) {
                                         defaultValue = text;
@@ -359,16 +636,16 @@ public class MarkdownProjectModelBuilder implements ProjectModelBuilder {
         private void consumeTask(Iterator<Node> iterator, ProjectModel.Builder builder, String taskId) {
             while (iterator.hasNext()) {
                 Node node = iterator.next();
-                if (isHeader.matches(node)) {
+                if (facts.is(node, Facts.HEADER)) {
                     break;
                 }
-                if (isVerbatim.matches(node)) {
+                if (facts.is(node, Facts.VERBATIM)) {
                     builder.addTask(taskId.toLowerCase(), getText(node));
                 }
-                if (isBullet.matches(node)) {
+                if (facts.is(node, Facts.BULLET)) {
                     // discard
                 }
-                if (isDefinitionList.matches(node)) {
+                if (facts.is(node, Facts.DEFINITION_LIST)) {
                     builder.addTaskParameters(taskId.toLowerCase(), parseDefinitions(node.getChildren()));
                 }
 
@@ -376,35 +653,67 @@ public class MarkdownProjectModelBuilder implements ProjectModelBuilder {
         }
 
         /**
-         * eat up all the stuff until we reach the matcher's match
+         * Finds where each section starts in a single walk over the top level nodes, scanning the text of each
+         * header only once. A section starts after the first header containing its id, ignoring case, and the same
+         * header may start several sections.
+         *
+         * @param nodes the top level nodes of the document.
+         * @return the index of the first node of each section of {@link #sections}, or {@code -1} for the sections
+         *         that are absent.
          */
-        private boolean discardTo(Iterator<Node> iterator, Matcher<Node> matcher) {
-            while (iterator.hasNext()) {
-                if (matcher.matches(iterator.next())) {
-                    return true;
+        private int[] findSections(List<Node> nodes) {
+            int[] starts = new int[sections.size()];
+            Arrays.fill(starts, -1);
+            int remaining = starts.length;
+            int index = 0;
+            for (Iterator<Node> iterator = nodes.iterator(); remaining > 0 && iterator.hasNext(); index++) {
+                Node node = iterator.next();
+                if (!(node instanceof HeaderNode)) {
+                    continue;
                 }
+                headerText.setLength(0);
+                appendText(node, headerText);
+                remaining -= sections.assign(headerText, starts, index + 1);
             }
-            return false;
+            return starts;
         }
 
-        private void consumeEnvironmentSection(Iterator<Node> iterator, ProjectModel.Builder builder) {
-            if (discardTo(iterator, isEnvHeader)) {
-                while (iterator.hasNext()) {
-                    Node node = iterator.next();
-                    if (isHeader.matches(node)) {
-                        break;
-                    }
-                    if (isBullet.matches(node)) {
-                        builder.addEnvironments(parseEnvironments(node.getChildren()));
+        /**
+         * Appends the text of a node, as returned by {@link MarkdownProjectModelBuilder#getText(Node)}.
+         *
+         * @param node    the node.
+         * @param builder where to append the text.
+         */
+        private static void appendText(Node node, StringBuilder builder) {
+            if (node instanceof TextNode) {
+                builder.append(((TextNode) node).getText());
+            } else {
+                for (Node child : node.getChildren()) {
+                    if (child instanceof TextNode) {
+                        builder.append(((TextNode) child).getText());
+                    } else if (child instanceof SuperNode) {
+                        appendText(child, builder);
                     }
                 }
             }
         }
 
+        private void consumeEnvironmentSection(Iterator<Node> iterator, ProjectModel.Builder builder) {
+            while (iterator.hasNext()) {
+                Node node = iterator.next();
+                if (facts.is(node, Facts.HEADER)) {
+                    break;
+                }
+                if (facts.is(node, Facts.BULLET)) {
+                    builder.addEnvironments(parseEnvironments(node.getChildren()));
+                }
+            }
+        }
+
         private Map<ExecutionEnvironment, List<String>> parseBuild(List<Node> children) {
             Map<ExecutionEnvironment, List<String>> result = new LinkedHashMap<ExecutionEnvironment, List<String>>();
             for (Node node : children) {
-                if (isItem.matches(node)) {
+                if (facts.is(node, Facts.ITEM)) {
                     result.putAll(parseBuild(node));
                 }
             }
@@ -412,34 +721,34 @@ public class MarkdownProjectModelBuilder implements ProjectModelBuilder {
         }
 
         private Map<ExecutionEnvironment, List<String>> parseBuild(Node listItem) {
-            if (hasVerbatim.matches(listItem)) {
+            if (facts.is(listItem, Facts.HAS_VERBATIM)) {
                 Set<String> labels = new TreeSet<String>();
                 List<String> cmd = new ArrayList<String>();
                 for (Node root : listItem.getChildren()) {
-                    if (isVerbatim.matches(root)) {
+                    if (facts.is(root, Facts.VERBATIM)) {
                         cmd.add(getText(root));
                     }
-                    if (isRoot.matches(root) || isPara.matches(root)) {
+                    if (facts.is(root, Facts.ROOT) || facts.is(root, Facts.PARA)) {
                         for (Node child : root.getChildren()) {
-                            if (isVerbatim.matches(child)) {
+                            if (facts.is(child, Facts.VERBATIM)) {
                                 cmd.add(getText(child));
-                            } else if (isPara.matches(child)) {
+                            } else if (facts.is(child, Facts.PARA)) {
                                 for (Node node : child.getChildren()) {
-                                    if (isSuper.matches(node)) {
+                                    if (facts.is(node, Facts.SUPER)) {
                                         for (Node n : node.getChildren()) {
-                                            if (isVerbatim.matches(n)) {
+                                            if (facts.is(n, Facts.VERBATIM)) {
                                                 cmd.add(getText(child));
-                                            } else if (isCode.matches(n)) {
+                                            } else if (facts.is(n, Facts.CODE)) {
                                                 labels.add(getText(n));
                                             }
                                         }
                                     }
                                 }
-                            } else if (isSuper.matches(child)) {
+                            } else if (facts.is(child, Facts.SUPER)) {
                                 for (Node node : child.getChildren()) {
-                                    if (isVerbatim.matches(child)) {
+                                    if (facts.is(child, Facts.VERBATIM)) {
                                         cmd.add(getText(node));
-                                    } else if (isCode.matches(node)) {
+                                    } else if (facts.is(node, Facts.CODE)) {
                                         labels.add(getText(node));
                                     }
                                 }
@@ -456,23 +765,23 @@ public class MarkdownProjectModelBuilder implements ProjectModelBuilder {
             Set<String> toAll = new TreeSet<String>();
             List<ExecutionEnvironment> environments = new ArrayList<ExecutionEnvironment>();
             for (Node root : listItem.getChildren()) {
-                if (isRoot.matches(root) || isPara.matches(root)) {
+                if (facts.is(root, Facts.ROOT) || facts.is(root, Facts.PARA)) {
                     for (Node child : root.getChildren()) {
-                        if (isBullet.matches(child)) {
+                        if (facts.is(child, Facts.BULLET)) {
                             environments.addAll(parseEnvironments(child.getChildren()));
-                        } else if (isPara.matches(child)) {
+                        } else if (facts.is(child, Facts.PARA)) {
                             for (Node node : child.getChildren()) {
-                                if (isSuper.matches(node)) {
+                                if (facts.is(node, Facts.SUPER)) {
                                     for (Node n : node.getChildren()) {
-                                        if (isCode.matches(n)) {
+                                        if (facts.is(n, Facts.CODE)) {
                                             toAll.add(getText(n));
                                         }
                                     }
                                 }
                             }
-                        } else if (isSuper.matches(child)) {
+                        } else if (facts.is(child, Facts.SUPER)) {
                             for (Node node : child.getChildren()) {
-                                if (isCode.matches(node)) {
+                                if (facts.is(node, Facts.CODE)) {
                                     toAll.add(getText(node));
                                 }
                             }
@@ -494,7 +803,7 @@ public class MarkdownProjectModelBuilder implements ProjectModelBuilder {
         private List<ExecutionEnvironment> parseEnvironments(List<Node> listItems) {
             List<ExecutionEnvironment> result = new ArrayList<ExecutionEnvironment>();
             for (Node node : listItems) {
-                if (isItem.matches(node)) {
+                if (facts.is(node, Facts.ITEM)) {
                     result.addAll(parseEnvironments(node));
                 }
             }
@@ -502,121 +811,135 @@ public class MarkdownProjectModelBuilder implements ProjectModelBuilder {
         }
     }
 
-    private static class WithChild extends BaseMatcher<Node> {
-        private final Matcher<? super Node> childMatcher;
-
-        private WithChild(Matcher<? super Node> childMatcher) {
-            this.childMatcher = childMatcher;
-        }
-
-        //@Override
-        public boolean matches(Object item) {
-            if (!(item instanceof Node)) {
-                return false;
-            }
-            for (Node child : ((Node) item).getChildren()) {
-                if (childMatcher.matches(child)) {
-                    return true;
-                }
-            }
-            return false;
-        }
-
-        //@Override
-        public void describeTo(Description description) {
-            description.appendText("with a child node matching ").appendDescriptionOf(childMatcher);
-        }
-    }
+    /**
+     * The facts about the nodes of a document that the parser needs, worked out bottom-up in a single visit of each
+     * subtree the first time a node of the subtree is asked about, so that no subtree is ever scanned twice.
+     */
+    private static final class Facts {
+        /**
+         * A {@link HeaderNode}.
+         */
+        private static final int HEADER = 1;
+        /**
+         * A {@link RootNode}.
+         */
+        private static final int ROOT = 1 << 1;
+        /**
+         * A {@link ParaNode}.
+         */
+        private static final int PARA = 1 << 2;
+        /**
+         * A {@link SuperNode}.
+         */
+        private static final int SUPER = 1 << 3;
+        /**
+         * A {@link CodeNode}.
+         */
+        private static final int CODE = 1 << 4;
+        /**
+         * A {@link VerbatimNode}.
+         */
+        private static final int VERBATIM = 1 << 5;
+        /**
+         * A {@link DefinitionTermNode}.
+         */
+        private static final int DEFINITION_TERM = 1 << 6;
+        /**
+         * A {@link DefinitionNode}.
+         */
+        private static final int DEFINITION = 1 << 7;
+        /**
+         * A {@link ListItemNode} with a {@link RootNode} child.
+         */
+        private static final int ITEM = 1 << 8;
+        /**
+         * A {@link BulletListNode} with an {@link #ITEM} child.
+         */
+        private static final int BULLET = 1 << 9;
+        /**
+         * A {@link DefinitionListNode} with both a {@link #DEFINITION_TERM} and a {@link #DEFINITION} child.
+         */
+        private static final int DEFINITION_LIST = 1 << 10;
+        /**
+         * A node with a {@link #CODE} descendant.
+         */
+        private static final int HAS_CODE = 1 << 11;
+        /**
+         * A node with a {@link #VERBATIM} descendant.
+         */
+        private static final int HAS_VERBATIM = 1 << 12;
 
-    private static class WithDescendant extends BaseMatcher<Node> {
-        private final Matcher<? super Node> childMatcher;
+        /**
+         * The facts of the nodes visited so far.
+         */
+        private final Map<Node, Integer> facts = new IdentityHashMap<Node, Integer>();
 
-        private WithDescendant(Matcher<? super Node> childMatcher) {
-            this.childMatcher = childMatcher;
+        /**
+         * Checks a fact about a node.
+         *
+         * @param node the node.
+         * @param fact the fact.
+         * @return {@code true} if the fact holds for the node.
+         */
+        private boolean is(Node node, int fact) {
+            Integer known = facts.get(node);
+            return ((known == null ? visit(node) : known) & fact) != 0;
         }
 
-        //@Override
-        public boolean matches(Object item) {
-            if (!(item instanceof Node)) {
-                return false;
+        /**
+         * Works out the facts of a node and of all its descendants.
+         *
+         * @param node the node.
+         * @return the facts of the node.
+         */
+        private int visit(Node node) {
+            int children = 0;
+            int descendants = 0;
+            for (Node child : node.getChildren()) {
+                Integer known = facts.get(child);
+                int childFacts = known == null ? visit(child) : known;
+                children |= childFacts;
+                descendants |= childFacts;
+            }
+            int result = 0;
+            if (node instanceof SuperNode) {
+                result |= SUPER;
             }
-            for (Node child : ((Node) item).getChildren()) {
-                if (childMatcher.matches(child) || this.matches(child)) {
-                    return true;
+            if (node instanceof HeaderNode) {
+                result |= HEADER;
+            } else if (node instanceof RootNode) {
+                result |= ROOT;
+            } else if (node instanceof ParaNode) {
+                result |= PARA;
+            } else if (node instanceof CodeNode) {
+                result |= CODE;
+            } else if (node instanceof VerbatimNode) {
+                result |= VERBATIM;
+            } else if (node instanceof DefinitionTermNode) {
+                result |= DEFINITION_TERM;
+            } else if (node instanceof DefinitionNode) {
+                result |= DEFINITION;
+            } else if (node instanceof ListItemNode) {
+                if ((children & ROOT) != 0) {
+                    result |= ITEM;
+                }
+            } else if (node instanceof BulletListNode) {
+                if ((children & ITEM) != 0) {
+                    result |= BULLET;
+                }
+            } else if (node instanceof DefinitionListNode) {
+                if ((children & DEFINITION_TERM) != 0 && (children & DEFINITION) != 0) {
+                    result |= DEFINITION_LIST;
                 }
             }
-            return false;
-        }
-
-        //@Override
-        public void describeTo(Description description) {
-            description.appendText("with a descendant node matching ").appendDescriptionOf(childMatcher);
-        }
-    }
-
-    private static class WithText extends BaseMatcher<Node> {
-        private final Matcher<? super String> textMatcher;
-
-        private WithText(Matcher<? super String> matcher) {
-            textMatcher = matcher;
-        }
-
-        //@Override
-        public boolean matches(Object item) {
-            if (!(item instanceof Node)) {
-                return false;
+            if ((descendants & (CODE | HAS_CODE)) != 0) {
+                result |= HAS_CODE;
             }
-            StringBuilder builder = new StringBuilder();
-            Node node = (Node) item;
-            if (node instanceof TextNode) {
-                builder.append(TextNode.class.cast(node).getText());
-            } else {
-                for (Node n : node.getChildren()) {
-                    if (n instanceof TextNode) {
-                        builder.append(TextNode.class.cast(n).getText());
-                    } else if (n instanceof SuperNode) {
-                        builder.append(getText(SuperNode.class.cast(n)));
-                    }
-                }
+            if ((descendants & (VERBATIM | HAS_VERBATIM)) != 0) {
+                result |= HAS_VERBATIM;
             }
-            return textMatcher.matches(builder.toString());
-        }
-
-        //@Override
-        public void describeTo(Description description) {
-            description.appendText("with text matching ").appendDescriptionOf(textMatcher);
-        }
-    }
-
-    public static class StringContainsIgnoreCase extends SubstringMatcher {
-        public StringContainsIgnoreCase(String substring) {
-            super(substring.toLowerCase());
-        }
-
-        /**
-         * Creates a matcher that matches if the examined {@link String} contains the specified
-         * {@link String} anywhere.
-         * <p/>
-         * For example:
-         * <pre>assertThat("myStringOfNote", containsString("ring"))</pre>
-         *
-         * @param substring the substring that the returned matcher will expect to find within any examined string
-         */
-        @Factory
-        public static Matcher<String> containsStringIgnoreCase(String substring) {
-            return new StringContainsIgnoreCase(substring);
-        }
-
-        @SuppressWarnings("IndexOfReplaceableByContains")
-        @Override
-        protected boolean evalSubstringOf(String s) {
-            return s.toLowerCase().indexOf(substring) >= 0;
-        }
-
-        @Override
-        protected String relationship() {
-            return "containing (ignore case)";
+            facts.put(node, result);
+            return result;
         }
-
     }
 }
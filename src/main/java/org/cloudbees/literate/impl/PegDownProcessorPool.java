@@ -0,0 +1,155 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2013, CloudBees, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.cloudbees.literate.impl;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import net.jcip.annotations.ThreadSafe;
+import org.pegdown.PegDownProcessor;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded pool of idle {@link PegDownProcessor} instances. Creating a processor generates and instantiates a
+ * parboiled parser, which costs far more than parsing a typical build description, but a processor cannot be used by
+ * two threads at once. Borrowing never blocks: when no idle processor is available a new one is created, and a
+ * processor returned to a full pool is dropped.
+ * <p/>
+ * The maximum parsing time is fixed when a processor is created, so processors are pooled separately for each
+ * maximum parsing time, for at most {@link #MAX_PARSING_TIMES} different times.
+ */
+@ThreadSafe
+final class PegDownProcessorPool {
+
+    /**
+     * The maximum number of different maximum parsing times to pool processors for. Processors for other times are
+     * created for each parse.
+     */
+    static final int MAX_PARSING_TIMES = 8;
+
+    /**
+     * The {@link org.pegdown.Extensions} flags of the processors.
+     */
+    private final int options;
+
+    /**
+     * The maximum number of idle processors to keep for each maximum parsing time.
+     */
+    private final int maxIdle;
+
+    /**
+     * The idle processors keyed by maximum parsing time.
+     */
+    private final ConcurrentMap<Long, Idle> idle = new ConcurrentHashMap<Long, Idle>();
+
+    /**
+     * The number of processors created.
+     */
+    private final AtomicLong createdCount = new AtomicLong();
+
+    /**
+     * Constructor.
+     *
+     * @param options the {@link org.pegdown.Extensions} flags of the processors.
+     * @param maxIdle the maximum number of idle processors to keep for each maximum parsing time.
+     */
+    PegDownProcessorPool(int options, int maxIdle) {
+        if (maxIdle < 0) {
+            throw new IllegalArgumentException("Maximum idle processors cannot be negative");
+        }
+        this.options = options;
+        this.maxIdle = maxIdle;
+    }
+
+    /**
+     * Takes a processor out of the pool, creating one if none is idle. The processor must be given back with
+     * {@link #release(PegDownProcessor, long)} once the caller is done with it, even if parsing failed.
+     *
+     * @param maxParsingTimeMillis the maximum parsing time of the processor.
+     * @return the processor, for the exclusive use of the caller until released.
+     */
+    @NonNull
+    PegDownProcessor borrow(long maxParsingTimeMillis) {
+        Idle processors = idle.get(maxParsingTimeMillis);
+        PegDownProcessor processor = processors == null ? null : processors.queue.poll();
+        if (processor == null) {
+            createdCount.incrementAndGet();
+            return new PegDownProcessor(options, maxParsingTimeMillis);
+        }
+        processors.size.decrementAndGet();
+        return processor;
+    }
+
+    /**
+     * Returns a processor to the pool.
+     *
+     * @param processor            the processor.
+     * @param maxParsingTimeMillis the maximum parsing time that the processor was borrowed with.
+     */
+    void release(@NonNull PegDownProcessor processor, long maxParsingTimeMillis) {
+        Idle processors = idle.get(maxParsingTimeMillis);
+        if (processors == null) {
+            if (idle.size() >= MAX_PARSING_TIMES) {
+                return;
+            }
+            Idle created = new Idle();
+            processors = idle.putIfAbsent(maxParsingTimeMillis, created);
+            if (processors == null) {
+                processors = created;
+            }
+        }
+        if (processors.size.incrementAndGet() > maxIdle) {
+            processors.size.decrementAndGet();
+            return;
+        }
+        processors.queue.offer(processor);
+    }
+
+    /**
+     * Returns the number of processors that have been created.
+     *
+     * @return the number of processors that have been created.
+     */
+    long getCreatedCount() {
+        return createdCount.get();
+    }
+
+    /**
+     * The idle processors for one maximum parsing time.
+     */
+    private static final class Idle {
+        /**
+         * The processors.
+         */
+        private final Queue<PegDownProcessor> queue = new ConcurrentLinkedQueue<PegDownProcessor>();
+        /**
+         * The number of processors in {@link #queue}, which does not have a constant time size.
+         */
+        private final AtomicInteger size = new AtomicInteger();
+    }
+}
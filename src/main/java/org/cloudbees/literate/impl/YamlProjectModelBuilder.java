@@ -24,20 +24,26 @@
 package org.cloudbees.literate.impl;
 
 import edu.umd.cs.findbugs.annotations.NonNull;
-import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.CharSequenceReader;
 import org.cloudbees.literate.api.v1.ExecutionEnvironment;
 import org.cloudbees.literate.api.v1.ProjectModel;
 import org.cloudbees.literate.api.v1.ProjectModel.Builder;
 import org.cloudbees.literate.api.v1.ProjectModelBuildingException;
+import org.cloudbees.literate.api.v1.ProjectModelLimitExceededException;
+import org.cloudbees.literate.api.v1.ProjectModelMetrics;
 import org.cloudbees.literate.api.v1.ProjectModelRequest;
+import org.cloudbees.literate.api.v1.vfs.FileTooLargeException;
+import org.cloudbees.literate.api.v1.vfs.ProjectRepositories;
 import org.cloudbees.literate.api.v1.vfs.ProjectRepository;
 import org.cloudbees.literate.impl.yaml.Language;
 import org.cloudbees.literate.impl.yaml.environment.EnvironmentDecorator;
+import org.cloudbees.literate.spi.v1.DetectingProjectModelBuilder;
 import org.cloudbees.literate.spi.v1.ProjectModelBuilder;
 import org.yaml.snakeyaml.Yaml;
 
 import java.io.IOException;
-import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
@@ -48,26 +54,72 @@ import java.util.Map;
 import java.util.Map.Entry;
 import java.util.ServiceLoader;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
 /**
  * A {@link ProjectModelBuilder} that uses a YAML file as the source of its
  * {@link ProjectModel}
  */
 @ProjectModelBuilder.Priority(-1000)
-public class YamlProjectModelBuilder implements ProjectModelBuilder {
+public class YamlProjectModelBuilder implements DetectingProjectModelBuilder {
+
+    /**
+     * The {@link Language} implementations, looked up once and shared by every request.
+     */
+    private final List<Language> languages;
+
+    /**
+     * The {@link EnvironmentDecorator} implementations, looked up once and shared by every request.
+     */
+    private final List<EnvironmentDecorator> decorators;
+
+    /**
+     * Default constructor.
+     */
+    public YamlProjectModelBuilder() {
+        ClassLoader classLoader = YamlProjectModelBuilder.class.getClassLoader();
+        List<Language> languages = new ArrayList<Language>();
+        for (Language language : ServiceLoader.load(Language.class, classLoader)) {
+            languages.add(language);
+        }
+        this.languages = Collections.unmodifiableList(languages);
+        List<EnvironmentDecorator> decorators = new ArrayList<EnvironmentDecorator>();
+        for (EnvironmentDecorator decorator : ServiceLoader.load(EnvironmentDecorator.class, classLoader)) {
+            decorators.add(decorator);
+        }
+        this.decorators = Collections.unmodifiableList(decorators);
+    }
 
     /**
      * {@inheritDoc}
      */
     //@Override
     public ProjectModel build(ProjectModelRequest request) throws IOException, ProjectModelBuildingException {
-        for (String name : markerFiles(request.getBaseName())) {
-            if (request.getRepository().isFile(name)) {
-                return new Parser(request).parseProjectModel(request.getRepository(), name);
-
-            }
+        String markerFile = detect(request);
+        if (markerFile == null) {
+            throw ProjectModelBuildingException.stackless("Not a YAML based literate project");
         }
-        throw new ProjectModelBuildingException("Not a YAML based literate project");
+        return build(request, markerFile);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    //@Override
+    public String detect(@NonNull ProjectModelRequest request) throws IOException {
+        Set<String> present = ProjectRepositories.filterFiles(request.getRepository(),
+                markerFiles(request.getBaseName()));
+        return present.isEmpty() ? null : present.iterator().next();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    //@Override
+    @NonNull
+    public ProjectModel build(@NonNull ProjectModelRequest request, @NonNull String markerFile)
+            throws IOException, ProjectModelBuildingException {
+        return new Parser(request, languages, decorators).parseProjectModel(request.getRepository(), markerFile);
     }
 
     /**
@@ -84,12 +136,25 @@ public class YamlProjectModelBuilder implements ProjectModelBuilder {
         private final String environmentsId;
         private final String envvarsId;
         private final String languageId;
+        private final List<Language> languages;
+        private final List<EnvironmentDecorator> decorators;
+        private final ProjectModelMetrics metrics;
+        private final long maxFileBytes;
+        private final long maxParseTimeMillis;
+        private final long maxModelSize;
 
-        public Parser(@NonNull ProjectModelRequest request) {
+        public Parser(@NonNull ProjectModelRequest request, @NonNull List<Language> languages,
+                      @NonNull List<EnvironmentDecorator> decorators) {
             this.buildIds = request.getBuildId().split("[, ]");
             this.environmentsId = request.getEnvironmentsId();
             this.envvarsId = request.getEnvvarsId();
             this.languageId = "language";
+            this.languages = languages;
+            this.decorators = decorators;
+            this.metrics = request.getMetrics();
+            this.maxFileBytes = request.getMaxFileBytes();
+            this.maxParseTimeMillis = request.getMaxParseTimeMillis();
+            this.maxModelSize = request.getMaxModelSize();
         }
 
         /**
@@ -136,21 +201,55 @@ public class YamlProjectModelBuilder implements ProjectModelBuilder {
          *             invalid model
          */
         public ProjectModel parseProjectModel(ProjectRepository repository, String name) throws IOException, ProjectModelBuildingException {
-            InputStream stream = repository.get(name);
+            long start = System.nanoTime();
+            ByteBuffer content;
             try {
-                Yaml yaml = new Yaml();
-                @SuppressWarnings("unchecked")
-                Map<String, Object> model = (Map<String, Object>) yaml.load(stream);
-                Map<String, Object> decoratedModel = decorateWithLanguage(model, repository);
-                return internalBuild(decoratedModel);
-            } finally {
-                IOUtils.closeQuietly(stream);
+                content = ProjectRepositories.getBuffer(repository, name, maxFileBytes);
+            } catch (FileTooLargeException e) {
+                throw new ProjectModelLimitExceededException(ProjectModelLimitExceededException.Limit.FILE_BYTES,
+                        e.getMaxBytes(), e.getMessage(), e);
+            }
+            int byteCount = content.remaining();
+            CharBuffer chars = ProjectRepositories.decode(content);
+            metrics.time(YamlProjectModelBuilder.class, ProjectModelMetrics.Phase.READ, System.nanoTime() - start);
+            metrics.bytesRead(YamlProjectModelBuilder.class, byteCount);
+            long parseStart = System.nanoTime();
+            Yaml yaml = new Yaml();
+            @SuppressWarnings("unchecked")
+            Map<String, Object> model = (Map<String, Object>) yaml.load(new CharSequenceReader(chars));
+            metrics.time(YamlProjectModelBuilder.class, ProjectModelMetrics.Phase.PARSE,
+                    System.nanoTime() - parseStart);
+            checkParseTime(name, parseStart);
+            start = System.nanoTime();
+            Map<String, Object> decoratedModel = decorateWithLanguage(model, repository);
+            ProjectModel result = internalBuild(decoratedModel, start);
+            checkParseTime(name, parseStart);
+            if (result.getCommandCount() > maxModelSize) {
+                throw new ProjectModelLimitExceededException(ProjectModelLimitExceededException.Limit.MODEL_SIZE,
+                        maxModelSize, "The model built from " + name + " has more than " + maxModelSize + " commands");
+            }
+            return result;
+        }
+
+        /**
+         * Checks that parsing has not taken longer than the limit of the request. SnakeYAML cannot be interrupted so
+         * this is checked between the steps.
+         *
+         * @param name       the name of the file being parsed.
+         * @param parseStart when parsing started, in {@link System#nanoTime()}.
+         * @throws ProjectModelLimitExceededException if parsing has taken too long.
+         */
+        private void checkParseTime(String name, long parseStart) throws ProjectModelLimitExceededException {
+            if (TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - parseStart) > maxParseTimeMillis) {
+                throw new ProjectModelLimitExceededException(
+                        ProjectModelLimitExceededException.Limit.PARSE_TIME_MILLIS, maxParseTimeMillis,
+                        "Parsing " + name + " took longer than " + maxParseTimeMillis + "ms");
             }
         }
 
         private Map<String, Object> decorateWithLanguage(Map<String, Object> model, ProjectRepository repository) throws IOException {
             String language = (String) model.get(languageId);
-            for (Language l : ServiceLoader.load(Language.class, getClass().getClassLoader())) {
+            for (Language l : languages) {
                 if (l.supported().contains(language)) {
                     return l.decorate(model, repository);
                 }
@@ -158,7 +257,7 @@ public class YamlProjectModelBuilder implements ProjectModelBuilder {
             return model;
         }
 
-        private ProjectModel internalBuild(Map<String, Object> model) throws ProjectModelBuildingException {
+        private ProjectModel internalBuild(Map<String, Object> model, long decorateStart) throws ProjectModelBuildingException {
             Builder builder = ProjectModel.builder();
 
             List<ExecutionEnvironment> environments = consumeEnvironmentSection(model);
@@ -180,7 +279,15 @@ public class YamlProjectModelBuilder implements ProjectModelBuilder {
             }
             builder.addBuild(build);
             addTasks(builder, model);
-            return builder.build();
+            metrics.time(YamlProjectModelBuilder.class, ProjectModelMetrics.Phase.DECORATE,
+                    System.nanoTime() - decorateStart);
+            long start = System.nanoTime();
+            try {
+                return builder.build();
+            } finally {
+                metrics.time(YamlProjectModelBuilder.class, ProjectModelMetrics.Phase.VALIDATE,
+                        System.nanoTime() - start);
+            }
         }
 
         private List<ExecutionEnvironment> decorateWithEnvironmentVariables(List<ExecutionEnvironment> environments, Map<String, Object> model)
@@ -211,7 +318,6 @@ public class YamlProjectModelBuilder implements ProjectModelBuilder {
         private List<ExecutionEnvironment> applyDecorators(List<ExecutionEnvironment> envs, Collection<String> variables, String sectionName) {
             List<ExecutionEnvironment> input = new ArrayList<ExecutionEnvironment>(envs);
             List<ExecutionEnvironment> output = new ArrayList<ExecutionEnvironment>();
-            ServiceLoader<EnvironmentDecorator> decorators = ServiceLoader.load(EnvironmentDecorator.class, getClass().getClassLoader());
             for (EnvironmentDecorator decorator : decorators) {
                 if (decorator.acceptSection(sectionName)) {
                     for (ExecutionEnvironment e : input) {
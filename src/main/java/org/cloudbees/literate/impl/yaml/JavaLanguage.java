@@ -23,6 +23,7 @@
  */
 package org.cloudbees.literate.impl.yaml;
 
+import org.cloudbees.literate.api.v1.vfs.ProjectRepositories;
 import org.cloudbees.literate.api.v1.vfs.ProjectRepository;
 
 import java.io.IOException;
@@ -45,9 +46,10 @@ public class JavaLanguage implements Language {
     // @Override
     public Map<String, Object> decorate(Map<String, Object> model, ProjectRepository repository) throws IOException {
         Map<String, Object> output = new HashMap<String, Object>();
-        if (repository.isFile("build.gradle")) {
+        Set<String> present = ProjectRepositories.filterFiles(repository, Arrays.asList("build.gradle", "pom.xml"));
+        if (present.contains("build.gradle")) {
             output.put("build", Arrays.asList("gradle assemble", "gradle check"));
-        } else if (repository.isFile("pom.xml")) {
+        } else if (present.contains("pom.xml")) {
             output.put("build", Arrays.asList("mvn test"));
         } else {
             output.put("build", Collections.singletonList("ant test"));
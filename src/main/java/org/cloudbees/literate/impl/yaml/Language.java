@@ -30,6 +30,9 @@ import java.util.Set;
 import org.cloudbees.literate.api.v1.vfs.ProjectRepository;
 
 /**
+ * Conventions for a {@code language} of a YAML model. Implementations are shared between concurrent requests, so
+ * they must be thread safe.
+ *
  * @author Stephen Connolly
  */
 public interface Language {
@@ -6,6 +6,9 @@ import java.util.Set;
 import org.cloudbees.literate.api.v1.ExecutionEnvironment;
 
 /**
+ * Decorates the environments of a YAML model from a section of its environment variables. Implementations are shared
+ * between concurrent requests, so they must be thread safe.
+ *
  * @author vlatombe
  * 
  * @since XXX
@@ -0,0 +1,65 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2013, CloudBees, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.cloudbees.literate.spi.v1;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import org.cloudbees.literate.api.v1.ProjectModel;
+import org.cloudbees.literate.api.v1.ProjectModelBuildingException;
+import org.cloudbees.literate.api.v1.ProjectModelRequest;
+
+import java.io.IOException;
+
+/**
+ * A {@link ProjectModelBuilder} that can tell whether a request applies to it without throwing an exception, which
+ * the {@link org.cloudbees.literate.api.v1.ProjectModelSource} prefers over trying
+ * {@link #build(ProjectModelRequest)} and catching the {@link ProjectModelBuildingException}.
+ *
+ * @since 0.7
+ */
+public interface DetectingProjectModelBuilder extends ProjectModelBuilder {
+
+    /**
+     * Detects whether the {@link ProjectModelRequest#getRepository()} contains a model in the format of this builder.
+     *
+     * @param request the request.
+     * @return the marker file to build the model from or {@code null} if the request does not apply to this builder.
+     * @throws IOException if the repository could not be accessed.
+     */
+    @CheckForNull
+    String detect(@NonNull ProjectModelRequest request) throws IOException;
+
+    /**
+     * Builds a {@link ProjectModel} from a marker file previously returned by {@link #detect(ProjectModelRequest)}.
+     *
+     * @param request    the request.
+     * @param markerFile the marker file.
+     * @return the model.
+     * @throws IOException                   if things go wrong.
+     * @throws ProjectModelBuildingException if the marker file does not yield a valid model.
+     */
+    @NonNull
+    ProjectModel build(@NonNull ProjectModelRequest request, @NonNull String markerFile)
+            throws IOException, ProjectModelBuildingException;
+}
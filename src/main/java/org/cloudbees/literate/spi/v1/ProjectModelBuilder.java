@@ -37,6 +37,10 @@ import java.util.Comparator;
 
 /**
  * Service provider interface for {@link org.cloudbees.literate.api.v1.ProjectModelSource}.
+ * <p/>
+ * Implementations are instantiated once per class loader by the
+ * {@link org.cloudbees.literate.api.v1.ProjectModelBuilderRegistry} and shared between concurrent requests, so they
+ * must be thread safe.
  */
 public interface ProjectModelBuilder {
     /**
@@ -0,0 +1,301 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2013, CloudBees, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.cloudbees.literate.spi.v1;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import net.jcip.annotations.Immutable;
+import org.cloudbees.literate.api.v1.ProjectModelRequest;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.TreeMap;
+
+/**
+ * Recognizes which sections a header starts, for {@link ProjectModelBuilder} implementations of formats where the
+ * sections of the build description are introduced by headers that contain the section ids. A header starts a section
+ * if its text contains the id of the section, ignoring case.
+ * <p/>
+ * All the ids are compiled into a single Aho-Corasick automaton, so the text of a header is scanned once whatever the
+ * number of ids, and scanning does not allocate.
+ *
+ * @since 0.7
+ */
+@Immutable
+public final class SectionClassifier {
+
+    /**
+     * The section of {@link ProjectModelRequest#getEnvironmentsId()} in a classifier returned by
+     * {@link #forRequest(ProjectModelRequest)}.
+     */
+    public static final int ENVIRONMENTS = 0;
+
+    /**
+     * The section of {@link ProjectModelRequest#getBuildId()} in a classifier returned by
+     * {@link #forRequest(ProjectModelRequest)}.
+     */
+    public static final int BUILD = 1;
+
+    /**
+     * The section of the first of {@link ProjectModelRequest#getTaskIds()} in a classifier returned by
+     * {@link #forRequest(ProjectModelRequest)}, the other tasks follow in order.
+     */
+    public static final int FIRST_TASK = 2;
+
+    /**
+     * The initial state of the automaton.
+     */
+    private static final int ROOT = 0;
+
+    /**
+     * The section ids.
+     */
+    @NonNull
+    private final String[] ids;
+
+    /**
+     * The sections with an empty id, which every text contains.
+     */
+    @NonNull
+    private final int[] always;
+
+    /**
+     * The characters that have a transition out of each state, sorted.
+     */
+    @NonNull
+    private final char[][] labels;
+
+    /**
+     * The target of each transition in {@link #labels}.
+     */
+    @NonNull
+    private final int[][] targets;
+
+    /**
+     * The state to fall back to from each state when there is no transition for a character.
+     */
+    @NonNull
+    private final int[] fail;
+
+    /**
+     * The sections whose id ends at each state, including those reached through {@link #fail}.
+     */
+    @NonNull
+    private final int[][] outputs;
+
+    /**
+     * Compiles a classifier.
+     *
+     * @param ids the section ids, the section of each id being its index.
+     */
+    public SectionClassifier(@NonNull List<String> ids) {
+        this.ids = ids.toArray(new String[ids.size()]);
+        List<Map<Character, Integer>> trie = new ArrayList<Map<Character, Integer>>();
+        List<List<Integer>> ends = new ArrayList<List<Integer>>();
+        trie.add(new TreeMap<Character, Integer>());
+        ends.add(new ArrayList<Integer>());
+        for (int section = 0; section < this.ids.length; section++) {
+            String id = this.ids[section];
+            id.getClass(); // throw NPE if null
+            int state = ROOT;
+            for (int i = 0; i < id.length(); i++) {
+                Character c = Character.toLowerCase(id.charAt(i));
+                Integer next = trie.get(state).get(c);
+                if (next == null) {
+                    next = trie.size();
+                    trie.add(new TreeMap<Character, Integer>());
+                    ends.add(new ArrayList<Integer>());
+                    trie.get(state).put(c, next);
+                }
+                state = next;
+            }
+            ends.get(state).add(section);
+        }
+        int count = trie.size();
+        labels = new char[count][];
+        targets = new int[count][];
+        fail = new int[count];
+        outputs = new int[count][];
+        for (int state = 0; state < count; state++) {
+            Map<Character, Integer> transitions = trie.get(state);
+            labels[state] = new char[transitions.size()];
+            targets[state] = new int[transitions.size()];
+            int i = 0;
+            for (Map.Entry<Character, Integer> transition : transitions.entrySet()) {
+                labels[state][i] = transition.getKey();
+                targets[state][i] = transition.getValue();
+                i++;
+            }
+        }
+        // breadth first so that the fail state of a state is complete before the state itself
+        always = toArray(ends.get(ROOT));
+        outputs[ROOT] = new int[0];
+        Queue<Integer> queue = new LinkedList<Integer>();
+        for (int target : targets[ROOT]) {
+            fail[target] = ROOT;
+            queue.add(target);
+        }
+        while (!queue.isEmpty()) {
+            int state = queue.remove();
+            List<Integer> output = ends.get(state);
+            for (int section : outputs[fail[state]]) {
+                output.add(section);
+            }
+            outputs[state] = toArray(output);
+            for (int i = 0; i < labels[state].length; i++) {
+                int target = targets[state][i];
+                int fallback = fail[state];
+                int next;
+                while ((next = transition(fallback, labels[state][i])) == -1 && fallback != ROOT) {
+                    fallback = fail[fallback];
+                }
+                fail[target] = next == -1 ? ROOT : next;
+                queue.add(target);
+            }
+        }
+    }
+
+    /**
+     * Compiles a classifier for the sections of a request: {@link #ENVIRONMENTS}, {@link #BUILD} and then each of the
+     * task ids in order from {@link #FIRST_TASK}.
+     *
+     * @param request the request.
+     * @return the classifier.
+     */
+    @NonNull
+    public static SectionClassifier forRequest(@NonNull ProjectModelRequest request) {
+        List<String> ids = new ArrayList<String>(FIRST_TASK + request.getTaskIds().size());
+        ids.add(request.getEnvironmentsId());
+        ids.add(request.getBuildId());
+        ids.addAll(request.getTaskIds());
+        return new SectionClassifier(ids);
+    }
+
+    /**
+     * Returns the number of sections.
+     *
+     * @return the number of sections.
+     */
+    public int size() {
+        return ids.length;
+    }
+
+    /**
+     * Returns the id of a section.
+     *
+     * @param section the section.
+     * @return the id of the section.
+     */
+    @NonNull
+    public String getId(int section) {
+        return ids[section];
+    }
+
+    /**
+     * Returns the sections whose id the text contains.
+     *
+     * @param text the text of a header.
+     * @return the sections.
+     */
+    @NonNull
+    public BitSet classify(@NonNull CharSequence text) {
+        int[] slots = new int[ids.length];
+        Arrays.fill(slots, -1);
+        assign(text, slots, 0);
+        BitSet result = new BitSet(ids.length);
+        for (int section = 0; section < slots.length; section++) {
+            if (slots[section] != -1) {
+                result.set(section);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Scans the text once and assigns a value to the slot of every section whose id the text contains, unless the
+     * slot already has a value. This is how a caller remembers which header first started each section without any
+     * allocation.
+     *
+     * @param text  the text of a header.
+     * @param slots one slot per section, {@code -1} for the slots that do not have a value yet.
+     * @param value the value to assign.
+     * @return the number of slots that were assigned.
+     */
+    public int assign(@NonNull CharSequence text, @NonNull int[] slots, int value) {
+        int assigned = 0;
+        for (int section : always) {
+            if (slots[section] == -1) {
+                slots[section] = value;
+                assigned++;
+            }
+        }
+        int state = ROOT;
+        for (int i = 0, length = text.length(); i < length; i++) {
+            char c = Character.toLowerCase(text.charAt(i));
+            int next;
+            while ((next = transition(state, c)) == -1 && state != ROOT) {
+                state = fail[state];
+            }
+            state = next == -1 ? ROOT : next;
+            for (int section : outputs[state]) {
+                if (slots[section] == -1) {
+                    slots[section] = value;
+                    assigned++;
+                }
+            }
+        }
+        return assigned;
+    }
+
+    /**
+     * Returns the target of the transition out of a state for a character.
+     *
+     * @param state the state.
+     * @param c     the lower case character.
+     * @return the target or {@code -1} if there is no such transition.
+     */
+    private int transition(int state, char c) {
+        int index = Arrays.binarySearch(labels[state], c);
+        return index < 0 ? -1 : targets[state][index];
+    }
+
+    /**
+     * Converts a list to an array.
+     *
+     * @param list the list.
+     * @return the array.
+     */
+    @NonNull
+    private static int[] toArray(@NonNull List<Integer> list) {
+        int[] result = new int[list.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = list.get(i);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,173 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2013, CloudBees, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.cloudbees.literate.api.v1;
+
+import org.cloudbees.literate.api.v1.vfs.FilesystemRepository;
+import org.cloudbees.literate.api.v1.vfs.InMemoryRepository;
+import org.cloudbees.literate.api.v1.vfs.ProjectRepository;
+import org.cloudbees.literate.impl.MarkdownProjectModelBuilder;
+import org.junit.Test;
+
+import java.io.File;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+public class CachingProjectModelSourceTest {
+
+    private ProjectRepository repository(String name) throws Exception {
+        URL url = MarkdownModelTest.class.getResource(MarkdownModelTest.class.getSimpleName() + "/" + name);
+        File dir;
+        try {
+            dir = new File(url.toURI());
+        } catch (URISyntaxException e) {
+            dir = new File(url.getPath());
+        }
+        return new FilesystemRepository(dir);
+    }
+
+    @Test
+    public void unchangedContentIsNotParsedAgain() throws Exception {
+        CachingProjectModelSource source = new CachingProjectModelSource(10);
+        ProjectModel first = source.submit(ProjectModelRequest.builder(repository("smokes")).build());
+        ProjectModel second = source.submit(ProjectModelRequest.builder(repository("smokes")).build());
+        assertThat(second, sameInstance(first));
+        assertThat(source.getMissCount(), is(1L));
+        assertThat(source.getHitCount(), is(1L));
+    }
+
+    @Test
+    public void requestParametersArePartOfTheKey() throws Exception {
+        CachingProjectModelSource source = new CachingProjectModelSource(10);
+        ProjectModel first = source.submit(ProjectModelRequest.builder(repository("deploySection")).build());
+        ProjectModel second = source.submit(
+                ProjectModelRequest.builder(repository("deploySection")).addTaskId("promote").build());
+        assertThat(second, not(sameInstance(first)));
+        assertThat(source.getMissCount(), is(2L));
+        assertThat(source.size(), is(2));
+    }
+
+    @Test
+    public void limitsArePartOfTheKey() throws Exception {
+        CachingProjectModelSource source = new CachingProjectModelSource(10);
+        source.submit(ProjectModelRequest.builder(repository("smokes")).build());
+        try {
+            source.submit(ProjectModelRequest.builder(repository("smokes")).withMaxModelSize(1).build());
+            fail("Model is larger than the limit");
+        } catch (ProjectModelLimitExceededException e) {
+            assertThat(e.getLimit(), is(ProjectModelLimitExceededException.Limit.MODEL_SIZE));
+        }
+        assertThat(source.getHitCount(), is(0L));
+        assertThat(source.getMissCount(), is(2L));
+    }
+
+    @Test
+    public void degradedModelsAreNotCached() throws Exception {
+        StringBuilder markdown = new StringBuilder("Build\n=====\n\nJAVA_HOME\n:   The home directory of Java\n\n\n"
+                + "    mvn verify\n\n");
+        for (int i = 0; i < 200; i++) {
+            // plenty to parse but no trouble given the time
+            markdown.append("Some *emphasised* and [linked](http://example.com) text.\n\n");
+        }
+        ProjectModelRequest request = ProjectModelRequest.builder(
+                InMemoryRepository.empty().with(".cloudbees.md", markdown.toString())).build();
+        // a registry of its own as the builders are configured when they are loaded
+        ClassLoader classLoader = new ClassLoader(getClass().getClassLoader()) {
+        };
+        String property = MarkdownProjectModelBuilder.MAX_PARSING_TIME_PROPERTY;
+        String original = System.getProperty(property);
+        CachingProjectModelSource source;
+        ProjectModel degraded;
+        try {
+            System.setProperty(property, "1");
+            source = new CachingProjectModelSource(classLoader, 10);
+            degraded = source.submit(request);
+        } finally {
+            if (original == null) {
+                System.clearProperty(property);
+            } else {
+                System.setProperty(property, original);
+            }
+        }
+        assertThat(degraded.isDegraded(), is(true));
+        assertThat(degraded.getBuild().getParameters().keySet(), empty());
+        assertThat(source.size(), is(0));
+
+        source.getRegistry().refresh();
+        ProjectModel full = source.submit(request);
+        assertThat(full.isDegraded(), is(false));
+        assertThat(full.getBuild().getParameters().keySet(), contains("JAVA_HOME"));
+        assertThat(source.submit(request), sameInstance(full));
+        assertThat(source.getMissCount(), is(2L));
+        assertThat(source.getHitCount(), is(1L));
+    }
+
+    @Test
+    public void leastRecentlyUsedIsEvicted() throws Exception {
+        CachingProjectModelSource source = new CachingProjectModelSource(1);
+        source.submit(ProjectModelRequest.builder(repository("smokes")).build());
+        source.submit(ProjectModelRequest.builder(repository("showcase")).build());
+        source.submit(ProjectModelRequest.builder(repository("smokes")).build());
+        assertThat(source.size(), is(1));
+        assertThat(source.getHitCount(), is(0L));
+        assertThat(source.getMissCount(), is(3L));
+    }
+
+    @Test
+    public void requestsWithTheSameParametersAreEqual() throws Exception {
+        ProjectRepository repository = repository("smokes");
+        assertThat(ProjectModelRequest.builder(repository).addTaskIds("b", "a").build(),
+                is(ProjectModelRequest.builder(repository).addTaskIds("a", "b").build()));
+        assertThat(ProjectModelRequest.builder(repository).withBuildId("make").build(),
+                not(ProjectModelRequest.builder(repository).build()));
+    }
+
+    @Test
+    public void nonLiterateRevisionsAreRemembered() throws Exception {
+        CachingProjectModelSource source = new CachingProjectModelSource(10, 1, TimeUnit.HOURS);
+        ProjectModelBuildingException first = null;
+        for (int i = 0; i < 3; i++) {
+            try {
+                source.submit(ProjectModelRequest.builder(repository("empty")).withRevision("cafebabe").build());
+                fail("Not a literate project");
+            } catch (ProjectModelBuildingException e) {
+                if (first == null) {
+                    first = e;
+                } else {
+                    assertThat(e, sameInstance(first));
+                }
+            }
+        }
+        assertThat(source.getMissCount(), is(1L));
+        assertThat(source.getNegativeHitCount(), is(2L));
+    }
+}
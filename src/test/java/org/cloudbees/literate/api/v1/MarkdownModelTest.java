@@ -145,6 +145,15 @@ public class MarkdownModelTest {
 
     }
 
+    @Test
+    public void sharedSectionHeaders() throws Exception {
+        ProjectModel model = new ProjectModelSource().submit(
+                ProjectModelRequest.builder(repository).addTaskId("deploy").addTaskId("release").build());
+        assertThat(model.getBuildFor("ruby"), contains(Matchers.containsString("rake build")));
+        assertThat(model.getTask("deploy").getCommand(), contains(Matchers.containsString("rake build")));
+        assertThat(model.getTask("release").getCommand(), contains(Matchers.containsString("bees app:promote")));
+    }
+
     @Test
     public void showcase() throws Exception {
         ProjectModel model = new ProjectModelSource().submit(ProjectModelRequest.builder(repository).build());
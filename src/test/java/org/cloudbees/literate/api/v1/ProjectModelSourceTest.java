@@ -0,0 +1,328 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2013, CloudBees, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.cloudbees.literate.api.v1;
+
+import com.google.common.util.concurrent.MoreExecutors;
+import org.cloudbees.literate.api.v1.vfs.FilesystemRepository;
+import org.cloudbees.literate.api.v1.vfs.InMemoryRepository;
+import org.cloudbees.literate.api.v1.vfs.PathNotFoundException;
+import org.cloudbees.literate.api.v1.vfs.ProjectRepository;
+import org.cloudbees.literate.spi.v1.DetectingProjectModelBuilder;
+import org.cloudbees.literate.spi.v1.ProjectModelBuilder;
+import org.hamcrest.Matchers;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.Vector;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.hasItems;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+public class ProjectModelSourceTest {
+
+    private ProjectRepository repository(String name) throws Exception {
+        URL url = MarkdownModelTest.class.getResource(MarkdownModelTest.class.getSimpleName() + "/" + name);
+        File dir;
+        try {
+            dir = new File(url.toURI());
+        } catch (URISyntaxException e) {
+            dir = new File(url.getPath());
+        }
+        return new FilesystemRepository(dir);
+    }
+
+    @Test
+    public void submitAsync() throws Exception {
+        Future<ProjectModel> future =
+                new ProjectModelSource().submitAsync(ProjectModelRequest.builder(repository("smokes")).build());
+        ProjectModel model = future.get(30, TimeUnit.SECONDS);
+        assertThat(model.getBuildFor("java"), contains(Matchers.containsString("mvn verify")));
+    }
+
+    @Test
+    public void submitAsyncFailure() throws Exception {
+        Future<ProjectModel> future = new ProjectModelSource().submitAsync(
+                ProjectModelRequest.builder(repository("empty")).build(),
+                MoreExecutors.sameThreadExecutor(), MoreExecutors.sameThreadExecutor());
+        try {
+            future.get();
+            fail("Not a literate project");
+        } catch (ExecutionException e) {
+            assertThat(e.getCause(), instanceOf(ProjectModelBuildingException.class));
+        }
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void submitAsyncRequiresIoExecutor() throws Exception {
+        new ProjectModelSource().submitAsync(ProjectModelRequest.builder(repository("smokes")).build(),
+                null, MoreExecutors.sameThreadExecutor());
+    }
+
+    @Test
+    public void submitAll() throws Exception {
+        ProjectModelRequest smokes = ProjectModelRequest.builder(repository("smokes")).build();
+        ProjectModelRequest empty = ProjectModelRequest.builder(repository("empty")).build();
+        ProjectModelRequest showcase = ProjectModelRequest.builder(repository("showcase")).build();
+        ProjectModelBatch batch = new ProjectModelSource().submitAll(Arrays.asList(smokes, empty, showcase), 2);
+        assertThat(batch.size(), is(3));
+        List<ProjectModelResult> results = batch.awaitAll();
+        assertThat(results.size(), is(3));
+        assertThat(batch.hasNext(), is(false));
+        Map<ProjectModelRequest, ProjectModelResult> byRequest = new HashMap<ProjectModelRequest, ProjectModelResult>();
+        for (ProjectModelResult result : results) {
+            byRequest.put(result.getRequest(), result);
+        }
+        assertThat(byRequest.get(smokes).isSuccess(), is(true));
+        assertThat(byRequest.get(showcase).isSuccess(), is(true));
+        assertThat(byRequest.get(empty).isSuccess(), is(false));
+        assertThat(byRequest.get(empty).getFailure(), instanceOf(ProjectModelBuildingException.class));
+    }
+
+    @Test
+    public void cancelMidBatch() throws Exception {
+        final CountDownLatch started = new CountDownLatch(1);
+        ProjectRepository blocking = new ProjectRepository() {
+            private <T> T block() throws IOException {
+                started.countDown();
+                try {
+                    new CountDownLatch(1).await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException();
+                }
+                throw new AssertionError();
+            }
+
+            public InputStream get(String filePath) throws IOException {
+                return block();
+            }
+
+            public boolean isFile(String path) throws IOException {
+                return this.<Boolean>block();
+            }
+
+            public boolean isDirectory(String path) throws IOException {
+                return this.<Boolean>block();
+            }
+
+            public Set<String> getPaths(String path) throws IOException {
+                return block();
+            }
+        };
+        List<ProjectModelRequest> requests = new ArrayList<ProjectModelRequest>();
+        for (int i = 0; i < 3; i++) {
+            requests.add(ProjectModelRequest.builder(blocking).build());
+        }
+        ProjectModelBatch batch = new ProjectModelSource().submitAll(requests, 1);
+        assertThat(started.await(30, TimeUnit.SECONDS), is(true));
+        batch.cancel();
+        List<ProjectModelResult> results = batch.awaitAll();
+        assertThat(results.size(), is(3));
+        int cancelled = 0;
+        for (ProjectModelResult result : results) {
+            assertThat(result.isSuccess(), is(false));
+            if (result.getFailure() instanceof CancellationException) {
+                cancelled++;
+            }
+        }
+        assertThat(cancelled, is(2));
+        assertThat(batch.hasNext(), is(false));
+    }
+
+    @Test
+    public void metricsRecordOutcomesAndPhases() throws Exception {
+        final List<String> events = new ArrayList<String>();
+        ProjectModelMetrics metrics = new ProjectModelMetrics() {
+            @Override
+            public void time(Class<?> component, Phase phase, long nanos) {
+                synchronized (events) {
+                    events.add(phase.name());
+                }
+            }
+
+            @Override
+            public void outcome(Class<?> builder, Outcome outcome) {
+                synchronized (events) {
+                    events.add(builder.getSimpleName() + ":" + outcome.name());
+                }
+            }
+        };
+        new ProjectModelSource().submit(ProjectModelRequest.builder(repository("smokes")).withMetrics(metrics).build());
+        assertThat(events, hasItems("PROBE", "READ", "PARSE", "VALIDATE", "MarkdownProjectModelBuilder:SUCCESS"));
+    }
+
+    @Test
+    public void detectingBuildersThatDoNotApplyAreSkipped() throws Exception {
+        final URL services = ProjectModelSourceTest.class.getResource(
+                ProjectModelSourceTest.class.getSimpleName() + "/" + ProjectModelBuilder.class.getName());
+        ClassLoader classLoader = new ClassLoader(getClass().getClassLoader()) {
+            @Override
+            public Enumeration<URL> getResources(String name) throws IOException {
+                Vector<URL> result = new Vector<URL>(Collections.list(super.getResources(name)));
+                if (name.equals("META-INF/services/" + ProjectModelBuilder.class.getName())) {
+                    result.add(services);
+                }
+                return result.elements();
+            }
+        };
+        final List<String> outcomes = new ArrayList<String>();
+        ProjectModelMetrics metrics = new ProjectModelMetrics() {
+            @Override
+            public void outcome(Class<?> builder, Outcome outcome) {
+                outcomes.add(builder.getSimpleName() + ":" + outcome.name());
+            }
+        };
+        NotApplicableBuilder.detected.set(0);
+        ProjectRepository yaml = InMemoryRepository.empty()
+                .with(".cloudbees.yml", "build:\n  - mvn verify\n");
+        ProjectModel model = new ProjectModelSource(classLoader).submit(
+                ProjectModelRequest.builder(yaml).withMetrics(metrics).build());
+        assertThat(model.getCommandCount(), is(1L));
+        assertThat(NotApplicableBuilder.detected.get(), is(1));
+        assertThat(outcomes, contains("MarkdownProjectModelBuilder:NOT_APPLICABLE",
+                "NotApplicableBuilder:NOT_APPLICABLE", "YamlProjectModelBuilder:SUCCESS"));
+    }
+
+    @Test
+    public void limitsFailFast() throws Exception {
+        ProjectRepository markdown = InMemoryRepository.empty()
+                .with(".cloudbees.md", "# Build\n\n    mvn verify\n");
+        try {
+            new ProjectModelSource().submit(ProjectModelRequest.builder(markdown).withMaxFileBytes(10).build());
+            fail("Marker file is larger than the limit");
+        } catch (ProjectModelLimitExceededException e) {
+            assertThat(e.getLimit(), is(ProjectModelLimitExceededException.Limit.FILE_BYTES));
+            assertThat(e.getMaximum(), is(10L));
+        }
+        ProjectRepository yaml = InMemoryRepository.empty()
+                .with(".cloudbees.yml", "build:\n  - mvn clean\n  - mvn verify\n");
+        try {
+            new ProjectModelSource().submit(ProjectModelRequest.builder(yaml).withMaxModelSize(1).build());
+            fail("Model is larger than the limit");
+        } catch (ProjectModelLimitExceededException e) {
+            assertThat(e.getLimit(), is(ProjectModelLimitExceededException.Limit.MODEL_SIZE));
+        }
+        ProjectModel model = new ProjectModelSource().submit(ProjectModelRequest.builder(yaml)
+                .withMaxFileBytes(1024).withMaxModelSize(2).withMaxParseTimeMillis(60000).build());
+        assertThat(model.getCommandCount(), is(2L));
+    }
+
+    @Test
+    public void fileLimitIsEnforcedWhileReading() throws Exception {
+        final int limit = 1024;
+        ProjectRepository endless = new ProjectRepository() {
+            public InputStream get(String filePath) throws IOException {
+                if (!isFile(filePath)) {
+                    throw new PathNotFoundException(filePath);
+                }
+                return new InputStream() {
+                    private long count;
+
+                    @Override
+                    public int read() throws IOException {
+                        if (++count > limit + 1) {
+                            throw new IOException("Read past the limit");
+                        }
+                        return '#';
+                    }
+                };
+            }
+
+            public boolean isFile(String path) throws IOException {
+                return path.equals(".cloudbees.md") || path.equals("/.cloudbees.md");
+            }
+
+            public boolean isDirectory(String path) throws IOException {
+                return path.length() == 0 || path.equals("/");
+            }
+
+            public Set<String> getPaths(String path) throws IOException {
+                return Collections.singleton("/.cloudbees.md");
+            }
+        };
+        ProjectModelRequest request = ProjectModelRequest.builder(endless).withMaxFileBytes(limit).build();
+        List<ProjectModelSource> sources = Arrays.asList(new ProjectModelSource(), new CachingProjectModelSource(10));
+        for (ProjectModelSource source : sources) {
+            try {
+                source.submit(request);
+                fail("Marker file is larger than the limit");
+            } catch (ProjectModelLimitExceededException e) {
+                assertThat(e.getLimit(), is(ProjectModelLimitExceededException.Limit.FILE_BYTES));
+            }
+        }
+        try {
+            new ProjectModelSource().submitAsync(request, MoreExecutors.sameThreadExecutor(),
+                    MoreExecutors.sameThreadExecutor()).get();
+            fail("Marker file is larger than the limit");
+        } catch (ExecutionException e) {
+            assertThat(e.getCause(), instanceOf(ProjectModelLimitExceededException.class));
+        }
+    }
+
+    public static class NotApplicableBuilder implements DetectingProjectModelBuilder {
+
+        static final AtomicInteger detected = new AtomicInteger();
+
+        public String detect(ProjectModelRequest request) {
+            detected.incrementAndGet();
+            return null;
+        }
+
+        public ProjectModel build(ProjectModelRequest request, String markerFile) {
+            throw new AssertionError("Only built when detected");
+        }
+
+        public ProjectModel build(ProjectModelRequest request) {
+            throw new AssertionError("Only built when detected");
+        }
+
+        public Collection<String> markerFiles(String basename) {
+            return Collections.emptySet();
+        }
+    }
+}
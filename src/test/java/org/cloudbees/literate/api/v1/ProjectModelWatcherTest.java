@@ -0,0 +1,219 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2013, CloudBees, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.cloudbees.literate.api.v1;
+
+import org.apache.commons.io.FileUtils;
+import org.cloudbees.literate.api.v1.vfs.FilesystemRepository;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+public class ProjectModelWatcherTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    @Test
+    public void onlyContentChangesAreDelivered() throws Exception {
+        File root = tmp.newFolder();
+        File marker = new File(root, ".cloudbees.md");
+        FileUtils.writeStringToFile(marker, "# Build\n\n    mvn verify\n", "UTF-8");
+        final List<ProjectModel> models = new ArrayList<ProjectModel>();
+        final List<Exception> failures = new ArrayList<Exception>();
+        ProjectModelWatcher watcher = new ProjectModelWatcher(new ProjectModelSource(),
+                ProjectModelRequest.builder(new FilesystemRepository(root)).build(), 1, 0, TimeUnit.SECONDS);
+        watcher.addListener(new ProjectModelWatcher.Listener() {
+            public void onModel(ProjectModelRequest request, ProjectModel model) {
+                models.add(model);
+            }
+
+            public void onFailure(ProjectModelRequest request, Exception failure) {
+                failures.add(failure);
+            }
+        });
+
+        // the first poll always builds
+        watcher.poll();
+        assertThat(models.size(), is(1));
+
+        // nothing changed
+        watcher.poll();
+        assertThat(models.size(), is(1));
+
+        // touched but same content
+        marker.setLastModified(marker.lastModified() - 10000);
+        watcher.poll();
+        assertThat(models.size(), is(1));
+
+        // new content
+        FileUtils.writeStringToFile(marker, "# Build\n\n    mvn clean install\n", "UTF-8");
+        marker.setLastModified(marker.lastModified() + 10000);
+        watcher.poll();
+        assertThat(models.size(), is(2));
+        assertThat(watcher.getModel().getBuildFor(ExecutionEnvironment.any()), contains(containsString("mvn clean install")));
+
+        // removed
+        FileUtils.forceDelete(marker);
+        watcher.poll();
+        assertThat(models.size(), is(2));
+        assertThat(failures.size(), is(1));
+    }
+
+    @Test
+    public void changesAreDebounced() throws Exception {
+        File root = tmp.newFolder();
+        File marker = new File(root, ".cloudbees.md");
+        FileUtils.writeStringToFile(marker, "# Build\n\n    mvn verify\n", "UTF-8");
+        final List<ProjectModel> models = new ArrayList<ProjectModel>();
+        ProjectModelWatcher watcher = new ProjectModelWatcher(new ProjectModelSource(),
+                ProjectModelRequest.builder(new FilesystemRepository(root)).build(), 1000, 200, TimeUnit.MILLISECONDS);
+        watcher.addListener(new RecordingListener(models, new ArrayList<Exception>()));
+
+        watcher.poll();
+        assertThat(models.size(), is(1));
+
+        FileUtils.writeStringToFile(marker, "# Build\n\n    mvn clean install\n", "UTF-8");
+        marker.setLastModified(marker.lastModified() + 10000);
+        watcher.poll();
+        assertThat(models.size(), is(1));
+        watcher.poll();
+        assertThat(models.size(), is(1));
+
+        Thread.sleep(300);
+        watcher.poll();
+        assertThat(models.size(), is(2));
+        assertThat(watcher.getModel().getBuildFor(ExecutionEnvironment.any()), contains(containsString("mvn clean install")));
+    }
+
+    @Test
+    public void fallbackFileIsWatched() throws Exception {
+        File root = tmp.newFolder();
+        FileUtils.writeStringToFile(new File(root, ".cloudbees.md"), "# Notes\n\nSee the readme\n", "UTF-8");
+        File readme = new File(root, "README.md");
+        FileUtils.writeStringToFile(readme, "# Build\n\n    mvn verify\n", "UTF-8");
+        final List<ProjectModel> models = new ArrayList<ProjectModel>();
+        ProjectModelWatcher watcher = new ProjectModelWatcher(new ProjectModelSource(),
+                ProjectModelRequest.builder(new FilesystemRepository(root)).build(), 1, 0, TimeUnit.SECONDS);
+        watcher.addListener(new RecordingListener(models, new ArrayList<Exception>()));
+
+        watcher.poll();
+        assertThat(models.size(), is(1));
+
+        FileUtils.writeStringToFile(readme, "# Build\n\n    mvn clean install\n", "UTF-8");
+        readme.setLastModified(readme.lastModified() + 10000);
+        watcher.poll();
+        assertThat(models.size(), is(2));
+        assertThat(watcher.getModel().getBuildFor(ExecutionEnvironment.any()), contains(containsString("mvn clean install")));
+    }
+
+    @Test
+    public void transientFailuresAreRetried() throws Exception {
+        File root = tmp.newFolder();
+        FileUtils.writeStringToFile(new File(root, ".cloudbees.md"), "# Build\n\n    mvn verify\n", "UTF-8");
+        final AtomicBoolean fail = new AtomicBoolean(true);
+        ProjectModelSource source = new ProjectModelSource() {
+            @Override
+            public ProjectModel submit(ProjectModelRequest request) throws IOException, ProjectModelBuildingException {
+                if (fail.getAndSet(false)) {
+                    throw new IOException("Transient");
+                }
+                return super.submit(request);
+            }
+        };
+        final List<ProjectModel> models = new ArrayList<ProjectModel>();
+        final List<Exception> failures = new ArrayList<Exception>();
+        ProjectModelWatcher watcher = new ProjectModelWatcher(source,
+                ProjectModelRequest.builder(new FilesystemRepository(root)).build(), 1, 0, TimeUnit.SECONDS);
+        watcher.addListener(new RecordingListener(models, failures));
+
+        watcher.poll();
+        assertThat(failures.size(), is(1));
+        assertThat(models.size(), is(0));
+
+        // nothing changed but the build is retried
+        watcher.poll();
+        assertThat(failures.size(), is(1));
+        assertThat(models.size(), is(1));
+    }
+
+    @Test
+    public void degradedModelsAreRetried() throws Exception {
+        File root = tmp.newFolder();
+        FileUtils.writeStringToFile(new File(root, ".cloudbees.md"), "# Build\n\n    mvn verify\n", "UTF-8");
+        final AtomicBoolean degrade = new AtomicBoolean(true);
+        ProjectModelSource source = new ProjectModelSource() {
+            @Override
+            public ProjectModel submit(ProjectModelRequest request) throws IOException, ProjectModelBuildingException {
+                return ProjectModel.builder().addBuild("mvn verify").withDegraded(degrade.getAndSet(false)).build();
+            }
+        };
+        final List<ProjectModel> models = new ArrayList<ProjectModel>();
+        final List<Exception> failures = new ArrayList<Exception>();
+        ProjectModelWatcher watcher = new ProjectModelWatcher(source,
+                ProjectModelRequest.builder(new FilesystemRepository(root)).build(), 1, 0, TimeUnit.SECONDS);
+        watcher.addListener(new RecordingListener(models, failures));
+
+        watcher.poll();
+        assertThat(models.size(), is(1));
+        assertThat(models.get(0).isDegraded(), is(true));
+
+        // nothing changed but the build is retried until it is complete
+        watcher.poll();
+        assertThat(models.size(), is(2));
+        assertThat(models.get(1).isDegraded(), is(false));
+        watcher.poll();
+        assertThat(models.size(), is(2));
+        assertThat(failures.size(), is(0));
+    }
+
+    private static class RecordingListener implements ProjectModelWatcher.Listener {
+        private final List<ProjectModel> models;
+        private final List<Exception> failures;
+
+        RecordingListener(List<ProjectModel> models, List<Exception> failures) {
+            this.models = models;
+            this.failures = failures;
+        }
+
+        public void onModel(ProjectModelRequest request, ProjectModel model) {
+            models.add(model);
+        }
+
+        public void onFailure(ProjectModelRequest request, Exception failure) {
+            failures.add(failure);
+        }
+    }
+}
@@ -0,0 +1,144 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2013, CloudBees, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.cloudbees.literate.api.v1.vfs;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+public class ArchiveRepositoryTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    @Test
+    public void zip() throws Exception {
+        File archive = tmp.newFile("snapshot.zip");
+        ZipOutputStream out = new ZipOutputStream(new FileOutputStream(archive));
+        try {
+            out.putNextEntry(new ZipEntry("project-1234/.cloudbees.md"));
+            out.write("# Build\n\n    make\n".getBytes("UTF-8"));
+            out.putNextEntry(new ZipEntry("project-1234/src/main.c"));
+            out.write("int main;".getBytes("UTF-8"));
+            out.putNextEntry(new ZipEntry("../escape"));
+            out.write("nope".getBytes("UTF-8"));
+        } finally {
+            out.close();
+        }
+        ZipRepository repository = new ZipRepository(archive, 1);
+        try {
+            assertRepository(repository);
+        } finally {
+            repository.close();
+        }
+    }
+
+    @Test
+    public void tar() throws Exception {
+        File archive = tmp.newFile("snapshot.tar");
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writeTarEntry(out, "project-1234/", '5', new byte[0]);
+        writeTarEntry(out, "project-1234/.cloudbees.md", '0', "# Build\n\n    make\n".getBytes("UTF-8"));
+        writeTarEntry(out, "project-1234/src/main.c", '0', "int main;".getBytes("UTF-8"));
+        out.write(new byte[1024]);
+        OutputStream file = new FileOutputStream(archive);
+        try {
+            file.write(out.toByteArray());
+        } finally {
+            file.close();
+        }
+        TarRepository repository = new TarRepository(archive, 1);
+        try {
+            assertRepository(repository);
+        } finally {
+            repository.close();
+        }
+    }
+
+    @Test
+    public void tarHeaderSizesAreChecked() throws Exception {
+        File archive = tmp.newFile("crafted.tar");
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writeTarEntry(out, "././@PaxHeader", 'x', new byte[2 * 1024 * 1024]);
+        writeTarEntry(out, ".cloudbees.md", '0', "# Build\n\n    make\n".getBytes("UTF-8"));
+        out.write(new byte[1024]);
+        FileUtils.writeByteArrayToFile(archive, out.toByteArray());
+        try {
+            new TarRepository(archive).close();
+            fail("Extended header is too large");
+        } catch (ProjectRepositoryException e) {
+            // expected
+        }
+
+        // claims more content than the archive holds
+        byte[] content = out.toByteArray();
+        byte[] size = "77777777777".getBytes("US-ASCII");
+        System.arraycopy(size, 0, content, 124, size.length);
+        FileUtils.writeByteArrayToFile(archive, content);
+        try {
+            new TarRepository(archive).close();
+            fail("Archive is truncated");
+        } catch (EOFException e) {
+            // expected
+        }
+    }
+
+    private static void assertRepository(ProjectRepository repository) throws Exception {
+        assertThat(repository.getPaths("/"), contains("/.cloudbees.md", "/src/"));
+        assertThat(repository.getPaths("src"), contains("/src/main.c"));
+        assertThat(repository.isDirectory("src"), is(true));
+        assertThat(repository.isFile("src/main.c"), is(true));
+        assertThat(repository.isFile("src"), is(false));
+        assertThat(IOUtils.toString(repository.get("/src/main.c"), "UTF-8"), is("int main;"));
+        assertThat(ProjectRepositories.getChars(repository, ".cloudbees.md").toString(), is("# Build\n\n    make\n"));
+    }
+
+    private static void writeTarEntry(ByteArrayOutputStream out, String name, char type, byte[] content)
+            throws Exception {
+        byte[] header = new byte[512];
+        byte[] nameBytes = name.getBytes("UTF-8");
+        System.arraycopy(nameBytes, 0, header, 0, nameBytes.length);
+        byte[] size = String.format("%011o", content.length).getBytes("US-ASCII");
+        System.arraycopy(size, 0, header, 124, size.length);
+        header[156] = (byte) type;
+        out.write(header);
+        out.write(content);
+        out.write(new byte[(512 - content.length % 512) % 512]);
+    }
+}
@@ -0,0 +1,185 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2013, CloudBees, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.cloudbees.literate.api.v1.vfs;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.Matchers.closeTo;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.junit.Assert.assertThat;
+
+public class CachingProjectRepositoryTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    @Test
+    public void answersAreRemembered() throws Exception {
+        File root = tmp.newFolder();
+        FileUtils.writeStringToFile(new File(root, "pom.xml"), "<project/>", "UTF-8");
+        FileUtils.writeStringToFile(new File(root, "src/main.c"), "int main;", "UTF-8");
+        final AtomicInteger calls = new AtomicInteger();
+        CachingProjectRepository repository = new CachingProjectRepository(new FilesystemRepository(root) {
+            @Override
+            public boolean isFile(String path) throws IOException {
+                calls.incrementAndGet();
+                return super.isFile(path);
+            }
+
+            @Override
+            public Set<String> getPaths(String path) throws IOException {
+                calls.incrementAndGet();
+                return super.getPaths(path);
+            }
+        });
+        assertThat(repository.isFile("src/main.c"), is(true));
+        assertThat(repository.isFile("/src/main.c"), is(true));
+        assertThat(calls.get(), is(1));
+
+        // answered from the listing of the root
+        repository.getPaths("/");
+        assertThat(repository.isFile("pom.xml"), is(true));
+        assertThat(repository.isFile("build.gradle"), is(false));
+        assertThat(repository.isDirectory("src"), is(true));
+        assertThat(calls.get(), is(2));
+
+        assertThat(repository.getHitCount(), is(4L));
+        assertThat(repository.getMissCount(), is(2L));
+        assertThat(repository.getHitRate(), closeTo(4.0 / 6.0, 0.001));
+
+        repository.invalidateAll();
+        repository.isFile("src/main.c");
+        assertThat(calls.get(), is(3));
+    }
+
+    @Test
+    public void equivalentPathsShareAnswers() throws Exception {
+        File root = tmp.newFolder();
+        FileUtils.writeStringToFile(new File(root, "src/main.c"), "int main;", "UTF-8");
+        CachingProjectRepository repository = new CachingProjectRepository(new FilesystemRepository(root));
+        assertThat(repository.isFile("src/main.c"), is(true));
+        assertThat(repository.isFile("src/./main.c"), is(true));
+        assertThat(repository.isFile("lib/../src/main.c"), is(true));
+        assertThat(repository.isDirectory("src/"), is(true));
+        assertThat(repository.isDirectory("./src"), is(true));
+        assertThat(repository.getMissCount(), is(2L));
+        assertThat(repository.getHitCount(), is(3L));
+    }
+
+    @Test
+    public void answersAreBounded() throws Exception {
+        File root = tmp.newFolder();
+        CachingProjectRepository repository =
+                new CachingProjectRepository(new FilesystemRepository(root), 0, TimeUnit.SECONDS, 10);
+        for (int i = 0; i < 100; i++) {
+            repository.isFile("file" + i);
+        }
+        assertThat(repository.getMissCount(), is(100L));
+        for (int i = 0; i < 100; i++) {
+            repository.isFile("file" + i);
+        }
+        assertThat(repository.getHitCount(), lessThanOrEqualTo(10L));
+    }
+
+    @Test
+    public void answersExpire() throws Exception {
+        File root = tmp.newFolder();
+        CachingProjectRepository repository =
+                new CachingProjectRepository(new FilesystemRepository(root), 1, TimeUnit.MILLISECONDS);
+        assertThat(repository.isFile("pom.xml"), is(false));
+        FileUtils.writeStringToFile(new File(root, "pom.xml"), "<project/>", "UTF-8");
+        Thread.sleep(10);
+        assertThat(repository.isFile("pom.xml"), is(true));
+    }
+
+    @Test
+    public void unknownPathsAreBatched() throws Exception {
+        File root = tmp.newFolder();
+        FileUtils.writeStringToFile(new File(root, "pom.xml"), "<project/>", "UTF-8");
+        FileUtils.writeStringToFile(new File(root, "src/main.c"), "int main;", "UTF-8");
+        final AtomicInteger batches = new AtomicInteger();
+        final AtomicInteger calls = new AtomicInteger();
+        class CountingRepository extends FilesystemRepository implements BatchProjectRepository {
+            CountingRepository(File root) {
+                super(root);
+            }
+
+            @Override
+            public boolean isFile(String path) throws IOException {
+                calls.incrementAndGet();
+                return super.isFile(path);
+            }
+
+            public Set<String> filterFiles(Collection<String> paths) throws IOException {
+                batches.incrementAndGet();
+                Set<String> result = new HashSet<String>();
+                for (String path : paths) {
+                    if (super.isFile(path)) {
+                        result.add(path);
+                    }
+                }
+                return result;
+            }
+
+            public Map<String, ByteBuffer> getAll(Collection<String> filePaths, long maxBytes) throws IOException {
+                batches.incrementAndGet();
+                Map<String, ByteBuffer> result = new HashMap<String, ByteBuffer>();
+                for (String path : filePaths) {
+                    result.put(path, getBuffer(path, maxBytes));
+                }
+                return result;
+            }
+        }
+        CachingProjectRepository repository = new CachingProjectRepository(new CountingRepository(root));
+        assertThat(repository.isFile("pom.xml"), is(true));
+        assertThat(ProjectRepositories.filterFiles(repository,
+                Arrays.asList("src/main.c", "pom.xml", "build.gradle", "src")),
+                contains("src/main.c", "pom.xml"));
+        assertThat(calls.get(), is(1));
+        assertThat(batches.get(), is(1));
+
+        // all remembered now
+        ProjectRepositories.filterFiles(repository, Arrays.asList("src/main.c", "build.gradle"));
+        assertThat(batches.get(), is(1));
+        assertThat(ProjectRepositories.getAll(repository, Arrays.asList("pom.xml")).keySet(), contains("pom.xml"));
+        assertThat(batches.get(), is(2));
+    }
+}
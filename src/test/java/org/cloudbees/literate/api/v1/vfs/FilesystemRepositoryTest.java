@@ -0,0 +1,121 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2013, CloudBees, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.cloudbees.literate.api.v1.vfs;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.TreeSet;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+public class FilesystemRepositoryTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    @Test
+    public void pathsAreNormalized() throws Exception {
+        File root = tmp.newFolder();
+        FileUtils.writeStringToFile(new File(root, "sub/file.txt"), "content", "UTF-8");
+        FilesystemRepository repository = new FilesystemRepository(root);
+        assertThat(repository.isFile("sub/file.txt"), is(true));
+        assertThat(repository.isFile("/sub/./../sub/file.txt"), is(true));
+        assertThat(repository.isDirectory("/"), is(true));
+        assertThat(repository.getPaths("/sub/"), contains("/sub/file.txt"));
+        for (String path : Arrays.asList("..", "../" + root.getName() + "/sub/file.txt", "sub/../../file.txt")) {
+            try {
+                repository.isFile(path);
+                fail(path + " is outside of the repository");
+            } catch (PathNotFoundException e) {
+                // expected
+            }
+        }
+    }
+
+    @Test
+    public void largeFilesAreMapped() throws Exception {
+        File root = tmp.newFolder();
+        byte[] content = new byte[(int) FilesystemRepository.MAP_THRESHOLD + 1];
+        Arrays.fill(content, (byte) 0xfe);
+        FileUtils.writeByteArrayToFile(new File(root, "large"), content);
+        InputStream stream = new FilesystemRepository(root).get("large");
+        try {
+            assertThat(Arrays.equals(IOUtils.toByteArray(stream), content), is(true));
+        } finally {
+            IOUtils.closeQuietly(stream);
+        }
+    }
+
+    @Test
+    public void charsAreDecodedAsUtf8() throws Exception {
+        File root = tmp.newFolder();
+        FileUtils.writeByteArrayToFile(new File(root, "file.md"),
+                new byte[]{(byte) 0xef, (byte) 0xbb, (byte) 0xbf, 'c', 'a', 'f', (byte) 0xc3, (byte) 0xa9});
+        FilesystemRepository repository = new FilesystemRepository(root);
+        assertThat(repository.getBuffer("file.md").remaining(), is(8));
+        assertThat(ProjectRepositories.getChars(repository, "file.md").toString(), is("caf\u00e9"));
+    }
+
+    @Test
+    public void listingIsFiltered() throws Exception {
+        File root = tmp.newFolder();
+        FileUtils.writeStringToFile(new File(root, ".cloudbees.md"), "# Build", "UTF-8");
+        FileUtils.writeStringToFile(new File(root, "README.md"), "# Project", "UTF-8");
+        FileUtils.writeStringToFile(new File(root, "pom.xml"), "<project/>", "UTF-8");
+        FileUtils.writeStringToFile(new File(root, "docs.md/index.html"), "<html/>", "UTF-8");
+        FilesystemRepository repository = new FilesystemRepository(root);
+        assertThat(toSet(repository.listPaths("/", PathFilter.glob("*.md"))),
+                containsInAnyOrder("/.cloudbees.md", "/README.md", "/docs.md/"));
+        assertThat(toSet(repository.listPaths("", PathFilter.names(".cloudbees.yml", "pom.xml", "../pom.xml"))),
+                contains("/pom.xml"));
+        assertThat(toSet(repository.listPaths("docs.md", null)), contains("/docs.md/index.html"));
+        try {
+            repository.listPaths("missing", PathFilter.names("pom.xml"));
+            fail("missing does not exist");
+        } catch (PathNotFoundException e) {
+            // expected
+        }
+    }
+
+    private static Set<String> toSet(Iterator<String> paths) {
+        Set<String> result = new TreeSet<String>();
+        while (paths.hasNext()) {
+            result.add(paths.next());
+        }
+        return result;
+    }
+}
@@ -0,0 +1,202 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2013, CloudBees, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.cloudbees.literate.api.v1.vfs;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.zip.DeflaterOutputStream;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+public class GitObjectStoreTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    @Test
+    public void looseObjects() throws Exception {
+        File gitDir = tmp.newFolder();
+        String marker = writeObject(gitDir, "blob", "# Build\n\n    make\n".getBytes("UTF-8"));
+        String source = writeObject(gitDir, "blob", "int main;".getBytes("UTF-8"));
+        String src = writeObject(gitDir, "tree", treeEntry("100644", "main.c", source));
+        ByteArrayOutputStream root = new ByteArrayOutputStream();
+        root.write(treeEntry("100644", ".cloudbees.md", marker));
+        root.write(treeEntry("40000", "src", src));
+        String tree = writeObject(gitDir, "tree", root.toByteArray());
+        String commit = writeObject(gitDir, "commit",
+                ("tree " + tree + "\nauthor A <a@b> 0 +0000\ncommitter A <a@b> 0 +0000\n\nmessage\n").getBytes("UTF-8"));
+        FileUtils.writeStringToFile(new File(gitDir, "refs/heads/master"), commit + "\n", "UTF-8");
+        FileUtils.writeStringToFile(new File(gitDir, "HEAD"), "ref: refs/heads/master\n", "UTF-8");
+
+        GitObjectStore store = new GitObjectStore(gitDir);
+        try {
+            assertThat(store.resolve("HEAD"), is(commit));
+            GitRepository repository = store.at("master");
+            assertThat(repository.getCommitId(), is(commit));
+            assertThat(repository.getPaths("/"), contains("/.cloudbees.md", "/src/"));
+            assertThat(repository.getPaths("/src"), contains("/src/main.c"));
+            assertThat(repository.isFile("src/main.c"), is(true));
+            assertThat(repository.isFile("src"), is(false));
+            assertThat(repository.isDirectory("src"), is(true));
+            assertThat(ProjectRepositories.getChars(repository, ".cloudbees.md").toString(), is("# Build\n\n    make\n"));
+            assertThat(ProjectRepositories.getChars(repository, "/src/main.c").toString(), is("int main;"));
+
+            // the trees are shared by later repositories
+            long misses = store.getTreeMissCount();
+            store.at(commit).getPaths("/src");
+            assertThat(store.getTreeMissCount(), is(misses));
+        } finally {
+            store.close();
+        }
+    }
+
+    @Test
+    public void symlinksAndSubmodulesAreNotListed() throws Exception {
+        File gitDir = tmp.newFolder();
+        String marker = writeObject(gitDir, "blob", "# Build\n\n    make\n".getBytes("UTF-8"));
+        String target = writeObject(gitDir, "blob", "docs/README.md".getBytes("UTF-8"));
+        ByteArrayOutputStream root = new ByteArrayOutputStream();
+        root.write(treeEntry("120000", ".cloudbees.md", target));
+        root.write(treeEntry("100644", "build.md", marker));
+        root.write(treeEntry("160000", "lib", marker));
+        String tree = writeObject(gitDir, "tree", root.toByteArray());
+        String commit = writeObject(gitDir, "commit",
+                ("tree " + tree + "\nauthor A <a@b> 0 +0000\ncommitter A <a@b> 0 +0000\n\nmessage\n").getBytes("UTF-8"));
+        GitObjectStore store = new GitObjectStore(gitDir);
+        try {
+            GitRepository repository = store.at(commit);
+            assertThat(repository.getPaths("/"), contains("/build.md"));
+            assertThat(repository.isFile(".cloudbees.md"), is(false));
+            assertThat(repository.isFile("lib"), is(false));
+            assertThat(repository.isDirectory("lib"), is(false));
+            // answered from the listing
+            CachingProjectRepository cached = new CachingProjectRepository(repository);
+            cached.getPaths("/");
+            assertThat(ProjectRepositories.filterFiles(cached, Arrays.asList(".cloudbees.md", "build.md", "lib")),
+                    contains("build.md"));
+        } finally {
+            store.close();
+        }
+    }
+
+    @Test
+    public void sizeLimitAppliesBeforeInflating() throws Exception {
+        File gitDir = tmp.newFolder();
+        String marker = writeObject(gitDir, "blob", new byte[1000]);
+        String tree = writeObject(gitDir, "tree", treeEntry("100644", ".cloudbees.md", marker));
+        String commit = writeObject(gitDir, "commit",
+                ("tree " + tree + "\nauthor A <a@b> 0 +0000\ncommitter A <a@b> 0 +0000\n\nmessage\n").getBytes("UTF-8"));
+        GitObjectStore store = new GitObjectStore(gitDir);
+        try {
+            GitRepository repository = store.at(commit);
+            assertThat(repository.getBuffer(".cloudbees.md", 1000).remaining(), is(1000));
+            try {
+                repository.getBuffer(".cloudbees.md", 999);
+                fail("Blob is larger than the limit");
+            } catch (FileTooLargeException e) {
+                assertThat(e.getMaxBytes(), is(999L));
+            }
+        } finally {
+            store.close();
+        }
+    }
+
+    @Test
+    public void removedPacksAreClosed() throws Exception {
+        File gitDir = tmp.newFolder();
+        String blob = writeObject(gitDir, "blob", "int main;".getBytes("UTF-8"));
+        File packDir = new File(gitDir, "objects/pack");
+        FileUtils.forceMkdir(packDir);
+        // an empty version 2 index
+        ByteBuffer idx = ByteBuffer.allocate(8 + 256 * 4 + 40);
+        idx.putInt(0xff744f63).putInt(2);
+        File idxFile = new File(packDir, "pack-1.idx");
+        FileUtils.writeByteArrayToFile(idxFile, idx.array());
+        File packFile = new File(packDir, "pack-1.pack");
+        FileUtils.writeByteArrayToFile(packFile, new byte[0]);
+        GitObjectStore store = new GitObjectStore(gitDir);
+        try {
+            store.read(blob);
+            assertThat(store.getOpenPackCount(), is(1));
+
+            // repacked
+            FileUtils.forceDelete(idxFile);
+            FileUtils.forceDelete(packFile);
+            packDir.setLastModified(packDir.lastModified() + 10000);
+            store.read(blob);
+            assertThat(store.getOpenPackCount(), is(0));
+        } finally {
+            store.close();
+        }
+    }
+
+    @Test
+    public void delta() throws Exception {
+        byte[] base = "hello world".getBytes("UTF-8");
+        // base size 11, result size 13, copy 6 bytes from 0, insert "there", copy 2 bytes from 9
+        byte[] delta = {11, 13, (byte) 0x91, 0, 6, 5, 't', 'h', 'e', 'r', 'e', (byte) 0x91, 9, 2};
+        assertThat(new String(GitPack.applyDelta(base, delta), "UTF-8"), is("hello thereld"));
+    }
+
+    private static byte[] treeEntry(String mode, String name, String id) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write((mode + " " + name).getBytes("UTF-8"));
+        out.write(0);
+        for (int i = 0; i < 40; i += 2) {
+            out.write(Integer.parseInt(id.substring(i, i + 2), 16));
+        }
+        return out.toByteArray();
+    }
+
+    private static String writeObject(File gitDir, String type, byte[] content) throws Exception {
+        ByteArrayOutputStream raw = new ByteArrayOutputStream();
+        raw.write((type + " " + content.length).getBytes("UTF-8"));
+        raw.write(0);
+        raw.write(content);
+        byte[] digest = MessageDigest.getInstance("SHA-1").digest(raw.toByteArray());
+        String id = GitObjectStore.toHex(digest);
+        File file = new File(gitDir, "objects/" + id.substring(0, 2) + "/" + id.substring(2));
+        FileUtils.forceMkdir(file.getParentFile());
+        OutputStream out = new DeflaterOutputStream(new FileOutputStream(file));
+        try {
+            out.write(raw.toByteArray());
+        } finally {
+            out.close();
+        }
+        return id;
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2013, CloudBees, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.cloudbees.literate.api.v1.vfs;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+public class InMemoryRepositoryTest {
+
+    @Test
+    public void snapshotsAreIndependent() throws Exception {
+        InMemoryRepository first = InMemoryRepository.empty()
+                .with("README.md", "# Project")
+                .with("src/main.c", "int main;");
+        InMemoryRepository second = first.with("src/util.c", "int util;").without("README.md");
+        assertThat(first.isFile("README.md"), is(true));
+        assertThat(first.isFile("src/util.c"), is(false));
+        assertThat(second.isFile("README.md"), is(false));
+        assertThat(IOUtils.toString(second.get("src/util.c"), "UTF-8"), is("int util;"));
+        assertThat(first.getPaths("src"), contains("/src/main.c"));
+        assertThat(second.getPaths("/src/"), contains("/src/main.c", "/src/util.c"));
+        assertThat(second.getPaths(""), contains("/src/"));
+        assertThat(second.without("missing/file"), is(second));
+    }
+
+    @Test
+    public void builderMatchesWith() throws Exception {
+        InMemoryRepository repository = InMemoryRepository.builder()
+                .add("b/c/d.txt", "d")
+                .add("a.txt", "a")
+                .add("b/e.txt", "e")
+                .add("b.txt", "b")
+                .build();
+        assertThat(repository.getPaths("/"), contains("/a.txt", "/b.txt", "/b/"));
+        assertThat(repository.getPaths("b"), contains("/b/c/", "/b/e.txt"));
+        assertThat(repository.getPaths("b/c"), contains("/b/c/d.txt"));
+        assertThat(repository.isDirectory("b/c"), is(true));
+        assertThat(repository.isFile("b/c/d.txt/x"), is(false));
+    }
+
+    @Test
+    public void contentCannotBeModified() throws Exception {
+        byte[] content = {1, 2, 3};
+        InMemoryRepository repository = InMemoryRepository.empty().with("data", content);
+        content[0] = 9;
+        ByteBuffer buffer = repository.getBuffer("data");
+        assertThat(buffer.isReadOnly(), is(true));
+        assertThat(buffer.get(0), is((byte) 1));
+    }
+
+    @Test(expected = PathNotFoundException.class)
+    public void outsideTheRootIsNotFound() throws Exception {
+        InMemoryRepository.empty().with("a", "a").get("../a");
+    }
+}
@@ -0,0 +1,144 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2013, CloudBees, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.cloudbees.literate.api.v1.vfs;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+public class OverlayRepositoryTest {
+
+    @Test
+    public void earlierLayersOverrideLaterOnes() throws Exception {
+        InMemoryRepository project = InMemoryRepository.empty()
+                .with(".cloudbees.yml", "project")
+                .with("lib", "a file hiding the defaults directory")
+                .with("src/main.c", "int main;");
+        InMemoryRepository defaults = InMemoryRepository.empty()
+                .with(".cloudbees.yml", "defaults")
+                .with("lib/shared.sh", "echo")
+                .with("src/default.c", "int x;")
+                .with("README.md", "# Defaults");
+        OverlayRepository repository = new OverlayRepository(project, defaults);
+        assertThat(IOUtils.toString(repository.get(".cloudbees.yml"), "UTF-8"), is("project"));
+        assertThat(IOUtils.toString(repository.get("/README.md"), "UTF-8"), is("# Defaults"));
+        assertThat(repository.isFile("lib"), is(true));
+        assertThat(repository.isFile("lib/shared.sh"), is(false));
+        assertThat(repository.getPaths("src"), contains("/src/default.c", "/src/main.c"));
+        assertThat(repository.getPaths("/"), contains("/.cloudbees.yml", "/README.md", "/lib", "/src/"));
+    }
+
+    @Test
+    public void onlyTheInvalidatedLayerIsWalkedAgain() throws Exception {
+        final AtomicInteger walks = new AtomicInteger();
+        final InMemoryRepository[] project = {InMemoryRepository.empty().with("a.txt", "a")};
+        ProjectRepository changing = new ProjectRepository() {
+            public InputStream get(String filePath) throws IOException {
+                return project[0].get(filePath);
+            }
+
+            public boolean isFile(String path) throws IOException {
+                return project[0].isFile(path);
+            }
+
+            public boolean isDirectory(String path) throws IOException {
+                return project[0].isDirectory(path);
+            }
+
+            public Set<String> getPaths(String path) throws IOException {
+                return project[0].getPaths(path);
+            }
+        };
+        ProjectRepository defaults = new ProjectRepository() {
+            private final InMemoryRepository delegate = InMemoryRepository.empty().with("b.txt", "b");
+
+            public InputStream get(String filePath) throws IOException {
+                return delegate.get(filePath);
+            }
+
+            public boolean isFile(String path) throws IOException {
+                return delegate.isFile(path);
+            }
+
+            public boolean isDirectory(String path) throws IOException {
+                return delegate.isDirectory(path);
+            }
+
+            public Set<String> getPaths(String path) throws IOException {
+                walks.incrementAndGet();
+                return delegate.getPaths(path);
+            }
+        };
+        OverlayRepository repository = new OverlayRepository(changing, defaults);
+        assertThat(repository.getPaths("/"), contains("/a.txt", "/b.txt"));
+        project[0] = project[0].with("c.txt", "c");
+        assertThat(repository.isFile("c.txt"), is(false));
+        repository.invalidate(0);
+        assertThat(repository.isFile("c.txt"), is(true));
+        assertThat(repository.getPaths("/"), contains("/a.txt", "/b.txt", "/c.txt"));
+        assertThat(walks.get(), is(1));
+    }
+
+    @Test
+    public void onlyTheDirectoriesAskedAboutAreListed() throws Exception {
+        final AtomicInteger listings = new AtomicInteger();
+        // every directory contains itself, like a symbolic link to "."
+        ProjectRepository looping = new ProjectRepository() {
+            public InputStream get(String filePath) throws IOException {
+                throw new PathNotFoundException(filePath);
+            }
+
+            public boolean isFile(String path) throws IOException {
+                return false;
+            }
+
+            public boolean isDirectory(String path) throws IOException {
+                return true;
+            }
+
+            public Set<String> getPaths(String path) throws IOException {
+                listings.incrementAndGet();
+                String prefix = path.endsWith("/") ? path : path + "/";
+                return Collections.singleton(prefix + "loop/");
+            }
+        };
+        OverlayRepository repository =
+                new OverlayRepository(InMemoryRepository.empty().with(".cloudbees.md", "# Build"), looping);
+        assertThat(repository.isFile(".cloudbees.md"), is(true));
+        assertThat(repository.isFile(".cloudbees.yml"), is(false));
+        assertThat(listings.get(), is(1));
+        assertThat(repository.isDirectory("loop/loop/loop"), is(true));
+        assertThat(repository.getPaths("loop/loop"), contains("/loop/loop/loop/"));
+        assertThat(listings.get(), is(4));
+    }
+}
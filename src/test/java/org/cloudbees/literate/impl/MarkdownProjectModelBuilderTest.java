@@ -0,0 +1,119 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2013, CloudBees, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.cloudbees.literate.impl;
+
+import org.cloudbees.literate.api.v1.ProjectModel;
+import org.cloudbees.literate.api.v1.ProjectModelLimitExceededException;
+import org.cloudbees.literate.api.v1.ProjectModelMetrics;
+import org.cloudbees.literate.api.v1.ProjectModelRequest;
+import org.cloudbees.literate.api.v1.vfs.InMemoryRepository;
+import org.junit.Test;
+import org.pegdown.PegDownProcessor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+public class MarkdownProjectModelBuilderTest {
+
+    /**
+     * Nested emphasis and links that take Pegdown exponential time to give up on.
+     */
+    private static String pathological() {
+        StringBuilder buf = new StringBuilder();
+        for (int i = 0; i < 24; i++) {
+            buf.append("*_[");
+        }
+        return buf.append("x\n").toString();
+    }
+
+    @Test
+    public void maxParsingTime() {
+        assertThat(new MarkdownProjectModelBuilder().getMaxParsingTimeMillis(),
+                is(PegDownProcessor.DEFAULT_MAX_PARSING_TIME));
+        assertThat(new MarkdownProjectModelBuilder(250).getMaxParsingTimeMillis(), is(250L));
+    }
+
+    @Test
+    public void slowDocumentsFallBackToLineExtraction() throws Exception {
+        InMemoryRepository repository = InMemoryRepository.empty().with(".cloudbees.md", "Build\n=====\n\n"
+                + "* On `java`\n\n        mvn verify\n\n" + pathological() + "\n## Deploy ##\n\n"
+                + "```\nbees app:deploy\n  --verbose\n```\n");
+        final List<ProjectModelMetrics.Outcome> outcomes = new ArrayList<ProjectModelMetrics.Outcome>();
+        ProjectModelMetrics metrics = new ProjectModelMetrics() {
+            @Override
+            public void outcome(Class<?> builder, Outcome outcome) {
+                outcomes.add(outcome);
+            }
+        };
+        long start = System.nanoTime();
+        ProjectModel model = new MarkdownProjectModelBuilder(100)
+                .build(ProjectModelRequest.builder(repository).withMetrics(metrics).build());
+        assertThat((System.nanoTime() - start) / 1000000L, lessThan(10000L));
+        assertThat(model.getBuild().getCommands().values(), contains(contains("mvn verify\n")));
+        assertThat(model.getTask("deploy").getCommand(), contains("bees app:deploy\n  --verbose\n"));
+        assertThat(outcomes, contains(ProjectModelMetrics.Outcome.DEGRADED));
+    }
+
+    @Test
+    public void slowDocumentsWithEnvironmentsFail() throws Exception {
+        InMemoryRepository repository = InMemoryRepository.empty().with(".cloudbees.md", "# Environments\n\n"
+                + "* `java-7`\n* `java-8`\n\n# Build\n\n    mvn verify\n\n" + pathological());
+        try {
+            new MarkdownProjectModelBuilder(100).build(ProjectModelRequest.builder(repository).build());
+            fail("The environments cannot be extracted");
+        } catch (ProjectModelLimitExceededException e) {
+            assertThat(e.getLimit(), is(ProjectModelLimitExceededException.Limit.PARSE_TIME_MILLIS));
+        }
+    }
+
+    @Test
+    public void slowDocumentsWithoutCommandsUseTheFallbackFile() throws Exception {
+        InMemoryRepository repository = InMemoryRepository.empty()
+                .with(".cloudbees.md", "# Notes\n\n" + pathological())
+                .with(MarkdownProjectModelBuilder.FALLBACK_FILE, "# Build\n\n    mvn verify\n");
+        ProjectModel model = new MarkdownProjectModelBuilder(100)
+                .build(ProjectModelRequest.builder(repository).build());
+        assertThat(model.getBuild().getCommands().values(), contains(contains("mvn verify\n")));
+    }
+
+    @Test
+    public void slowDocumentsWithoutCommandsFail() throws Exception {
+        InMemoryRepository repository = InMemoryRepository.empty().with(".cloudbees.md", "# Build\n\n"
+                + pathological());
+        try {
+            new MarkdownProjectModelBuilder().build(ProjectModelRequest.builder(repository)
+                    .withMaxParseTimeMillis(100).build());
+            fail("Parsing should have timed out");
+        } catch (ProjectModelLimitExceededException e) {
+            assertThat(e.getLimit(), is(ProjectModelLimitExceededException.Limit.PARSE_TIME_MILLIS));
+            assertThat(e.getMaximum(), is(100L));
+        }
+    }
+}
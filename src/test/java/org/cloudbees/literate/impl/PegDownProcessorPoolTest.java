@@ -0,0 +1,58 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2013, CloudBees, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.cloudbees.literate.impl;
+
+import org.junit.Test;
+import org.pegdown.PegDownProcessor;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+public class PegDownProcessorPoolTest {
+
+    @Test
+    public void processorsAreReused() {
+        PegDownProcessorPool pool = new PegDownProcessorPool(0, 1);
+        PegDownProcessor first = pool.borrow(2000);
+        PegDownProcessor second = pool.borrow(2000);
+        assertThat(second, not(sameInstance(first)));
+        pool.release(first, 2000);
+        pool.release(second, 2000);
+        // only one is kept
+        assertThat(pool.borrow(2000), sameInstance(first));
+        assertThat(pool.borrow(2000), not(sameInstance(second)));
+        assertThat(pool.getCreatedCount(), is(3L));
+    }
+
+    @Test
+    public void processorsArePooledByMaximumParsingTime() {
+        PegDownProcessorPool pool = new PegDownProcessorPool(0, 1);
+        PegDownProcessor processor = pool.borrow(2000);
+        pool.release(processor, 2000);
+        assertThat(pool.borrow(100), not(sameInstance(processor)));
+        assertThat(pool.borrow(2000), sameInstance(processor));
+    }
+}
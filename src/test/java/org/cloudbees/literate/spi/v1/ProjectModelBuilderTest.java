@@ -23,6 +23,7 @@
  */
 package org.cloudbees.literate.spi.v1;
 
+import org.cloudbees.literate.api.v1.ProjectModelBuilderRegistry;
 import org.cloudbees.literate.impl.MarkdownProjectModelBuilder;
 import org.cloudbees.literate.impl.YamlProjectModelBuilder;
 import org.junit.Test;
@@ -32,6 +33,7 @@ import java.util.Collections;
 import java.util.List;
 
 import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.hamcrest.CoreMatchers.sameInstance;
 import static org.junit.Assert.assertThat;
 
 public class ProjectModelBuilderTest {
@@ -44,4 +46,16 @@ public class ProjectModelBuilderTest {
         Collections.sort(list, new ProjectModelBuilder.PriorityComparator());
         assertThat(list.get(0), instanceOf(MarkdownProjectModelBuilder.class));
     }
+
+    @Test
+    public void registryIsSharedAndSorted() {
+        ClassLoader classLoader = getClass().getClassLoader();
+        ProjectModelBuilderRegistry registry = ProjectModelBuilderRegistry.forClassLoader(classLoader);
+        assertThat(ProjectModelBuilderRegistry.forClassLoader(classLoader), sameInstance(registry));
+        assertThat(registry.getBuilders().get(0), instanceOf(MarkdownProjectModelBuilder.class));
+        ProjectModelBuilder first = registry.getBuilders().get(0);
+        assertThat(registry.getBuilders().get(0), sameInstance(first));
+        registry.refresh();
+        assertThat(registry.getBuilders().get(0), instanceOf(MarkdownProjectModelBuilder.class));
+    }
 }
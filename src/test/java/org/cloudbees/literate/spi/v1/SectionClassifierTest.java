@@ -0,0 +1,78 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2013, CloudBees, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.cloudbees.literate.spi.v1;
+
+import org.cloudbees.literate.api.v1.ProjectModelRequest;
+import org.cloudbees.literate.api.v1.vfs.InMemoryRepository;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public class SectionClassifierTest {
+
+    private static BitSet bits(int... sections) {
+        BitSet result = new BitSet();
+        for (int section : sections) {
+            result.set(section);
+        }
+        return result;
+    }
+
+    @Test
+    public void overlappingIds() {
+        SectionClassifier classifier = new SectionClassifier(Arrays.asList("he", "she", "his", "hers", "ab", "bc"));
+        assertThat(classifier.classify("USHERS"), is(bits(0, 1, 3)));
+        assertThat(classifier.classify("abc"), is(bits(4, 5)));
+        assertThat(classifier.classify("ahis"), is(bits(2)));
+        assertThat(classifier.classify("nothing"), is(bits()));
+    }
+
+    @Test
+    public void requestSections() {
+        ProjectModelRequest request = ProjectModelRequest.builder(InMemoryRepository.empty())
+                .addTaskId("deploy").addTaskId("build").build();
+        SectionClassifier classifier = SectionClassifier.forRequest(request);
+        assertThat(classifier.size(), is(4));
+        assertThat(classifier.getId(SectionClassifier.FIRST_TASK), is("build"));
+        assertThat(classifier.getId(SectionClassifier.FIRST_TASK + 1), is("deploy"));
+        assertThat(classifier.classify("Build and Deploy"),
+                is(bits(SectionClassifier.BUILD, SectionClassifier.FIRST_TASK, SectionClassifier.FIRST_TASK + 1)));
+        assertThat(classifier.classify("Environments"), is(bits(SectionClassifier.ENVIRONMENTS)));
+    }
+
+    @Test
+    public void assignKeepsFirstValue() {
+        SectionClassifier classifier = new SectionClassifier(Arrays.asList("", "build", "deploy"));
+        int[] slots = {-1, -1, -1};
+        assertThat(classifier.assign("Build", slots, 3), is(2));
+        assertThat(classifier.assign("Build and deploy", slots, 7), is(1));
+        assertThat(slots[0], is(3));
+        assertThat(slots[1], is(3));
+        assertThat(slots[2], is(7));
+    }
+}